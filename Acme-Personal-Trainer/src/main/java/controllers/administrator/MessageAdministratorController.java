@@ -1,7 +1,11 @@
 
 package controllers.administrator;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -9,11 +13,14 @@ import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import services.ActorService;
 import services.CustomisationService;
+import services.DeliveryJobService;
 import services.MessageService;
+import services.SendRateLimiter;
 import controllers.AbstractController;
+import domain.DeliveryJob;
 import domain.Message;
 
 @Controller
@@ -27,7 +34,10 @@ public class MessageAdministratorController extends AbstractController {
 	private CustomisationService	customisationService;
 
 	@Autowired
-	private ActorService			actorService;
+	private SendRateLimiter			sendRateLimiter;
+
+	@Autowired
+	private DeliveryJobService		deliveryJobService;
 
 
 	// Constructors -----------------------------------------------------------
@@ -56,11 +66,12 @@ public class MessageAdministratorController extends AbstractController {
 		ModelAndView result;
 		Message broadcastRec;
 
-		broadcast.setRecipients(this.actorService.findActorsWithoutPrincipal());
-
-		broadcastRec = this.messageService.reconstruct(broadcast, binding);
+		// A token is only taken for a broadcast that is going to be sent
+		broadcastRec = this.messageService.reconstructBroadcast(broadcast, binding);
 		if (binding.hasErrors())
 			result = this.broadcastModelAndView(broadcast);
+		else if (!this.sendRateLimiter.tryAcquireBroadcast())
+			result = this.broadcastModelAndView(broadcastRec, "message.error.rate");
 		else
 			try {
 				this.messageService.sendBroadcast(broadcastRec);
@@ -73,15 +84,40 @@ public class MessageAdministratorController extends AbstractController {
 	}
 
 	@RequestMapping(value = "/breachNotification", method = RequestMethod.GET)
-	public ModelAndView breach() {
+	public ModelAndView breach(final RedirectAttributes redir) {
 		ModelAndView result;
 
-		try {
-			this.messageService.breachNotification();
-			result = new ModelAndView("redirect:/welcome/index.do");
-		} catch (final Throwable oops) {
-			result = new ModelAndView("redirect:/error.do");
-		}
+		if (!this.sendRateLimiter.tryAcquireBroadcast()) {
+			redir.addFlashAttribute("messageCode", "message.error.rate");
+			result = new ModelAndView("redirect:/box/administrator,auditor,customer,nutritionist,trainer/list.do");
+		} else
+			try {
+				this.messageService.breachNotification();
+				result = new ModelAndView("redirect:/welcome/index.do");
+			} catch (final Throwable oops) {
+				result = new ModelAndView("redirect:/error.do");
+			}
+
+		return result;
+	}
+
+	// Progress ---------------------------------------------------------------
+
+	@RequestMapping(value = "/deliveryJobs", method = RequestMethod.GET)
+	public ModelAndView deliveryJobs() {
+		ModelAndView result;
+		Collection<DeliveryJob> jobs;
+		Map<Integer, Date> finishMoments;
+
+		jobs = this.deliveryJobService.findAll();
+		finishMoments = new HashMap<Integer, Date>();
+		for (final DeliveryJob j : jobs)
+			finishMoments.put(j.getId(), this.deliveryJobService.estimatedFinishMoment(j));
+
+		result = new ModelAndView("message/deliveryJobs");
+		result.addObject("jobs", jobs);
+		result.addObject("finishMoments", finishMoments);
+		result.addObject("requestURI", "message/administrator/deliveryJobs.do");
 
 		return result;
 	}
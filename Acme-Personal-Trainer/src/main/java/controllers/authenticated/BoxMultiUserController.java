@@ -2,6 +2,8 @@
 package controllers.authenticated;
 
 import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
@@ -14,10 +16,11 @@ import org.springframework.web.servlet.ModelAndView;
 
 import services.ActorService;
 import services.BoxService;
+import services.MessageService;
 import controllers.AbstractController;
+import forms.BoxPage;
 import domain.Actor;
 import domain.Box;
-import domain.Message;
 
 @Controller
 @RequestMapping("/box/administrator,auditor,customer,nutritionist,trainer")
@@ -29,27 +32,36 @@ public class BoxMultiUserController extends AbstractController {
 	@Autowired
 	private ActorService	actorService;
 
+	@Autowired
+	private MessageService	messageService;
+
 
 	public BoxMultiUserController() {
 		super();
 	}
 
 	@RequestMapping(value = "/display", method = RequestMethod.GET)
-	public ModelAndView display(@RequestParam final int boxId) {
+	public ModelAndView display(@RequestParam final int boxId, @RequestParam(required = false) final Long moment, @RequestParam(required = false) final Integer entryId, @RequestParam(required = false, defaultValue = "false") final boolean previous) {
 		ModelAndView result;
 		Box box;
-		Collection<Box> childBoxes;
-		Collection<Message> messages;
+		Collection<Box> childBoxes, destinationBoxes;
+		Map<Integer, Integer> messageCounts;
+		BoxPage page;
 
 		try {
 			box = this.boxService.findOneToDisplay(boxId);
 			childBoxes = this.boxService.findChildBoxesByBox(boxId);
-			messages = box.getMessages();
+			page = this.boxService.findMessagesPageByBox(boxId, moment == null ? null : new Date(moment), entryId, previous);
+			destinationBoxes = this.boxService.findBoxesByActor(box.getActor().getId());
+			destinationBoxes.remove(box);
+			messageCounts = this.boxService.numberOfMessagesByBoxFromActor(box.getActor());
 
 			result = new ModelAndView("box/display");
 			result.addObject("box", box);
 			result.addObject("childBoxes", childBoxes);
-			result.addObject("messages", messages);
+			result.addObject("messageCounts", messageCounts);
+			result.addObject("page", page);
+			result.addObject("destinationBoxes", destinationBoxes);
 		} catch (final Throwable oops) {
 			result = new ModelAndView("redirect:/error.do");
 		}
@@ -61,18 +73,40 @@ public class BoxMultiUserController extends AbstractController {
 	public ModelAndView list() {
 		ModelAndView result;
 		Collection<Box> boxes;
+		Map<Integer, Integer> messageCounts, unreadCounts;
 		Actor principal;
 
 		principal = this.actorService.findPrincipal();
 		boxes = this.boxService.findRootBoxesByActor(principal.getId());
+		messageCounts = this.boxService.numberOfMessagesByBoxFromActor(principal);
+		unreadCounts = this.boxService.numberOfUnreadMessagesByBoxFromActor(principal, messageCounts);
 
 		result = new ModelAndView("box/list");
 		result.addObject("boxes", boxes);
+		result.addObject("messageCounts", messageCounts);
+		result.addObject("unreadCounts", unreadCounts);
 		result.addObject("requestURI", "box/administrator,auditor,customer,nutritionist,trainer/list.do");
 
 		return result;
 	}
 
+	@RequestMapping(value = "/markAllAsRead", method = RequestMethod.POST)
+	public ModelAndView markAllAsRead(@RequestParam final int boxId) {
+		ModelAndView result;
+		Box box;
+
+		try {
+			box = this.boxService.findOneToDisplay(boxId);
+			this.messageService.markAllAsRead(box);
+
+			result = new ModelAndView("redirect:display.do?boxId=" + boxId);
+		} catch (final Throwable oops) {
+			result = new ModelAndView("redirect:/error.do");
+		}
+
+		return result;
+	}
+
 	@RequestMapping(value = "/create", method = RequestMethod.GET)
 	public ModelAndView create() {
 		ModelAndView result;
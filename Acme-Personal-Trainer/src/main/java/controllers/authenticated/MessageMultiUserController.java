@@ -2,32 +2,40 @@
 package controllers.authenticated;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.Assert;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.ModelAndView;
 
 import services.ActorService;
-import services.AdministratorService;
 import services.BoxService;
 import services.CustomisationService;
+import services.MessageIndexService;
 import services.MessageService;
+import services.SendRateLimiter;
 import controllers.AbstractController;
 import domain.Actor;
 import domain.Box;
 import domain.Message;
+import forms.ActorSuggestion;
 import forms.MessageForm;
+import forms.MessageSearchPage;
 
 @Controller
 @RequestMapping("/message/administrator,auditor,customer,nutritionist,trainer")
 public class MessageMultiUserController extends AbstractController {
 
+	private static final int		RECIPIENT_SUGGESTIONS	= 10;
+
 	@Autowired
 	private MessageService			messageService;
 
@@ -41,7 +49,10 @@ public class MessageMultiUserController extends AbstractController {
 	private CustomisationService	customisationService;
 
 	@Autowired
-	private AdministratorService	administratorService;
+	private MessageIndexService		messageIndexService;
+
+	@Autowired
+	private SendRateLimiter			sendRateLimiter;
 
 
 	public MessageMultiUserController() {
@@ -49,10 +60,12 @@ public class MessageMultiUserController extends AbstractController {
 	}
 
 	@RequestMapping(value = "/display", method = RequestMethod.GET)
-	public ModelAndView display(@RequestParam final int messageId, @RequestParam final int boxId) {
+	public ModelAndView display(@RequestParam final int messageId, @RequestParam(required = false) final Integer boxId) {
 		ModelAndView result;
 		Message message;
 
+		// The message is marked as read by the page itself, with a POST to
+		// read.do, so displaying it doesn't change anything
 		try {
 			message = this.messageService.findOneToDisplay(messageId);
 
@@ -66,6 +79,52 @@ public class MessageMultiUserController extends AbstractController {
 		return result;
 	}
 
+	// Best-effort: a box that no longer exists, or no longer holds the
+	// message, is ignored
+	@RequestMapping(value = "/read", method = RequestMethod.POST)
+	@ResponseBody
+	public boolean read(@RequestParam final int messageId, @RequestParam final int boxId) {
+		boolean result;
+
+		try {
+			this.messageService.markAsRead(Collections.singleton(messageId), this.boxService.findOne(boxId));
+			result = true;
+		} catch (final Throwable oops) {
+			result = false;
+		}
+
+		return result;
+	}
+
+	@RequestMapping(value = "/search", method = RequestMethod.GET)
+	public ModelAndView search(@RequestParam(required = false, defaultValue = "") final String text, @RequestParam(required = false, defaultValue = "0") final int page) {
+		ModelAndView result;
+		MessageSearchPage searchPage;
+
+		try {
+			searchPage = text.trim().isEmpty() ? null : this.messageIndexService.search(text.trim(), page);
+
+			result = new ModelAndView("message/search");
+			result.addObject("text", text);
+			result.addObject("searchPage", searchPage);
+		} catch (final Throwable oops) {
+			result = new ModelAndView("redirect:/error.do");
+		}
+
+		return result;
+	}
+
+	// Typeahead of the send form, answered from the in-memory index of actors
+	@RequestMapping(value = "/recipients", method = RequestMethod.GET)
+	@ResponseBody
+	public List<ActorSuggestion> recipients(@RequestParam(required = false, defaultValue = "") final String term) {
+		List<ActorSuggestion> result;
+
+		result = this.actorService.findRecipientSuggestions(term, MessageMultiUserController.RECIPIENT_SUGGESTIONS, Collections.<Integer> emptySet());
+
+		return result;
+	}
+
 	@RequestMapping(value = "/send", method = RequestMethod.GET)
 	public ModelAndView create() {
 		ModelAndView result;
@@ -128,9 +187,12 @@ public class MessageMultiUserController extends AbstractController {
 		ModelAndView result;
 		Message messageRec;
 
+		// A token is only taken for a message that is going to be sent
 		messageRec = this.messageService.reconstruct(message, binding);
 		if (binding.hasErrors())
 			result = this.createEditModelAndView(message);
+		else if (!this.sendRateLimiter.tryAcquireMessage())
+			result = this.createEditModelAndView(messageRec, "message.error.rate");
 		else
 			try {
 				this.messageService.send(messageRec);
@@ -161,6 +223,68 @@ public class MessageMultiUserController extends AbstractController {
 		return result;
 	}
 
+	@RequestMapping(value = "/bulk", method = RequestMethod.POST, params = "move")
+	public ModelAndView bulkMove(@RequestParam final int boxId, @RequestParam(required = false) final List<Integer> messageIds, @RequestParam(required = false) final Integer destinationBoxId) {
+		ModelAndView result;
+		Box origin, destination;
+
+		try {
+			if (messageIds != null && !messageIds.isEmpty()) {
+				Assert.isTrue(messageIds.size() <= BoxService.PAGE_SIZE);
+				Assert.notNull(destinationBoxId);
+				origin = this.boxService.findOne(boxId);
+				destination = this.boxService.findOne(destinationBoxId);
+
+				this.messageService.moveMessages(messageIds, origin, destination);
+			}
+			result = new ModelAndView("redirect:/box/administrator,auditor,customer,nutritionist,trainer/display.do?boxId=" + boxId);
+		} catch (final Throwable oops) {
+			result = new ModelAndView("redirect:/error.do");
+		}
+
+		return result;
+	}
+
+	@RequestMapping(value = "/bulk", method = RequestMethod.POST, params = "read")
+	public ModelAndView bulkRead(@RequestParam final int boxId, @RequestParam(required = false) final List<Integer> messageIds) {
+		ModelAndView result;
+		Box box;
+
+		try {
+			if (messageIds != null && !messageIds.isEmpty()) {
+				Assert.isTrue(messageIds.size() <= BoxService.PAGE_SIZE);
+				box = this.boxService.findOne(boxId);
+
+				this.messageService.markAsRead(messageIds, box);
+			}
+			result = new ModelAndView("redirect:/box/administrator,auditor,customer,nutritionist,trainer/display.do?boxId=" + boxId);
+		} catch (final Throwable oops) {
+			result = new ModelAndView("redirect:/error.do");
+		}
+
+		return result;
+	}
+
+	@RequestMapping(value = "/bulk", method = RequestMethod.POST, params = "delete")
+	public ModelAndView bulkDelete(@RequestParam final int boxId, @RequestParam(required = false) final List<Integer> messageIds) {
+		ModelAndView result;
+		Box box;
+
+		try {
+			if (messageIds != null && !messageIds.isEmpty()) {
+				Assert.isTrue(messageIds.size() <= BoxService.PAGE_SIZE);
+				box = this.boxService.findOne(boxId);
+
+				this.messageService.deleteMessages(messageIds, box);
+			}
+			result = new ModelAndView("redirect:/box/administrator,auditor,customer,nutritionist,trainer/display.do?boxId=" + boxId);
+		} catch (final Throwable oops) {
+			result = new ModelAndView("redirect:/error.do");
+		}
+
+		return result;
+	}
+
 	// Ancillary methods ----------------------------------
 	protected ModelAndView createEditModelAndView(final Message message) {
 		ModelAndView result;
@@ -172,19 +296,12 @@ public class MessageMultiUserController extends AbstractController {
 
 	protected ModelAndView createEditModelAndView(final Message message, final String messageCode) {
 		ModelAndView result;
-		Collection<Actor> actors;
-		Actor system;
 		List<String> priorities;
 
 		priorities = this.customisationService.prioritiesAsList();
 
-		system = this.administratorService.findSystem();
-		actors = this.actorService.findActorsWithoutPrincipal();
-		actors.remove(system);
-
 		result = new ModelAndView("message/send");
 		result.addObject("message", message);
-		result.addObject("actors", actors);
 		result.addObject("priorities", priorities);
 		result.addObject("messageCode", messageCode);
 
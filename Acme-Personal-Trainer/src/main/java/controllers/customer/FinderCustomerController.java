@@ -0,0 +1,114 @@
+
+package controllers.customer;
+
+import java.util.Collection;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.validation.BindingResult;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.ModelAndView;
+
+import services.FinderService;
+import controllers.AbstractController;
+import domain.Finder;
+import domain.WorkingOut;
+
+@Controller
+@RequestMapping(value = "/finder/customer")
+public class FinderCustomerController extends AbstractController {
+
+	// Services------------------------------------
+
+	@Autowired
+	private FinderService	finderService;
+
+
+	// Constructors -----------------------------------------------------------
+
+	public FinderCustomerController() {
+		super();
+	}
+
+	// Finder display -----------------------------------------------------------
+	@RequestMapping(value = "/display", method = RequestMethod.GET)
+	public ModelAndView display() {
+		ModelAndView result;
+		Finder finder;
+
+		try {
+			finder = this.finderService.findByPrincipal();
+
+			result = this.createEditModelAndView(finder);
+		} catch (final Throwable oops) {
+			result = new ModelAndView("redirect:../../error.do");
+		}
+
+		return result;
+	}
+
+	@RequestMapping(value = "/edit", method = RequestMethod.POST, params = "save")
+	public ModelAndView save(final Finder finder, final BindingResult binding) {
+		ModelAndView result;
+		Finder finderRec;
+
+		finderRec = this.finderService.reconstruct(finder, binding);
+
+		if (binding.hasErrors())
+			result = this.createEditModelAndView(finderRec);
+		else
+			try {
+				this.finderService.save(finderRec);
+				result = new ModelAndView("redirect:display.do");
+			} catch (final Throwable oops) {
+				result = this.createEditModelAndView(finderRec, "finder.commit.error");
+			}
+
+		return result;
+	}
+
+	@RequestMapping(value = "/edit", method = RequestMethod.POST, params = "clear")
+	public ModelAndView clear(final Finder finder, final BindingResult binding) {
+		ModelAndView result;
+		Finder finderRec;
+
+		finderRec = this.finderService.reconstruct(finder, binding);
+
+		try {
+			this.finderService.clear(finderRec);
+			this.finderService.save(finderRec);
+			result = new ModelAndView("redirect:display.do");
+		} catch (final Throwable oops) {
+			result = this.createEditModelAndView(finderRec, "finder.commit.error");
+		}
+
+		return result;
+	}
+
+	// Arcillary methods --------------------------
+
+	protected ModelAndView createEditModelAndView(final Finder finder) {
+		ModelAndView result;
+
+		result = this.createEditModelAndView(finder, null);
+
+		return result;
+	}
+
+	protected ModelAndView createEditModelAndView(final Finder finder, final String messageCode) {
+		ModelAndView result;
+		Collection<WorkingOut> workingOuts;
+
+		workingOuts = this.finderService.findWorkingOutsByPrincipal();
+
+		result = new ModelAndView("finder/edit");
+		result.addObject("finder", finder);
+		result.addObject("workingOuts", workingOuts);
+		result.addObject("messageCode", messageCode);
+		result.addObject("requestURI", "finder/customer/display.do");
+
+		return result;
+	}
+
+}
@@ -0,0 +1,78 @@
+
+package domain;
+
+import java.util.Date;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.validation.constraints.NotNull;
+
+// A message moved out of the message and mailbox tables once it is older
+// than the archive age. It keeps the id of the message; the message, its
+// recipients and the actors that held it are stored compressed.
+@Entity
+@Access(AccessType.PROPERTY)
+@Table(indexes = @Index(columnList = "sender_id"))
+public class ArchivedMessage extends DomainEntity {
+
+	// Constructors
+
+	public ArchivedMessage() {
+		super();
+	}
+
+
+	// Attributes ----------------------------------------------------------------------
+
+	private int		messageId;
+	private int		senderId;
+	private Date	sentMoment;
+	private byte[]	content;
+
+
+	@Column(unique = true)
+	public int getMessageId() {
+		return this.messageId;
+	}
+
+	public void setMessageId(final int messageId) {
+		this.messageId = messageId;
+	}
+
+	public int getSenderId() {
+		return this.senderId;
+	}
+
+	public void setSenderId(final int senderId) {
+		this.senderId = senderId;
+	}
+
+	@NotNull
+	@Temporal(TemporalType.TIMESTAMP)
+	public Date getSentMoment() {
+		return this.sentMoment;
+	}
+
+	public void setSentMoment(final Date sentMoment) {
+		this.sentMoment = sentMoment;
+	}
+
+	@NotNull
+	@Lob
+	@Column(length = 16777215)
+	public byte[] getContent() {
+		return this.content;
+	}
+
+	public void setContent(final byte[] content) {
+		this.content = content;
+	}
+
+}
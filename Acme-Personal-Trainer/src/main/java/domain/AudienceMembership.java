@@ -0,0 +1,94 @@
+
+package domain;
+
+import java.util.Date;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+
+import org.hibernate.validator.constraints.NotBlank;
+import org.springframework.format.annotation.DateTimeFormat;
+
+// Period during which an actor belongs to an audience. The messages
+// addressed to the audience are only resolved for the actor if they were
+// sent within one of his or her periods, so an actor doesn't receive what
+// was sent before joining it and keeps what was sent before leaving it.
+// The end moment is null while the actor still belongs to the audience.
+@Entity
+@Access(AccessType.PROPERTY)
+@Table(indexes = {
+	@Index(columnList = "actor, audience, start_moment")
+})
+public class AudienceMembership extends DomainEntity {
+
+	// Constructors
+
+	public AudienceMembership() {
+		super();
+	}
+
+
+	// Attributes
+
+	private String	audience;
+	private Date	startMoment;
+	private Date	endMoment;
+
+
+	@NotBlank
+	@Pattern(regexp = "^ALL|ROLE:(ADMIN|TRAINER|CUSTOMER|AUDITOR|NUTRITIONIST)|PREMIUM$")
+	public String getAudience() {
+		return this.audience;
+	}
+
+	public void setAudience(final String audience) {
+		this.audience = audience;
+	}
+
+	@NotNull
+	@Temporal(TemporalType.TIMESTAMP)
+	@DateTimeFormat(pattern = "dd/MM/yyyy HH:mm")
+	public Date getStartMoment() {
+		return this.startMoment;
+	}
+
+	public void setStartMoment(final Date startMoment) {
+		this.startMoment = startMoment;
+	}
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@DateTimeFormat(pattern = "dd/MM/yyyy HH:mm")
+	public Date getEndMoment() {
+		return this.endMoment;
+	}
+
+	public void setEndMoment(final Date endMoment) {
+		this.endMoment = endMoment;
+	}
+
+
+	// Relationship----------------------------------------------------------------
+	private Actor	actor;
+
+
+	@Valid
+	@NotNull
+	@ManyToOne(optional = false)
+	public Actor getActor() {
+		return this.actor;
+	}
+
+	public void setActor(final Actor actor) {
+		this.actor = actor;
+	}
+
+}
@@ -0,0 +1,57 @@
+
+package domain;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Entity;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+// Records that an actor has taken his or her copy of a message addressed to
+// an audience: from then on the copy is stored in the actor's boxes as any
+// other message and is no longer resolved from the audience.
+@Entity
+@Access(AccessType.PROPERTY)
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {
+	"message", "actor"
+}))
+public class AudienceReceipt extends DomainEntity {
+
+	// Constructors
+
+	public AudienceReceipt() {
+		super();
+	}
+
+
+	// Relationship----------------------------------------------------------------
+	private Actor	actor;
+	private Message	message;
+
+
+	@Valid
+	@NotNull
+	@ManyToOne(optional = false)
+	public Actor getActor() {
+		return this.actor;
+	}
+
+	public void setActor(final Actor actor) {
+		this.actor = actor;
+	}
+
+	@Valid
+	@NotNull
+	@ManyToOne(optional = false)
+	public Message getMessage() {
+		return this.message;
+	}
+
+	public void setMessage(final Message message) {
+		this.message = message;
+	}
+
+}
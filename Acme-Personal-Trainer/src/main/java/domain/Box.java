@@ -1,17 +1,16 @@
 
 package domain;
 
-import java.util.Collection;
-
 import javax.persistence.Access;
 import javax.persistence.AccessType;
 import javax.persistence.Entity;
-import javax.persistence.ManyToMany;
+import javax.persistence.Index;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
 
 import org.hibernate.validator.constraints.NotBlank;
 import org.hibernate.validator.constraints.SafeHtml;
@@ -20,7 +19,7 @@ import org.hibernate.validator.constraints.SafeHtml;
 @Access(AccessType.PROPERTY)
 @Table(uniqueConstraints = @UniqueConstraint(columnNames = {
 	"name", "parent"
-}))
+}), indexes = @Index(columnList = "path"))
 public class Box extends DomainEntity {
 
 	// Constructors
@@ -34,6 +33,7 @@ public class Box extends DomainEntity {
 
 	private String	name;
 	private boolean	isSystemBox;
+	private String	path;
 
 
 	@NotBlank
@@ -54,23 +54,23 @@ public class Box extends DomainEntity {
 		this.isSystemBox = isSystemBox;
 	}
 
-
-	// Relationship----------------------------------------------------------------
-	private Collection<Message>	messages;
-	private Actor				actor;
-	private Box					parent;
-
-
+	// Ids of the ancestors of the box, from the root: "/" for a root box,
+	// "/5/9/" for a box whose parent is 9 and whose grandparent is 5.
 	@NotNull
-	@ManyToMany
-	public Collection<Message> getMessages() {
-		return this.messages;
+	@Pattern(regexp = "^/([0-9]+/)*$")
+	public String getPath() {
+		return this.path;
 	}
 
-	public void setMessages(final Collection<Message> messages) {
-		this.messages = messages;
+	public void setPath(final String path) {
+		this.path = path;
 	}
 
+
+	// Relationship----------------------------------------------------------------
+	private Actor	actor;
+	private Box		parent;
+
 	@Valid
 	@NotNull
 	@ManyToOne(optional = false)
@@ -0,0 +1,73 @@
+
+package domain;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Entity;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+// One of the slots of the message counter of a box, which is the sum of
+// them. Every box has all of its slots from the moment it is created, and a
+// transaction adds its changes to a random one, so concurrent deliveries to
+// a popular box seldom wait for the same row lock, and never for the box.
+// A slot may go below zero, since a message needn't be subtracted from the
+// slot it was added to.
+@Entity
+@Access(AccessType.PROPERTY)
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {
+	"box", "slot"
+}))
+public class BoxCounter extends DomainEntity {
+
+	// Constructors
+
+	public BoxCounter() {
+		super();
+	}
+
+
+	// Attributes ----------------------------------------------------------------------
+
+	private int	slot;
+	private int	messageCount;
+
+
+	@Min(0)
+	public int getSlot() {
+		return this.slot;
+	}
+
+	public void setSlot(final int slot) {
+		this.slot = slot;
+	}
+
+	public int getMessageCount() {
+		return this.messageCount;
+	}
+
+	public void setMessageCount(final int messageCount) {
+		this.messageCount = messageCount;
+	}
+
+
+	// Relationship----------------------------------------------------------------
+	private Box	box;
+
+
+	@Valid
+	@NotNull
+	@ManyToOne(optional = false)
+	public Box getBox() {
+		return this.box;
+	}
+
+	public void setBox(final Box box) {
+		this.box = box;
+	}
+
+}
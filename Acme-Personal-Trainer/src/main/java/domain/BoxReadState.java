@@ -0,0 +1,80 @@
+
+package domain;
+
+import java.util.Date;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Lob;
+import javax.persistence.OneToOne;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.UniqueConstraint;
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+// Ids of the messages of a box that its owner has read, stored as a
+// serialised roaring bitmap, and, for the boxes that show the messages
+// addressed to the owner's audiences, the moment up to which those that
+// are not taken yet have been read. A box without read messages has no
+// state.
+@Entity
+@Access(AccessType.PROPERTY)
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = "box"))
+public class BoxReadState extends DomainEntity {
+
+	// Constructors
+
+	public BoxReadState() {
+		super();
+	}
+
+
+	// Attributes ----------------------------------------------------------------------
+
+	private byte[]	readMessages;
+	private Date	pendingReadMoment;
+
+
+	@NotNull
+	@Lob
+	@Column(length = 16777215)
+	public byte[] getReadMessages() {
+		return this.readMessages;
+	}
+
+	public void setReadMessages(final byte[] readMessages) {
+		this.readMessages = readMessages;
+	}
+
+	// The audience messages sent up to this moment count as read until they
+	// are taken, when their ids are added to the bitmap
+	@Temporal(TemporalType.TIMESTAMP)
+	public Date getPendingReadMoment() {
+		return this.pendingReadMoment;
+	}
+
+	public void setPendingReadMoment(final Date pendingReadMoment) {
+		this.pendingReadMoment = pendingReadMoment;
+	}
+
+
+	// Relationship----------------------------------------------------------------
+	private Box	box;
+
+
+	@Valid
+	@NotNull
+	@OneToOne(optional = false)
+	public Box getBox() {
+		return this.box;
+	}
+
+	public void setBox(final Box box) {
+		this.box = box;
+	}
+
+}
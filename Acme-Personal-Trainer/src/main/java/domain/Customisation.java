@@ -41,6 +41,7 @@ public class Customisation extends DomainEntity {
 	private String	positiveWords;
 	private String	negativeWords;
 	private double	premiumAmount;
+	private int		archiveAge;
 
 
 	@NotBlank
@@ -190,4 +191,14 @@ public class Customisation extends DomainEntity {
 		this.premiumAmount = premiumAmount;
 	}
 
+	// Days after which messages are moved to the archive
+	@Range(min = 1, max = 3650)
+	public int getArchiveAge() {
+		return this.archiveAge;
+	}
+
+	public void setArchiveAge(final int archiveAge) {
+		this.archiveAge = archiveAge;
+	}
+
 }
@@ -0,0 +1,127 @@
+
+package domain;
+
+import java.util.Date;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+
+import org.hibernate.validator.constraints.NotBlank;
+import org.springframework.format.annotation.DateTimeFormat;
+
+// Delivery of a message with a long list of recipients to their boxes. The
+// message is referenced by id, as it may be deleted or archived while it is
+// delivered, in which case the job just finishes.
+@Entity
+@Access(AccessType.PROPERTY)
+@Table(indexes = {
+	@Index(columnList = "status")
+})
+public class DeliveryJob extends DomainEntity {
+
+	// Constructor
+
+	public DeliveryJob() {
+		super();
+	}
+
+
+	// Attributes
+
+	private int		messageId;
+	private boolean	notification;
+	private String	status;
+	private int		lastActorId;
+	private int		delivered;
+	private int		total;
+	private Date	startMoment;
+	private Date	finishMoment;
+
+
+	public int getMessageId() {
+		return this.messageId;
+	}
+
+	public void setMessageId(final int messageId) {
+		this.messageId = messageId;
+	}
+
+	// Whether the message goes to the notification boxes rather than to the
+	// in or spam boxes
+	public boolean getNotification() {
+		return this.notification;
+	}
+
+	public void setNotification(final boolean notification) {
+		this.notification = notification;
+	}
+
+	@NotBlank
+	@Pattern(regexp = "^RUNNING|DONE$")
+	public String getStatus() {
+		return this.status;
+	}
+
+	public void setStatus(final String status) {
+		this.status = status;
+	}
+
+	// Id of the last recipient the message has been delivered to. Recipients
+	// are walked in id order, so the job resumes right after it.
+	@Min(0)
+	public int getLastActorId() {
+		return this.lastActorId;
+	}
+
+	public void setLastActorId(final int lastActorId) {
+		this.lastActorId = lastActorId;
+	}
+
+	@Min(0)
+	public int getDelivered() {
+		return this.delivered;
+	}
+
+	public void setDelivered(final int delivered) {
+		this.delivered = delivered;
+	}
+
+	@Min(0)
+	public int getTotal() {
+		return this.total;
+	}
+
+	public void setTotal(final int total) {
+		this.total = total;
+	}
+
+	@NotNull
+	@Temporal(TemporalType.TIMESTAMP)
+	@DateTimeFormat(pattern = "dd/MM/yyyy HH:mm")
+	public Date getStartMoment() {
+		return this.startMoment;
+	}
+
+	public void setStartMoment(final Date startMoment) {
+		this.startMoment = startMoment;
+	}
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@DateTimeFormat(pattern = "dd/MM/yyyy HH:mm")
+	public Date getFinishMoment() {
+		return this.finishMoment;
+	}
+
+	public void setFinishMoment(final Date finishMoment) {
+		this.finishMoment = finishMoment;
+	}
+
+}
@@ -1,14 +1,15 @@
 
 package domain;
 
-import java.util.Collection;
 import java.util.Date;
+import java.util.Set;
 
 import javax.persistence.Access;
 import javax.persistence.AccessType;
 import javax.persistence.Entity;
 import javax.persistence.ManyToMany;
 import javax.persistence.OneToOne;
+import javax.persistence.OrderBy;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import javax.validation.Valid;
@@ -109,8 +110,8 @@ public class Finder extends DomainEntity {
 
 	// Relationships
 
-	private Customer				customer;
-	private Collection<WorkingOut>	workingOuts;
+	private Customer		customer;
+	private Set<WorkingOut>	workingOuts;
 
 
 	@Valid
@@ -124,13 +125,16 @@ public class Finder extends DomainEntity {
 		this.customer = customer;
 	}
 
+	// A set rather than a bag, so that Hibernate only inserts and deletes the
+	// results that change when the finder is refreshed
 	@NotNull
 	@ManyToMany
-	public Collection<WorkingOut> getWorkingOuts() {
+	@OrderBy("startMoment")
+	public Set<WorkingOut> getWorkingOuts() {
 		return this.workingOuts;
 	}
 
-	public void setWorkingOuts(final Collection<WorkingOut> workingOuts) {
+	public void setWorkingOuts(final Set<WorkingOut> workingOuts) {
 		this.workingOuts = workingOuts;
 	}
 
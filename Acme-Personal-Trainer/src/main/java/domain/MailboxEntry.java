@@ -0,0 +1,80 @@
+
+package domain;
+
+import java.util.Date;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.UniqueConstraint;
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+import org.springframework.format.annotation.DateTimeFormat;
+
+@Entity
+@Access(AccessType.PROPERTY)
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {
+	"box", "message"
+}), indexes = {
+	@Index(columnList = "box, delivered_moment"), @Index(columnList = "message")
+})
+public class MailboxEntry extends DomainEntity {
+
+	// Constructors
+
+	public MailboxEntry() {
+		super();
+	}
+
+
+	// Attributes ----------------------------------------------------------------------
+
+	private Date	deliveredMoment;
+
+
+	@NotNull
+	@Temporal(TemporalType.TIMESTAMP)
+	@DateTimeFormat(pattern = "dd/MM/yyyy HH:mm")
+	public Date getDeliveredMoment() {
+		return this.deliveredMoment;
+	}
+
+	public void setDeliveredMoment(final Date deliveredMoment) {
+		this.deliveredMoment = deliveredMoment;
+	}
+
+
+	// Relationship----------------------------------------------------------------
+	private Box		box;
+	private Message	message;
+
+
+	@Valid
+	@NotNull
+	@ManyToOne(optional = false)
+	public Box getBox() {
+		return this.box;
+	}
+
+	public void setBox(final Box box) {
+		this.box = box;
+	}
+
+	@Valid
+	@NotNull
+	@ManyToOne(optional = false)
+	public Message getMessage() {
+		return this.message;
+	}
+
+	public void setMessage(final Message message) {
+		this.message = message;
+	}
+
+}
@@ -8,21 +8,28 @@ import javax.persistence.Access;
 import javax.persistence.AccessType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
 import javax.persistence.ManyToOne;
+import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Past;
+import javax.validation.constraints.Pattern;
 
 import org.hibernate.validator.constraints.NotBlank;
-import org.hibernate.validator.constraints.NotEmpty;
 import org.hibernate.validator.constraints.SafeHtml;
 import org.springframework.format.annotation.DateTimeFormat;
 
 @Entity
 @Access(AccessType.PROPERTY)
+@Table(indexes = {
+	@Index(columnList = "audience, is_spam, sent_moment"), @Index(columnList = "sent_moment")
+})
 public class Message extends DomainEntity {
 
 	// Constructor
@@ -40,6 +47,7 @@ public class Message extends DomainEntity {
 	private String	priority;
 	private String	tags;
 	private boolean	isSpam;
+	private String	audience;
 
 
 	@Past
@@ -102,6 +110,17 @@ public class Message extends DomainEntity {
 		this.isSpam = isSpam;
 	}
 
+	// Group of actors the message is addressed to, resolved when their boxes
+	// are read. It is null for messages with an explicit list of recipients.
+	@Pattern(regexp = "^ALL|ROLE:(ADMIN|TRAINER|CUSTOMER|AUDITOR|NUTRITIONIST)|PREMIUM$")
+	public String getAudience() {
+		return this.audience;
+	}
+
+	public void setAudience(final String audience) {
+		this.audience = audience;
+	}
+
 
 	//Relationships ----------------------------------------------------
 
@@ -121,8 +140,8 @@ public class Message extends DomainEntity {
 	}
 
 	@NotNull
-	@NotEmpty
 	@ManyToMany
+	@JoinTable(name = "message_recipients", joinColumns = @JoinColumn(name = "message"), inverseJoinColumns = @JoinColumn(name = "recipients"), indexes = @Index(columnList = "recipients, message"))
 	public Collection<Actor> getRecipients() {
 		return this.recipients;
 	}
@@ -0,0 +1,112 @@
+
+package domain;
+
+import java.util.Date;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+
+import org.hibernate.validator.constraints.NotBlank;
+import org.springframework.format.annotation.DateTimeFormat;
+
+@Entity
+@Access(AccessType.PROPERTY)
+@Table(indexes = {
+	@Index(columnList = "status, next_attempt_moment")
+})
+public class OutboxEvent extends DomainEntity {
+
+	// Constructor
+
+	public OutboxEvent() {
+		super();
+	}
+
+
+	// Attributes
+
+	private String	kind;
+	private int		entityId;
+	private String	status;
+	private int		attempts;
+	private Date	createdMoment;
+	private Date	nextAttemptMoment;
+	private String	lastError;
+
+
+	@NotBlank
+	@Pattern(regexp = "^PUBLISHED_WORKING_OUT|NEW_ARTICLE|APPLICATION_STATUS$")
+	public String getKind() {
+		return this.kind;
+	}
+
+	public void setKind(final String kind) {
+		this.kind = kind;
+	}
+
+	public int getEntityId() {
+		return this.entityId;
+	}
+
+	public void setEntityId(final int entityId) {
+		this.entityId = entityId;
+	}
+
+	@NotBlank
+	@Pattern(regexp = "^PENDING|SENT|FAILED$")
+	public String getStatus() {
+		return this.status;
+	}
+
+	public void setStatus(final String status) {
+		this.status = status;
+	}
+
+	@Min(0)
+	public int getAttempts() {
+		return this.attempts;
+	}
+
+	public void setAttempts(final int attempts) {
+		this.attempts = attempts;
+	}
+
+	@NotNull
+	@Temporal(TemporalType.TIMESTAMP)
+	@DateTimeFormat(pattern = "dd/MM/yyyy HH:mm")
+	public Date getCreatedMoment() {
+		return this.createdMoment;
+	}
+
+	public void setCreatedMoment(final Date createdMoment) {
+		this.createdMoment = createdMoment;
+	}
+
+	@NotNull
+	@Temporal(TemporalType.TIMESTAMP)
+	@DateTimeFormat(pattern = "dd/MM/yyyy HH:mm")
+	public Date getNextAttemptMoment() {
+		return this.nextAttemptMoment;
+	}
+
+	public void setNextAttemptMoment(final Date nextAttemptMoment) {
+		this.nextAttemptMoment = nextAttemptMoment;
+	}
+
+	public String getLastError() {
+		return this.lastError;
+	}
+
+	public void setLastError(final String lastError) {
+		this.lastError = lastError;
+	}
+
+}
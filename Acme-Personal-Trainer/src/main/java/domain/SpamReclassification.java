@@ -0,0 +1,85 @@
+
+package domain;
+
+import java.util.Date;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+// Re-scan of the existing messages against the spam words saved at the
+// request moment. The messages are scanned in id order; lastMessageId is
+// the id of the last message already scanned.
+@Entity
+@Access(AccessType.PROPERTY)
+public class SpamReclassification extends DomainEntity {
+
+	// Constructors
+
+	public SpamReclassification() {
+		super();
+	}
+
+
+	// Attributes ----------------------------------------------------------------------
+
+	private String	spamWords;
+	private Date	requestMoment;
+	private int		lastMessageId;
+	private int		reclassified;
+	private boolean	isFinished;
+
+
+	@NotNull
+	@Column(length = 65535)
+	public String getSpamWords() {
+		return this.spamWords;
+	}
+
+	public void setSpamWords(final String spamWords) {
+		this.spamWords = spamWords;
+	}
+
+	@NotNull
+	@Temporal(TemporalType.TIMESTAMP)
+	public Date getRequestMoment() {
+		return this.requestMoment;
+	}
+
+	public void setRequestMoment(final Date requestMoment) {
+		this.requestMoment = requestMoment;
+	}
+
+	@Min(0)
+	public int getLastMessageId() {
+		return this.lastMessageId;
+	}
+
+	public void setLastMessageId(final int lastMessageId) {
+		this.lastMessageId = lastMessageId;
+	}
+
+	// Number of messages whose spam flag has changed
+	@Min(0)
+	public int getReclassified() {
+		return this.reclassified;
+	}
+
+	public void setReclassified(final int reclassified) {
+		this.reclassified = reclassified;
+	}
+
+	public boolean getIsFinished() {
+		return this.isFinished;
+	}
+
+	public void setIsFinished(final boolean isFinished) {
+		this.isFinished = isFinished;
+	}
+
+}
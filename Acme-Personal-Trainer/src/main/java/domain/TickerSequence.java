@@ -0,0 +1,53 @@
+
+package domain;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.Pattern;
+
+import org.hibernate.validator.constraints.NotBlank;
+
+// Counter of the tickers handed out for a date prefix. Each node reserves a
+// block of values at a time, so nextValue is the first value that hasn't
+// been reserved yet.
+@Entity
+@Access(AccessType.PROPERTY)
+public class TickerSequence extends DomainEntity {
+
+	// Constructors
+
+	public TickerSequence() {
+		super();
+	}
+
+
+	// Attributes ----------------------------------------------------------------------
+
+	private String	datePrefix;
+	private long	nextValue;
+
+
+	@NotBlank
+	@Pattern(regexp = "\\d{6}")
+	@Column(unique = true)
+	public String getDatePrefix() {
+		return this.datePrefix;
+	}
+
+	public void setDatePrefix(final String datePrefix) {
+		this.datePrefix = datePrefix;
+	}
+
+	@Min(0)
+	public long getNextValue() {
+		return this.nextValue;
+	}
+
+	public void setNextValue(final long nextValue) {
+		this.nextValue = nextValue;
+	}
+
+}
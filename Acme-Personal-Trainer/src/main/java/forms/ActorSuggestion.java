@@ -0,0 +1,37 @@
+
+package forms;
+
+public class ActorSuggestion {
+
+	private int		id;
+	private String	label;
+
+
+	public ActorSuggestion() {
+		super();
+	}
+
+	public ActorSuggestion(final int id, final String label) {
+		super();
+
+		this.id = id;
+		this.label = label;
+	}
+
+	public int getId() {
+		return this.id;
+	}
+
+	public void setId(final int id) {
+		this.id = id;
+	}
+
+	public String getLabel() {
+		return this.label;
+	}
+
+	public void setLabel(final String label) {
+		this.label = label;
+	}
+
+}
@@ -0,0 +1,77 @@
+
+package forms;
+
+import java.util.List;
+import java.util.Map;
+
+import domain.MailboxEntry;
+
+public class BoxPage {
+
+	private List<MailboxEntry>	entries;
+	private boolean				hasPrevious;
+	private boolean				hasNext;
+	private int					total;
+	private int					unread;
+	private Map<Integer, Boolean>	read;
+
+
+	public List<MailboxEntry> getEntries() {
+		return this.entries;
+	}
+
+	public void setEntries(final List<MailboxEntry> entries) {
+		this.entries = entries;
+	}
+
+	public boolean getHasPrevious() {
+		return this.hasPrevious;
+	}
+
+	public void setHasPrevious(final boolean hasPrevious) {
+		this.hasPrevious = hasPrevious;
+	}
+
+	public boolean getHasNext() {
+		return this.hasNext;
+	}
+
+	public void setHasNext(final boolean hasNext) {
+		this.hasNext = hasNext;
+	}
+
+	public int getTotal() {
+		return this.total;
+	}
+
+	public void setTotal(final int total) {
+		this.total = total;
+	}
+
+	public int getUnread() {
+		return this.unread;
+	}
+
+	public void setUnread(final int unread) {
+		this.unread = unread;
+	}
+
+	// Whether each message of the page has been read, keyed by message id
+	public Map<Integer, Boolean> getRead() {
+		return this.read;
+	}
+
+	public void setRead(final Map<Integer, Boolean> read) {
+		this.read = read;
+	}
+
+	// Cursor of the first and last entries, used to build the links
+	public MailboxEntry getFirst() {
+		return this.entries.isEmpty() ? null : this.entries.get(0);
+	}
+
+	public MailboxEntry getLast() {
+		return this.entries.isEmpty() ? null : this.entries.get(this.entries.size() - 1);
+	}
+
+}
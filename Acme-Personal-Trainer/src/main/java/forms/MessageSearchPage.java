@@ -0,0 +1,57 @@
+
+package forms;
+
+import java.util.List;
+
+import domain.Message;
+
+public class MessageSearchPage {
+
+	private String			text;
+	private int				page;
+	private List<Message>	messages;
+	private int				total;
+	private boolean			hasNext;
+
+
+	public String getText() {
+		return this.text;
+	}
+
+	public void setText(final String text) {
+		this.text = text;
+	}
+
+	public int getPage() {
+		return this.page;
+	}
+
+	public void setPage(final int page) {
+		this.page = page;
+	}
+
+	public List<Message> getMessages() {
+		return this.messages;
+	}
+
+	public void setMessages(final List<Message> messages) {
+		this.messages = messages;
+	}
+
+	public int getTotal() {
+		return this.total;
+	}
+
+	public void setTotal(final int total) {
+		this.total = total;
+	}
+
+	public boolean getHasNext() {
+		return this.hasNext;
+	}
+
+	public void setHasNext(final boolean hasNext) {
+		this.hasNext = hasNext;
+	}
+
+}
@@ -18,6 +18,9 @@ public interface ActorRepository extends JpaRepository<Actor, Integer> {
 	@Query("select a from Actor a where a.email=?1")
 	Actor findActorByEmail(String email);
 
+	@Query("select a from Actor a where a.id in ?1")
+	Collection<Actor> findByIds(Collection<Integer> actorIds);
+
 	@Query("select distinct m.sender from Message m")
 	Collection<Actor> findSenders();
 
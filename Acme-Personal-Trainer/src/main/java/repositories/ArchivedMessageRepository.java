@@ -0,0 +1,34 @@
+
+package repositories;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import domain.ArchivedMessage;
+
+@Repository
+public interface ArchivedMessageRepository extends JpaRepository<ArchivedMessage, Integer> {
+
+	@Query("select a from ArchivedMessage a where a.messageId=?1")
+	ArchivedMessage findByMessageId(int messageId);
+
+	@Query("select a from ArchivedMessage a where a.messageId in ?1")
+	List<ArchivedMessage> findByMessageIds(Collection<Integer> messageIds);
+
+	@Query("select a from ArchivedMessage a where a.messageId > ?1 order by a.messageId")
+	List<ArchivedMessage> findArchivedMessagesAfter(int messageId, Pageable pageable);
+
+	@Query("select a.messageId from ArchivedMessage a where a.senderId=?1")
+	List<Integer> findMessageIdsSentByActor(int actorId);
+
+	@Modifying
+	@Query("delete from ArchivedMessage a where a.senderId=?1")
+	int deleteArchivedMessagesSentByActor(int actorId);
+
+}
@@ -0,0 +1,30 @@
+
+package repositories;
+
+import java.util.Collection;
+import java.util.Date;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import domain.AudienceMembership;
+
+@Repository
+public interface AudienceMembershipRepository extends JpaRepository<AudienceMembership, Integer> {
+
+	@Query("select am from AudienceMembership am where am.actor.id=?1")
+	Collection<AudienceMembership> findMembershipsByActor(int actorId);
+
+	@Query("select am from AudienceMembership am where am.actor.id=?1 and am.endMoment is null")
+	Collection<AudienceMembership> findCurrentMembershipsByActor(int actorId);
+
+	@Query("select count(am) from AudienceMembership am where am.actor.id=?1 and am.audience=?2 and am.startMoment<=?3 and (am.endMoment is null or am.endMoment>?3)")
+	Integer numberOfMembershipsAt(int actorId, String audience, Date moment);
+
+	@Modifying
+	@Query("delete from AudienceMembership am where am.actor.id=?1")
+	int deleteMembershipsFromActor(int actorId);
+
+}
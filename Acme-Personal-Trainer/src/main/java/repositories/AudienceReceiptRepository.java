@@ -0,0 +1,64 @@
+
+package repositories;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import domain.AudienceReceipt;
+import domain.Message;
+
+@Repository
+public interface AudienceReceiptRepository extends JpaRepository<AudienceReceipt, Integer> {
+
+	@Query("select r from AudienceReceipt r where r.actor.id=?1 and r.message.id=?2")
+	AudienceReceipt findByActorAndMessage(int actorId, int messageId);
+
+	// Rows of (message id, actor id)
+	@Query("select r.message.id, r.actor.id from AudienceReceipt r where r.message.id in ?1")
+	List<Object[]> findActorIdsByMessages(Collection<Integer> messageIds);
+
+	// Messages addressed to an audience that the actor belonged to when they
+	// were sent and that he or she has not taken yet; the periods of an
+	// audience don't overlap, so each message is joined once. They are paged
+	// with the same (moment, key) cursor as the mailbox entries, the key of a
+	// message being its id negated, so the order by sentMoment desc, id asc
+	// matches the entries' order.
+	@Query("select m from Message m, AudienceMembership am where am.actor.id=?2 and m.audience=am.audience and m.sentMoment>=am.startMoment and (am.endMoment is null or m.sentMoment<am.endMoment) and m.isSpam=?1 and m.sender.id<>?2 and not exists (select r from AudienceReceipt r where r.message=m and r.actor.id=?2) order by m.sentMoment desc, m.id asc")
+	List<Message> findFirstPageOfPendingMessages(boolean isSpam, int actorId, Pageable pageable);
+
+	@Query("select m from Message m, AudienceMembership am where am.actor.id=?2 and m.audience=am.audience and m.sentMoment>=am.startMoment and (am.endMoment is null or m.sentMoment<am.endMoment) and m.isSpam=?1 and m.sender.id<>?2 and not exists (select r from AudienceReceipt r where r.message=m and r.actor.id=?2) and (m.sentMoment<?3 or (m.sentMoment=?3 and m.id>?4)) order by m.sentMoment desc, m.id asc")
+	List<Message> findPageOfPendingMessagesBefore(boolean isSpam, int actorId, Date moment, int messageId, Pageable pageable);
+
+	// Returned oldest first; callers reverse it
+	@Query("select m from Message m, AudienceMembership am where am.actor.id=?2 and m.audience=am.audience and m.sentMoment>=am.startMoment and (am.endMoment is null or m.sentMoment<am.endMoment) and m.isSpam=?1 and m.sender.id<>?2 and not exists (select r from AudienceReceipt r where r.message=m and r.actor.id=?2) and (m.sentMoment>?3 or (m.sentMoment=?3 and m.id<?4)) order by m.sentMoment asc, m.id desc")
+	List<Message> findPageOfPendingMessagesAfter(boolean isSpam, int actorId, Date moment, int messageId, Pageable pageable);
+
+	@Query("select count(m) from Message m, AudienceMembership am where am.actor.id=?2 and m.audience=am.audience and m.sentMoment>=am.startMoment and (am.endMoment is null or m.sentMoment<am.endMoment) and m.isSpam=?1 and m.sender.id<>?2 and not exists (select r from AudienceReceipt r where r.message=m and r.actor.id=?2)")
+	Integer numberOfPendingMessages(boolean isSpam, int actorId);
+
+	@Query("select count(m) from Message m, AudienceMembership am where am.actor.id=?2 and m.audience=am.audience and m.sentMoment>=am.startMoment and (am.endMoment is null or m.sentMoment<am.endMoment) and m.isSpam=?1 and m.sender.id<>?2 and not exists (select r from AudienceReceipt r where r.message=m and r.actor.id=?2) and m.sentMoment<=?3")
+	Integer numberOfPendingMessagesSentUpTo(boolean isSpam, int actorId, Date moment);
+
+	@Query("select m from Message m, AudienceMembership am where am.actor.id=?2 and m.audience=am.audience and m.sentMoment>=am.startMoment and (am.endMoment is null or m.sentMoment<am.endMoment) and m.isSpam=?1 and m.sender.id<>?2 and not exists (select r from AudienceReceipt r where r.message=m and r.actor.id=?2) and m.id in ?3")
+	List<Message> findPendingMessagesByIds(boolean isSpam, int actorId, Collection<Integer> messageIds);
+
+	@Modifying
+	@Query("delete from AudienceReceipt r where r.actor.id=?1")
+	int deleteReceiptsFromActor(int actorId);
+
+	@Modifying
+	@Query("delete from AudienceReceipt r where r.message.id in ?1")
+	int deleteReceiptsOfMessages(Collection<Integer> messageIds);
+
+	@Modifying
+	@Query("delete from AudienceReceipt r where r.message.id in (select m.id from Message m where m.sender.id=?1)")
+	int deleteReceiptsOfMessagesSentByActor(int actorId);
+
+}
@@ -0,0 +1,54 @@
+
+package repositories;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import domain.BoxCounter;
+
+@Repository
+public interface BoxCounterRepository extends JpaRepository<BoxCounter, Integer> {
+
+	// Rows of (box id, number of messages) for every box of the actor
+	@Query("select c.box.id, sum(c.messageCount) from BoxCounter c where c.box.actor.id=?1 group by c.box.id")
+	List<Object[]> numberOfMessagesByBoxFromActor(int actorId);
+
+	@Query("select sum(c.messageCount) from BoxCounter c where c.box.id=?1")
+	Long numberOfMessagesByBox(int boxId);
+
+	@Modifying
+	@Query("update BoxCounter c set c.messageCount=c.messageCount+?3 where c.slot=?2 and c.box.id in ?1")
+	int addToMessageCount(Collection<Integer> boxIds, int slot, int delta);
+
+	// The subtractions run before the entries are deleted, since they count
+	// them
+	@Modifying
+	@Query("update BoxCounter c set c.messageCount=c.messageCount-1 where c.slot=?3 and c.box.id in (select e.box.id from MailboxEntry e where e.box.actor.id=?1 and e.message.id=?2)")
+	int decrementMessageCountFromActorByMessage(int actorId, int messageId, int slot);
+
+	@Modifying
+	@Query("update BoxCounter c set c.messageCount=c.messageCount-(select count(e) from MailboxEntry e where e.box=c.box and e.message.sender.id=?1) where c.slot=?2 and c.box.id in (select e.box.id from MailboxEntry e where e.message.sender.id=?1)")
+	int subtractMessagesSentByActor(int actorId, int slot);
+
+	@Modifying
+	@Query("update BoxCounter c set c.messageCount=c.messageCount-(select count(e) from MailboxEntry e where e.box=c.box and e.message.id in ?1) where c.slot=?2 and c.box.id in (select e.box.id from MailboxEntry e where e.message.id in ?1)")
+	int subtractMessages(Collection<Integer> messageIds, int slot);
+
+	@Modifying
+	@Query("update BoxCounter c set c.messageCount=c.messageCount-(select count(e) from MailboxEntry e where e.box=c.box and e.message.id in ?2) where c.slot=?3 and c.box.id in (select e.box.id from MailboxEntry e where e.box.actor.id=?1 and e.message.id in ?2)")
+	int subtractMessagesFromActor(int actorId, Collection<Integer> messageIds, int slot);
+
+	@Modifying
+	@Query("delete from BoxCounter c where c.box.id in ?1")
+	int deleteCounters(Collection<Integer> boxIds);
+
+	@Modifying
+	@Query("delete from BoxCounter c where c.box.id in (select b.id from Box b where b.actor.id=?1)")
+	int deleteCountersFromActor(int actorId);
+
+}
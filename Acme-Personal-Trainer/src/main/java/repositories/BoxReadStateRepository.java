@@ -0,0 +1,40 @@
+
+package repositories;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import domain.BoxReadState;
+
+@Repository
+public interface BoxReadStateRepository extends JpaRepository<BoxReadState, Integer> {
+
+	@Query("select s from BoxReadState s where s.box.id=?1")
+	BoxReadState findByBox(int boxId);
+
+	@Query("select s from BoxReadState s where s.box.id in ?1")
+	Collection<BoxReadState> findByBoxes(Collection<Integer> boxIds);
+
+	@Query("select s from BoxReadState s where s.box.actor.id=?1")
+	Collection<BoxReadState> findByActor(int actorId);
+
+	// Rows of (box id, message id) with the given messages stored in the
+	// boxes of the actor that have a read state
+	@Query("select s.box.id, e.message.id from BoxReadState s, MailboxEntry e where e.box=s.box and s.box.actor.id=?1 and e.message.id in ?2")
+	List<Object[]> findStoredMessagesFromActor(int actorId, Collection<Integer> messageIds);
+
+	// Rows of (box id, message id) with the messages sent by the actor stored
+	// in boxes that have a read state
+	@Query("select s.box.id, e.message.id from BoxReadState s, MailboxEntry e where e.box=s.box and e.message.sender.id=?1")
+	List<Object[]> findStoredMessagesSentByActor(int actorId);
+
+	// Rows of (box id, message id) with the given messages stored in boxes
+	// that have a read state
+	@Query("select s.box.id, e.message.id from BoxReadState s, MailboxEntry e where e.box=s.box and e.message.id in ?1")
+	List<Object[]> findStoredMessages(Collection<Integer> messageIds);
+
+}
@@ -5,13 +5,14 @@ package repositories;
 import java.util.Collection;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import domain.Box;
 
 @Repository
-public interface BoxRepository extends JpaRepository<Box, Integer> {
+public interface BoxRepository extends JpaRepository<Box, Integer>, BoxRepositoryCustom {
 
 	@Query("select b from Box b where b.actor.id=?1")
 	Collection<Box> findBoxesByActor(int actorId);
@@ -22,28 +23,16 @@ public interface BoxRepository extends JpaRepository<Box, Integer> {
 	@Query("select b from Box b where b.parent.id=?1")
 	Collection<Box> findChildBoxesByBox(int boxId);
 
-	@Query("select b from Box b where b.actor.id=?1 and b.name='in box' and b.isSystemBox=true")
-	Box findInBoxFromActor(int actorId);
+	// Boxes whose path starts with the given prefix, deepest first
+	@Query("select b from Box b where b.path like concat(?1, '%') order by length(b.path) desc")
+	Collection<Box> findBoxesByPathPrefix(String prefix);
 
-	@Query("select b from Box b where b.actor.id=?1 and b.name='out box' and b.isSystemBox=true")
-	Box findOutBoxFromActor(int actorId);
+	@Modifying
+	@Query("update Box b set b.path=concat(?2, substring(b.path, length(?1) + 1)) where b.path like concat(?1, '%')")
+	int replacePathPrefix(String oldPrefix, String newPrefix);
 
-	@Query("select b from Box b where b.actor.id=?1 and b.name='spam box' and b.isSystemBox=true")
-	Box findSpamBoxFromActor(int actorId);
-
-	@Query("select b from Box b where b.actor.id=?1 and b.name='notification box' and b.isSystemBox=true")
-	Box findNotificationBoxFromActor(int actorId);
-
-	@Query("select b from Box b where b.actor.id=?1 and b.name='trash box' and b.isSystemBox=true")
-	Box findTrashBoxFromActor(int actorId);
-
-	@Query("select b from Box b join b.messages m where b.actor.id=?1 and m.id=?2")
-	Collection<Box> findBoxesFromActorThatContaintsAMessage(int actorId, int messageId);
-
-	@Query("select count(b) from Box b join b.messages m where m.id=?1")
-	Integer numberOfBoxesThatContaintAMessage(int messageId);
-
-	@Query("select b from Box b join b.messages m where m.id=?1")
-	Collection<Box> findBoxesByMessage(int messageId);
+	// Rows of (actor id, box name, box id)
+	@Query("select b.actor.id, b.name, b.id from Box b where b.actor.id in ?1 and b.isSystemBox=true")
+	Collection<Object[]> findSystemBoxesFromActors(Collection<Integer> actorIds);
 
 }
@@ -0,0 +1,12 @@
+
+package repositories;
+
+import domain.Box;
+
+public interface BoxRepositoryCustom {
+
+	// A reference to the box that is only loaded when one of its properties
+	// is read, as getOne does in later versions of Spring Data JPA
+	Box getOne(int boxId);
+
+}
@@ -0,0 +1,24 @@
+
+package repositories;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import domain.Box;
+
+public class BoxRepositoryImpl implements BoxRepositoryCustom {
+
+	@PersistenceContext
+	private EntityManager	entityManager;
+
+
+	@Override
+	public Box getOne(final int boxId) {
+		Box result;
+
+		result = this.entityManager.getReference(Box.class, boxId);
+
+		return result;
+	}
+
+}
@@ -0,0 +1,22 @@
+
+package repositories;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import domain.DeliveryJob;
+
+@Repository
+public interface DeliveryJobRepository extends JpaRepository<DeliveryJob, Integer> {
+
+	@Query("select j.id from DeliveryJob j where j.status='RUNNING' order by j.startMoment asc")
+	List<Integer> findRunningJobIds();
+
+	@Query("select j from DeliveryJob j order by j.startMoment desc")
+	Collection<DeliveryJob> findAllOrderByStartMoment();
+
+}
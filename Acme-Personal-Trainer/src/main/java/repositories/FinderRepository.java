@@ -1,7 +1,11 @@
 
 package repositories;
 
+import java.util.Collection;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import domain.Finder;
@@ -9,4 +13,11 @@ import domain.Finder;
 @Repository
 public interface FinderRepository extends JpaRepository<Finder, Integer> {
 
+	@Query("select f from Finder f where f.customer.id = ?1")
+	Finder findByCustomer(int customerId);
+
+	@Modifying
+	@Query(value = "delete from finder_working_outs where working_outs in ?1", nativeQuery = true)
+	int removeWorkingOutsFromFinders(Collection<Integer> workingOutIds);
+
 }
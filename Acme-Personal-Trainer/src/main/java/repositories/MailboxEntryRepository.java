@@ -0,0 +1,108 @@
+
+package repositories;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import domain.Box;
+import domain.MailboxEntry;
+
+@Repository
+public interface MailboxEntryRepository extends JpaRepository<MailboxEntry, Integer>, MailboxEntryRepositoryCustom {
+
+	@Query("select e from MailboxEntry e where e.box.id=?1 and e.message.id=?2")
+	MailboxEntry findByBoxAndMessage(int boxId, int messageId);
+
+	// Keyset pagination over (deliveredMoment, id), newest first. Each page
+	// seeks on the (box, delivered_moment) index, so its cost does not
+	// depend on how deep into the box it is.
+	@Query("select e from MailboxEntry e join fetch e.message where e.box.id=?1 order by e.deliveredMoment desc, e.id desc")
+	List<MailboxEntry> findFirstPageByBox(int boxId, Pageable pageable);
+
+	@Query("select e from MailboxEntry e join fetch e.message where e.box.id=?1 and (e.deliveredMoment<?2 or (e.deliveredMoment=?2 and e.id<?3)) order by e.deliveredMoment desc, e.id desc")
+	List<MailboxEntry> findPageByBoxBefore(int boxId, Date moment, int entryId, Pageable pageable);
+
+	// Returned oldest first; callers reverse it
+	@Query("select e from MailboxEntry e join fetch e.message where e.box.id=?1 and (e.deliveredMoment>?2 or (e.deliveredMoment=?2 and e.id>?3)) order by e.deliveredMoment asc, e.id asc")
+	List<MailboxEntry> findPageByBoxAfter(int boxId, Date moment, int entryId, Pageable pageable);
+
+	@Query("select e.message.id from MailboxEntry e where e.box.id=?1 and e.message.id>?2 order by e.message.id asc")
+	List<Integer> findMessageIdsByBoxAfter(int boxId, int messageId, Pageable pageable);
+
+	@Query("select count(e) from MailboxEntry e where e.box.id=?1 and e.message.id in ?2")
+	Integer numberOfEntriesByBoxAndMessages(int boxId, Collection<Integer> messageIds);
+
+	@Query("select e.box from MailboxEntry e where e.message.id=?1")
+	Collection<Box> findBoxesByMessage(int messageId);
+
+	@Query("select e.box from MailboxEntry e where e.box.actor.id=?1 and e.message.id=?2")
+	Collection<Box> findBoxesFromActorThatContaintsAMessage(int actorId, int messageId);
+
+	// Rows of (message id, actor id)
+	@Query("select distinct e.message.id, e.box.actor.id from MailboxEntry e where e.message.id in ?1")
+	List<Object[]> findActorIdsByMessages(Collection<Integer> messageIds);
+
+	@Query("select count(e) from MailboxEntry e where e.message.id=?1")
+	Integer numberOfBoxesThatContaintAMessage(int messageId);
+
+	// Entries of the first box whose message is also stored in the second one
+	@Query("select e.id from MailboxEntry e, MailboxEntry o where e.box.id=?1 and o.box.id=?2 and o.message = e.message")
+	Collection<Integer> findEntriesAlsoInBox(int boxId, int otherBoxId);
+
+	@Query("select e.id from MailboxEntry e, MailboxEntry o where e.box.id=?1 and o.box.id=?2 and o.message = e.message and e.message.id in ?3")
+	Collection<Integer> findEntriesAlsoInBoxByMessages(int boxId, int otherBoxId, Collection<Integer> messageIds);
+
+	// Rows of (entry id, origin box id, destination box id, message id) with
+	// the entries of the messages stored in the system box called 'origin'
+	// of an actor that are not stored yet in his or her system box called
+	// 'destination'
+	@Query("select e.id, e.box.id, d.id, e.message.id from MailboxEntry e, Box d where e.message.id in ?1 and e.box.isSystemBox=true and e.box.name=?2 and d.actor=e.box.actor and d.isSystemBox=true and d.name=?3 and not exists (select x from MailboxEntry x where x.box=d and x.message=e.message)")
+	List<Object[]> findEntriesToMoveBetweenSystemBoxes(Collection<Integer> messageIds, String origin, String destination);
+
+	// Moves each entry to the system box called 'destination' of the owner
+	// of its box
+	@Modifying
+	@Query(value = "update mailbox_entry e join box o on o.id = e.box join box d on d.actor = o.actor and d.is_system_box = true and d.name = ?2 set e.box = d.id where e.id in ?1", nativeQuery = true)
+	int moveEntriesToSystemBox(Collection<Integer> entryIds, String destination);
+
+	@Modifying
+	@Query("update MailboxEntry e set e.box=?2 where e.box.id=?1")
+	int moveEntries(int originBoxId, Box destination);
+
+	@Modifying
+	@Query("update MailboxEntry e set e.box=?2 where e.box.id=?1 and e.message.id in ?3")
+	int moveEntriesByMessages(int originBoxId, Box destination, Collection<Integer> messageIds);
+
+	@Modifying
+	@Query("delete from MailboxEntry e where e.id in ?1")
+	int deleteEntries(Collection<Integer> entryIds);
+
+	@Modifying
+	@Query("delete from MailboxEntry e where e.message.id=?2 and e.box.id in (select b.id from Box b where b.actor.id=?1)")
+	int deleteEntriesFromActorByMessage(int actorId, int messageId);
+
+	@Modifying
+	@Query("delete from MailboxEntry e where e.message.id in ?2 and e.box.id in (select b.id from Box b where b.actor.id=?1)")
+	int deleteEntriesFromActorByMessages(int actorId, Collection<Integer> messageIds);
+
+	@Modifying
+	@Query("delete from MailboxEntry e where e.message.id in (select m.id from Message m where m.sender.id=?1)")
+	int deleteEntriesOfMessagesSentByActor(int actorId);
+
+	@Modifying
+	@Query("delete from MailboxEntry e where e.message.id in ?1")
+	int deleteEntriesOfMessages(Collection<Integer> messageIds);
+
+	@Modifying
+	@Query("delete from MailboxEntry e where e.box.id in (select b.id from Box b where b.actor.id=?1)")
+	int deleteEntriesFromActor(int actorId);
+
+}
@@ -0,0 +1,18 @@
+
+package repositories;
+
+import java.util.Collection;
+
+import domain.Box;
+import domain.Message;
+
+public interface MailboxEntryRepositoryCustom {
+
+	// Stores the message in every box, inserting the entries in JDBC batches
+	// and without loading the boxes.
+	void addMessageToBoxes(Message message, Collection<Integer> boxIds);
+
+	// Stores every message in the box, in JDBC batches as well
+	void addMessagesToBox(Collection<Message> messages, Box box);
+
+}
@@ -0,0 +1,74 @@
+
+package repositories;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import domain.Box;
+import domain.MailboxEntry;
+import domain.Message;
+
+public class MailboxEntryRepositoryImpl implements MailboxEntryRepositoryCustom {
+
+	// Must be a multiple of hibernate.jdbc.batch_size
+	private static final int	FLUSH_SIZE	= 500;
+
+	@PersistenceContext
+	private EntityManager		entityManager;
+
+
+	@Override
+	public void addMessageToBoxes(final Message message, final Collection<Integer> boxIds) {
+		List<MailboxEntry> pending;
+		MailboxEntry entry;
+
+		pending = new ArrayList<MailboxEntry>(Math.min(boxIds.size(), MailboxEntryRepositoryImpl.FLUSH_SIZE));
+		for (final Integer boxId : boxIds) {
+			entry = new MailboxEntry();
+			entry.setBox(this.entityManager.getReference(Box.class, boxId));
+			entry.setMessage(message);
+			entry.setDeliveredMoment(message.getSentMoment());
+
+			this.entityManager.persist(entry);
+			pending.add(entry);
+
+			if (pending.size() == MailboxEntryRepositoryImpl.FLUSH_SIZE)
+				this.flushAndDetach(pending);
+		}
+		this.flushAndDetach(pending);
+	}
+
+	@Override
+	public void addMessagesToBox(final Collection<Message> messages, final Box box) {
+		List<MailboxEntry> pending;
+		MailboxEntry entry;
+
+		pending = new ArrayList<MailboxEntry>(Math.min(messages.size(), MailboxEntryRepositoryImpl.FLUSH_SIZE));
+		for (final Message m : messages) {
+			entry = new MailboxEntry();
+			entry.setBox(box);
+			entry.setMessage(m);
+			entry.setDeliveredMoment(m.getSentMoment());
+
+			this.entityManager.persist(entry);
+			pending.add(entry);
+
+			if (pending.size() == MailboxEntryRepositoryImpl.FLUSH_SIZE)
+				this.flushAndDetach(pending);
+		}
+		this.flushAndDetach(pending);
+	}
+
+	// Keeps the persistence context small during a big fan-out
+	private void flushAndDetach(final List<MailboxEntry> entries) {
+		this.entityManager.flush();
+		for (final MailboxEntry e : entries)
+			this.entityManager.detach(e);
+		entries.clear();
+	}
+
+}
@@ -2,8 +2,12 @@
 package repositories;
 
 import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
@@ -21,7 +25,76 @@ public interface MessageRepository extends JpaRepository<Message, Integer> {
 	@Query("select m from Message m where m.sender.id=?1")
 	Collection<Message> findSentMessagesByActor(int actorId);
 
-	@Query("select m from Message m where (select ac from Actor ac where ac.id=?1) member of m.recipients")
-	Collection<Message> findReceivedMessagesByActor(int actor);
+	// The recipients are read straight from the join table: going through
+	// Actor would join the union of every actor table.
+	@Query(value = "select m.* from message m join message_recipients mr on mr.message = m.id where mr.recipients = ?1", nativeQuery = true)
+	Collection<Message> findReceivedMessagesByActor(int actorId);
+
+	// Keyset page of the ids of the messages received by an actor
+	@Query(value = "select mr.message from message_recipients mr where mr.recipients = ?1 and mr.message > ?2 order by mr.message limit ?3", nativeQuery = true)
+	List<Integer> findReceivedMessageIdsByActor(int actorId, int afterMessageId, int size);
+
+	// Page of the recipients of a message, in id order, that follow the
+	// given actor id
+	@Query(value = "select mr.recipients from message_recipients mr where mr.message = ?1 and mr.recipients > ?2 order by mr.recipients limit ?3", nativeQuery = true)
+	List<Integer> findRecipientIdsAfter(int messageId, int actorId, int size);
+
+	@Query(value = "select count(*) from message_recipients mr where mr.message = ?1 and mr.recipients = ?2", nativeQuery = true)
+	Number numberOfRecipientRows(int messageId, int actorId);
+
+	@Query("select m from Message m where m.id in ?1 order by m.id")
+	List<Message> findByIds(Collection<Integer> messageIds);
+
+	// Messages that are only held in trash boxes, if at all. The ones
+	// addressed to an audience are left out, as they may still be pending
+	// for some of its members.
+	@Query("select m.id from Message m where m.sentMoment < ?1 and m.audience is null and not exists (select e from MailboxEntry e where e.message=m and (e.box.isSystemBox=false or e.box.name<>'trash box')) order by m.sentMoment")
+	List<Integer> findArchivableMessageIdsSentBefore(Date moment, Pageable pageable);
+
+	@Query("select m.id from Message m where m.id > ?1 order by m.id")
+	List<Integer> findMessageIdsAfter(int messageId, Pageable pageable);
+
+	// The loaded messages would keep the old flag otherwise
+	@Modifying(clearAutomatically = true)
+	@Query("update Message m set m.isSpam=?2 where m.id in ?1")
+	int updateIsSpam(Collection<Integer> messageIds, boolean isSpam);
+
+	@Query("select m from Message m where m.id > ?1 order by m.id")
+	List<Message> findMessagesAfter(int messageId, Pageable pageable);
+
+	// Messages whose only recipient is the given actor
+	@Query(value = "select mr.message from message_recipients mr where mr.recipients = ?1 and not exists (select 1 from message_recipients o where o.message = mr.message and o.recipients <> ?1)", nativeQuery = true)
+	List<Integer> findMessageIdsReceivedOnlyByActor(int actorId);
+
+	@Modifying
+	@Query(value = "delete mr from message_recipients mr join message m on m.id = mr.message where m.sender = ?1", nativeQuery = true)
+	int deleteRecipientsOfMessagesSentByActor(int actorId);
+
+	@Modifying
+	@Query(value = "delete from message_recipients where recipients = ?1", nativeQuery = true)
+	int deleteRecipientFromMessages(int actorId);
+
+	// Messages of the selection that no box holds and that are not
+	// addressed to an audience
+	@Query("select m.id from Message m where m.id in ?1 and m.audience is null and not exists (select e from MailboxEntry e where e.message=m)")
+	List<Integer> findOrphanMessageIds(Collection<Integer> messageIds);
+
+	@Modifying
+	@Query(value = "delete from message_recipients where message in ?1", nativeQuery = true)
+	int deleteRecipientsOfMessages(Collection<Integer> messageIds);
+
+	@Modifying
+	@Query("delete from Message m where m.sender.id=?1")
+	int deleteMessagesSentByActor(int actorId);
+
+	@Modifying
+	@Query("delete from Message m where m.id in ?1")
+	int deleteMessages(Collection<Integer> messageIds);
+
+	// The persistence context is cleared, so that archived messages are no
+	// longer read from it
+	@Modifying(clearAutomatically = true)
+	@Query("delete from Message m where m.id in ?1")
+	int deleteArchivedMessages(Collection<Integer> messageIds);
 
 }
@@ -0,0 +1,23 @@
+
+package repositories;
+
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import domain.OutboxEvent;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Integer> {
+
+	@Query("select e.id from OutboxEvent e where e.status='PENDING' and e.nextAttemptMoment<=?1 order by e.nextAttemptMoment asc")
+	List<Integer> findDueEventIds(Date moment, Pageable pageable);
+
+	@Query("select count(e) from OutboxEvent e where e.status='PENDING'")
+	Integer numberOfPendingEvents();
+
+}
@@ -0,0 +1,24 @@
+
+package repositories;
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import domain.SpamReclassification;
+
+@Repository
+public interface SpamReclassificationRepository extends JpaRepository<SpamReclassification, Integer> {
+
+	@Query("select s from SpamReclassification s where s.isFinished=false order by s.id desc")
+	List<SpamReclassification> findPending(Pageable pageable);
+
+	@Modifying
+	@Query("update SpamReclassification s set s.isFinished=true where s.isFinished=false")
+	int finishPending();
+
+}
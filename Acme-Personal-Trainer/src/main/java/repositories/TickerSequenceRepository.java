@@ -0,0 +1,22 @@
+
+package repositories;
+
+import javax.persistence.LockModeType;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import domain.TickerSequence;
+
+@Repository
+public interface TickerSequenceRepository extends JpaRepository<TickerSequence, Integer> {
+
+	// The row stays locked until the transaction ends, so the nodes that
+	// reserve a block for the same day are serialised
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select t from TickerSequence t where t.datePrefix = ?1")
+	TickerSequence findByDatePrefixForUpdate(String datePrefix);
+
+}
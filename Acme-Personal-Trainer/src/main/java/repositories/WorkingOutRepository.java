@@ -16,9 +16,6 @@ import domain.WorkingOut;
 @Repository
 public interface WorkingOutRepository extends JpaRepository<WorkingOut, Integer> {
 
-	@Query("select w.ticker from WorkingOut w where w.ticker = ?1")
-	String existTicker(String ticker);
-
 	@Query("select w from WorkingOut w where w.trainer.id = ?1")
 	Collection<WorkingOut> findAllWorkingOutsByTrainer(int id);
 
@@ -28,6 +25,12 @@ public interface WorkingOutRepository extends JpaRepository<WorkingOut, Integer>
 	@Query("select w from WorkingOut w where w.isFinalMode = true and w.startMoment >= ?1")
 	Collection<WorkingOut> findAllVisible(Date now);
 
+	@Query("select distinct w from WorkingOut w left join fetch w.categories where w.isFinalMode = true and w.startMoment >= ?1")
+	Collection<WorkingOut> findAllVisibleWithCategories(Date now);
+
+	@Query("select w.id from WorkingOut w where w.trainer.id = ?1 and w.isFinalMode = true")
+	Collection<Integer> findFinalWorkingOutIdsByTrainer(int id);
+
 	@Query("select w.sessions from WorkingOut w where w.id=?1")
 	Collection<Session> getSessionsByWorkingOut(int id);
 
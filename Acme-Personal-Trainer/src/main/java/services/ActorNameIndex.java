@@ -0,0 +1,158 @@
+
+package services;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import forms.ActorSuggestion;
+
+// Prefix index over the names, e-mails and usernames of the actors, used to
+// suggest recipients as they are typed. Every term of an actor is stored in
+// a sorted map as the term, a separator and the actor id, so the actors with
+// a term that starts by a prefix are a range of the map. Lookups don't lock;
+// updates are serialised and keep the version of each actor, so an update
+// is never undone by an older copy of the actor, e.g. from the initial load.
+final class ActorNameIndex {
+
+	private static final char								SEPARATOR	= '\u0000';
+
+	private final ConcurrentSkipListMap<String, Integer>	terms;
+	private final ConcurrentMap<Integer, Entry>				entries;
+	private final Set<Integer>								removed;
+
+
+	ActorNameIndex() {
+		this.terms = new ConcurrentSkipListMap<String, Integer>();
+		this.entries = new ConcurrentHashMap<Integer, Entry>();
+		this.removed = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+	}
+
+	public synchronized void put(final int actorId, final int version, final int userAccountId, final String label, final Collection<String> values) {
+		Entry current, entry;
+
+		current = this.entries.get(actorId);
+		if (!this.removed.contains(actorId) && (current == null || current.version <= version)) {
+			entry = new Entry(version, userAccountId, label, ActorNameIndex.termsOf(values));
+
+			if (current != null)
+				for (final String t : current.terms)
+					this.terms.remove(t + ActorNameIndex.SEPARATOR + actorId);
+			for (final String t : entry.terms)
+				this.terms.put(t + ActorNameIndex.SEPARATOR + actorId, actorId);
+			this.entries.put(actorId, entry);
+		}
+	}
+
+	// Actor ids are never reused, so a removed actor is left out for good
+	public synchronized void remove(final int actorId) {
+		Entry current;
+
+		this.removed.add(actorId);
+
+		current = this.entries.remove(actorId);
+		if (current != null)
+			for (final String t : current.terms)
+				this.terms.remove(t + ActorNameIndex.SEPARATOR + actorId);
+	}
+
+	// Up to size actors with a term that starts by each word of the text,
+	// leaving out the given actors and user accounts. The map is scanned
+	// from the longest word, which is usually the most selective one.
+	public List<ActorSuggestion> search(final String text, final int size, final Collection<Integer> excludedActorIds, final int excludedUserAccountId) {
+		List<ActorSuggestion> results;
+		List<String> words;
+		String longest;
+		Set<Integer> seen;
+		Iterator<Integer> actorIds;
+		Integer actorId;
+		Entry entry;
+
+		results = new ArrayList<ActorSuggestion>();
+		words = new ArrayList<String>(ActorNameIndex.termsOf(Collections.singleton(text)));
+
+		if (!words.isEmpty()) {
+			longest = words.get(0);
+			for (final String w : words)
+				if (w.length() > longest.length())
+					longest = w;
+
+			seen = new HashSet<Integer>();
+			actorIds = this.terms.subMap(longest, true, longest + Character.MAX_VALUE, false).values().iterator();
+			while (results.size() < size && actorIds.hasNext()) {
+				actorId = actorIds.next();
+				entry = this.entries.get(actorId);
+				if (seen.add(actorId) && entry != null && !excludedActorIds.contains(actorId) && entry.userAccountId != excludedUserAccountId && entry.matches(words))
+					results.add(new ActorSuggestion(actorId, entry.label));
+			}
+		}
+
+		return results;
+	}
+
+	public int size() {
+		return this.entries.size();
+	}
+
+	// Lower case words without accents. E-mails are kept whole, and their
+	// local part is added as a term on its own.
+	private static Set<String> termsOf(final Collection<String> values) {
+		Set<String> results;
+		String normalized;
+
+		results = new LinkedHashSet<String>();
+		for (final String v : values)
+			if (v != null) {
+				normalized = Normalizer.normalize(v, Normalizer.Form.NFD).replaceAll("\\p{M}", "").toLowerCase();
+				for (final String w : normalized.split("\\s+"))
+					if (!w.isEmpty()) {
+						results.add(w);
+						if (w.indexOf('@') > 0)
+							results.add(w.substring(0, w.indexOf('@')));
+					}
+			}
+
+		return results;
+	}
+
+
+	private static final class Entry {
+
+		private final int			version;
+		private final int			userAccountId;
+		private final String		label;
+		private final Set<String>	terms;
+
+
+		private Entry(final int version, final int userAccountId, final String label, final Set<String> terms) {
+			this.version = version;
+			this.userAccountId = userAccountId;
+			this.label = label;
+			this.terms = terms;
+		}
+
+		private boolean matches(final Collection<String> words) {
+			boolean result, found;
+
+			result = true;
+			for (final String w : words) {
+				found = false;
+				for (final String t : this.terms)
+					found = found || t.startsWith(w);
+				result = result && found;
+			}
+
+			return result;
+		}
+	}
+
+}
@@ -1,19 +1,28 @@
 
 package services;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import javax.transaction.Transactional;
+import javax.transaction.Transactional.TxType;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 
 import repositories.ActorRepository;
+import security.Authority;
 import security.LoginService;
 import security.UserAccount;
 import domain.Actor;
 import domain.Administrator;
+import domain.Customer;
+import forms.ActorSuggestion;
 
 @Service
 @Transactional
@@ -38,6 +47,18 @@ public class ActorService {
 	@Autowired
 	private BoxService				boxService;
 
+	@Autowired
+	private AudienceMembershipService	audienceMembershipService;
+
+	@Autowired
+	private AdministratorService		administratorService;
+
+	// Recipient suggestions, loaded on the first search and kept up to date
+	// as actors are saved and deleted
+	private final ActorNameIndex	actorNameIndex	= new ActorNameIndex();
+
+	private volatile boolean		actorNameIndexLoaded;
+
 
 	// Constructors -------------------------------
 
@@ -64,6 +85,10 @@ public class ActorService {
 			result.setPhoto(actor.getPhoto().trim());
 		result.setPhoneNumber(this.utilityService.getValidPhone(actor.getPhoneNumber()));
 
+		this.audienceMembershipService.synchronise(result);
+
+		this.indexAfterCommit(result);
+
 		return result;
 
 	}
@@ -79,7 +104,12 @@ public class ActorService {
 		// Delete social profiles
 		this.socialProfileService.deleteSocialProfiles(actor);
 
+		// Delete audience memberships
+		this.audienceMembershipService.deleteMembershipsFromActor(actor);
+
 		this.actorRepository.delete(actor);
+
+		this.unindexAfterCommit(actor.getId());
 	}
 
 	public Collection<Actor> findAll() {
@@ -206,6 +236,52 @@ public class ActorService {
 		return result;
 	}
 
+	// Audiences the actor belongs to: everybody, his or her roles and, for
+	// premium customers, the premium one
+	public Collection<String> findAudiences(final Actor actor) {
+		Collection<String> results;
+
+		results = new ArrayList<String>();
+		results.add("ALL");
+		for (final Authority a : actor.getUserAccount().getAuthorities())
+			results.add("ROLE:" + a.getAuthority());
+		if (actor instanceof Customer && ((Customer) actor).getIsPremium())
+			results.add("PREMIUM");
+
+		return results;
+	}
+
+	// Actors that no longer exist are left out
+	protected Collection<Actor> findByIds(final Collection<Integer> actorIds) {
+		Collection<Actor> results;
+
+		if (actorIds.isEmpty())
+			results = new ArrayList<Actor>();
+		else
+			results = this.actorRepository.findByIds(actorIds);
+
+		return results;
+	}
+
+	// Actors whose name, surname, e-mail or username start by the words of
+	// the text, other than the principal, the system and the given actors.
+	// It is called on every keystroke and only reads the in-memory index, so
+	// it doesn't open a transaction.
+	@Transactional(TxType.NOT_SUPPORTED)
+	public List<ActorSuggestion> findRecipientSuggestions(final String text, final int size, final Collection<Integer> excludedActorIds) {
+		Assert.notNull(text);
+		Assert.isTrue(size > 0);
+
+		List<ActorSuggestion> results;
+
+		if (!this.actorNameIndexLoaded)
+			this.loadActorNameIndex();
+
+		results = this.actorNameIndex.search(text, size, excludedActorIds, LoginService.getPrincipal().getId());
+
+		return results;
+	}
+
 	public Collection<Actor> findActorsWithoutPrincipal() {
 		Collection<Actor> results;
 		Actor principal;
@@ -217,4 +293,51 @@ public class ActorService {
 		return results;
 	}
 
+	// Private methods ---------------------------
+
+	private synchronized void loadActorNameIndex() {
+		if (!this.actorNameIndexLoaded) {
+			// The system is resolved once and left out of the index for good
+			this.actorNameIndex.remove(this.administratorService.findSystem().getId());
+			for (final Actor a : this.findAll())
+				this.index(a);
+			this.actorNameIndexLoaded = true;
+		}
+	}
+
+	private void index(final Actor actor) {
+		String label;
+
+		label = actor.getName() + (actor.getMiddleName() == null || actor.getMiddleName().isEmpty() ? "" : " " + actor.getMiddleName()) + " " + actor.getSurname();
+		this.actorNameIndex.put(actor.getId(), actor.getVersion(), actor.getUserAccount().getId(), label, Arrays.asList(actor.getName(), actor.getMiddleName(), actor.getSurname(), actor.getEmail(), actor.getUserAccount().getUsername()));
+	}
+
+	// The index only shows committed changes. The version of the actor is
+	// read once it has been flushed.
+	private void indexAfterCommit(final Actor actor) {
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+				@Override
+				public void afterCommit() {
+					ActorService.this.index(actor);
+				}
+			});
+		else
+			this.index(actor);
+	}
+
+	private void unindexAfterCommit(final int actorId) {
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+				@Override
+				public void afterCommit() {
+					ActorService.this.actorNameIndex.remove(actorId);
+				}
+			});
+		else
+			this.actorNameIndex.remove(actorId);
+	}
+
 }
@@ -45,6 +45,9 @@ public class ApplicationService {
 	@Autowired
 	private CreditCardService		creditCardService;
 
+	@Autowired
+	private OutboxEventService		outboxEventService;
+
 
 	//Constructor ----------------------------------------------------
 	public ApplicationService() {
@@ -104,7 +107,7 @@ public class ApplicationService {
 
 		application.setStatus("ACCEPTED");
 		pendingApplications = this.findPendingApplicationsByWorkingOut(application.getWorkingOut().getId());
-		//this.messageService.notification_applicationStatusChanges(application);
+		this.outboxEventService.notifyApplicationStatusChanges(application);
 
 		if (!(pendingApplications.isEmpty()))
 			for (final Application a : pendingApplications)
@@ -116,7 +119,7 @@ public class ApplicationService {
 		Assert.isTrue(this.trainerService.findByPrincipal().equals(application.getWorkingOut().getTrainer()));
 		Assert.isTrue(application.getStatus().equals("PENDING"));
 		application.setStatus("REJECTED");
-		//this.messageService.notification_applicationStatusChanges(application);
+		this.outboxEventService.notifyApplicationStatusChanges(application);
 	}
 
 	protected Application findOne(final int applicationId) {
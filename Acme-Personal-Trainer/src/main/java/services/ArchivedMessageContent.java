@@ -0,0 +1,240 @@
+
+package services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.util.Assert;
+
+import domain.Actor;
+import domain.Message;
+
+// Content of an archived message: the message itself, the ids of its
+// sender and recipients, the actors that held it in a box and the ones that
+// had taken it from its audience when it was archived. It is stored as a
+// gzipped binary record that starts with a format version.
+final class ArchivedMessageContent {
+
+	private static final int		FORMAT_VERSION	= 1;
+
+	private static final Charset	UTF_8			= Charset.forName("UTF-8");
+
+	private final int				messageId;
+	private final Date				sentMoment;
+	private final String			subject;
+	private final String			body;
+	private final String			priority;
+	private final String			tags;
+	private final boolean			isSpam;
+	private final String			audience;
+	private final int				senderId;
+	private final List<Integer>		recipientIds;
+	private final List<Integer>		holderIds;
+	private final List<Integer>		receiptIds;
+
+
+	ArchivedMessageContent(final Message message, final Collection<Integer> holderIds, final Collection<Integer> receiptIds) {
+		this.messageId = message.getId();
+		this.sentMoment = message.getSentMoment();
+		this.subject = message.getSubject();
+		this.body = message.getBody();
+		this.priority = message.getPriority();
+		this.tags = message.getTags();
+		this.isSpam = message.getIsSpam();
+		this.audience = message.getAudience();
+		this.senderId = message.getSender().getId();
+		this.recipientIds = new ArrayList<Integer>();
+		for (final Actor a : message.getRecipients())
+			this.recipientIds.add(a.getId());
+		this.holderIds = new ArrayList<Integer>(holderIds);
+		this.receiptIds = new ArrayList<Integer>(receiptIds);
+	}
+
+	private ArchivedMessageContent(final int messageId, final DataInputStream input) throws IOException {
+		Assert.isTrue(input.readInt() == ArchivedMessageContent.FORMAT_VERSION);
+
+		this.messageId = messageId;
+		this.sentMoment = new Date(input.readLong());
+		this.subject = ArchivedMessageContent.readString(input);
+		this.body = ArchivedMessageContent.readString(input);
+		this.priority = ArchivedMessageContent.readString(input);
+		this.tags = ArchivedMessageContent.readString(input);
+		this.isSpam = input.readBoolean();
+		this.audience = ArchivedMessageContent.readString(input);
+		this.senderId = input.readInt();
+		this.recipientIds = ArchivedMessageContent.readIds(input);
+		this.holderIds = ArchivedMessageContent.readIds(input);
+		this.receiptIds = ArchivedMessageContent.readIds(input);
+	}
+
+	public static ArchivedMessageContent decode(final int messageId, final byte[] bytes) {
+		ArchivedMessageContent result;
+		DataInputStream input;
+
+		try {
+			input = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(bytes)));
+			try {
+				result = new ArchivedMessageContent(messageId, input);
+			} finally {
+				input.close();
+			}
+		} catch (final IOException oops) {
+			throw new IllegalStateException(oops);
+		}
+
+		return result;
+	}
+
+	public byte[] encode() {
+		ByteArrayOutputStream result;
+		DataOutputStream output;
+
+		result = new ByteArrayOutputStream();
+		try {
+			output = new DataOutputStream(new GZIPOutputStream(result));
+			try {
+				output.writeInt(ArchivedMessageContent.FORMAT_VERSION);
+				output.writeLong(this.sentMoment.getTime());
+				ArchivedMessageContent.writeString(output, this.subject);
+				ArchivedMessageContent.writeString(output, this.body);
+				ArchivedMessageContent.writeString(output, this.priority);
+				ArchivedMessageContent.writeString(output, this.tags);
+				output.writeBoolean(this.isSpam);
+				ArchivedMessageContent.writeString(output, this.audience);
+				output.writeInt(this.senderId);
+				ArchivedMessageContent.writeIds(output, this.recipientIds);
+				ArchivedMessageContent.writeIds(output, this.holderIds);
+				ArchivedMessageContent.writeIds(output, this.receiptIds);
+			} finally {
+				output.close();
+			}
+		} catch (final IOException oops) {
+			throw new IllegalStateException(oops);
+		}
+
+		return result.toByteArray();
+	}
+
+	// The message is never stored again; its sender and recipients are the
+	// given actors
+	public Message toMessage(final Actor sender, final Collection<Actor> recipients) {
+		Message result;
+
+		result = new Message();
+		result.setId(this.messageId);
+		result.setSentMoment(this.sentMoment);
+		result.setSubject(this.subject);
+		result.setBody(this.body);
+		result.setPriority(this.priority);
+		result.setTags(this.tags);
+		result.setIsSpam(this.isSpam);
+		result.setAudience(this.audience);
+		result.setSender(sender);
+		result.setRecipients(recipients);
+
+		return result;
+	}
+
+	public int getMessageId() {
+		return this.messageId;
+	}
+
+	public Date getSentMoment() {
+		return this.sentMoment;
+	}
+
+	public String getSubject() {
+		return this.subject;
+	}
+
+	public String getBody() {
+		return this.body;
+	}
+
+	public String getTags() {
+		return this.tags;
+	}
+
+	public String getAudience() {
+		return this.audience;
+	}
+
+	public int getSenderId() {
+		return this.senderId;
+	}
+
+	public List<Integer> getRecipientIds() {
+		return Collections.unmodifiableList(this.recipientIds);
+	}
+
+	public List<Integer> getHolderIds() {
+		return Collections.unmodifiableList(this.holderIds);
+	}
+
+	public List<Integer> getReceiptIds() {
+		return Collections.unmodifiableList(this.receiptIds);
+	}
+
+	// Private methods ---------------------------
+
+	// Strings are written as their length in bytes, -1 for null, followed
+	// by their UTF-8 bytes, since bodies may be longer than writeUTF allows
+	private static void writeString(final DataOutputStream output, final String value) throws IOException {
+		byte[] bytes;
+
+		if (value == null)
+			output.writeInt(-1);
+		else {
+			bytes = value.getBytes(ArchivedMessageContent.UTF_8);
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	}
+
+	private static String readString(final DataInputStream input) throws IOException {
+		String result;
+		byte[] bytes;
+		int length;
+
+		length = input.readInt();
+		if (length < 0)
+			result = null;
+		else {
+			bytes = new byte[length];
+			input.readFully(bytes);
+			result = new String(bytes, ArchivedMessageContent.UTF_8);
+		}
+
+		return result;
+	}
+
+	private static void writeIds(final DataOutputStream output, final List<Integer> ids) throws IOException {
+		output.writeInt(ids.size());
+		for (final Integer id : ids)
+			output.writeInt(id);
+	}
+
+	private static List<Integer> readIds(final DataInputStream input) throws IOException {
+		List<Integer> result;
+		int size;
+
+		size = input.readInt();
+		result = new ArrayList<Integer>(size);
+		for (int i = 0; i < size; i++)
+			result.add(input.readInt());
+
+		return result;
+	}
+
+}
@@ -0,0 +1,165 @@
+
+package services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.transaction.Transactional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import repositories.ArchivedMessageRepository;
+import domain.Actor;
+import domain.ArchivedMessage;
+import domain.Message;
+
+@Service
+@Transactional
+public class ArchivedMessageService {
+
+	// Managed repository --------------------------
+	@Autowired
+	private ArchivedMessageRepository	archivedMessageRepository;
+
+	// Other supporting services -------------------
+	@Autowired
+	private ActorService				actorService;
+
+
+	// Constructor --------------------------------
+	public ArchivedMessageService() {
+		super();
+	}
+
+	// Protected methods --------------------------
+
+	// Stores the messages in the archive together with the actors that hold
+	// them and the ones that have taken them from their audience, keyed by
+	// message id. The caller removes them from the message tables.
+	protected void archive(final Collection<Message> messages, final Map<Integer, Set<Integer>> holderIds, final Map<Integer, Set<Integer>> receiptIds) {
+		Assert.notNull(messages);
+
+		List<ArchivedMessage> archivedMessages;
+		ArchivedMessage archivedMessage;
+		ArchivedMessageContent content;
+
+		archivedMessages = new ArrayList<ArchivedMessage>(messages.size());
+		for (final Message m : messages) {
+			content = new ArchivedMessageContent(m, this.valueOrEmpty(holderIds, m.getId()), this.valueOrEmpty(receiptIds, m.getId()));
+
+			archivedMessage = new ArchivedMessage();
+			archivedMessage.setMessageId(m.getId());
+			archivedMessage.setSenderId(m.getSender().getId());
+			archivedMessage.setSentMoment(m.getSentMoment());
+			archivedMessage.setContent(content.encode());
+			archivedMessages.add(archivedMessage);
+		}
+
+		this.archivedMessageRepository.save(archivedMessages);
+	}
+
+	// Returns null if the message has not been archived
+	protected ArchivedMessageContent findContent(final int messageId) {
+		ArchivedMessageContent result;
+		ArchivedMessage archivedMessage;
+
+		archivedMessage = this.archivedMessageRepository.findByMessageId(messageId);
+		result = archivedMessage == null ? null : ArchivedMessageContent.decode(messageId, archivedMessage.getContent());
+
+		return result;
+	}
+
+	protected List<ArchivedMessageContent> findContents(final Collection<Integer> messageIds) {
+		List<ArchivedMessageContent> results;
+
+		results = new ArrayList<ArchivedMessageContent>();
+		if (!messageIds.isEmpty())
+			for (final ArchivedMessage a : this.archivedMessageRepository.findByMessageIds(messageIds))
+				results.add(ArchivedMessageContent.decode(a.getMessageId(), a.getContent()));
+
+		return results;
+	}
+
+	// Page of the archive, in message id order, that follows the given
+	// message id (0 for the first page)
+	protected List<ArchivedMessageContent> findContentsAfter(final int messageId, final int size) {
+		List<ArchivedMessageContent> results;
+
+		results = new ArrayList<ArchivedMessageContent>();
+		for (final ArchivedMessage a : this.archivedMessageRepository.findArchivedMessagesAfter(messageId, new PageRequest(0, size)))
+			results.add(ArchivedMessageContent.decode(a.getMessageId(), a.getContent()));
+
+		return results;
+	}
+
+	// The archived messages, rebuilt with their sender and recipients read
+	// with a single query. They must never be saved.
+	protected List<Message> toMessages(final Collection<ArchivedMessageContent> contents) {
+		List<Message> results;
+		Set<Integer> actorIds;
+		Map<Integer, Actor> actors;
+		Collection<Actor> recipients;
+
+		actorIds = new HashSet<Integer>();
+		for (final ArchivedMessageContent c : contents) {
+			actorIds.add(c.getSenderId());
+			actorIds.addAll(c.getRecipientIds());
+		}
+
+		actors = new HashMap<Integer, Actor>();
+		for (final Actor a : this.actorService.findByIds(actorIds))
+			actors.put(a.getId(), a);
+
+		results = new ArrayList<Message>(contents.size());
+		for (final ArchivedMessageContent c : contents) {
+			recipients = new ArrayList<Actor>();
+			for (final Integer recipientId : c.getRecipientIds())
+				if (actors.containsKey(recipientId))
+					recipients.add(actors.get(recipientId));
+
+			results.add(c.toMessage(actors.get(c.getSenderId()), recipients));
+		}
+
+		return results;
+	}
+
+	protected Message toMessage(final ArchivedMessageContent content) {
+		Message result;
+
+		result = this.toMessages(Collections.singleton(content)).get(0);
+
+		return result;
+	}
+
+	// It returns the ids of the messages deleted
+	protected List<Integer> deleteArchivedMessagesSentByActor(final Actor actor) {
+		List<Integer> results;
+
+		results = this.archivedMessageRepository.findMessageIdsSentByActor(actor.getId());
+		if (!results.isEmpty())
+			this.archivedMessageRepository.deleteArchivedMessagesSentByActor(actor.getId());
+
+		return results;
+	}
+
+	// Private methods ---------------------------
+	private Set<Integer> valueOrEmpty(final Map<Integer, Set<Integer>> map, final int key) {
+		Set<Integer> result;
+
+		result = map.get(key);
+		if (result == null)
+			result = Collections.emptySet();
+
+		return result;
+	}
+
+}
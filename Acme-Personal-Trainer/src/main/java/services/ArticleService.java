@@ -29,6 +29,9 @@ public class ArticleService {
 	@Autowired
 	private UtilityService		utilityService;
 
+	@Autowired
+	private OutboxEventService	outboxEventService;
+
 
 	//Constructor ----------------------------------------------------
 	public ArticleService() {
@@ -109,6 +112,8 @@ public class ArticleService {
 
 		article.setIsFinalMode(true);
 		article.setPublishedMoment(this.utilityService.current_moment());
+
+		this.outboxEventService.notifyNewArticle(article);
 	}
 
 	public Article reconstruct(final Article article, final BindingResult binding) {
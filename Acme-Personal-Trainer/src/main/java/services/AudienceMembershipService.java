@@ -0,0 +1,113 @@
+
+package services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.transaction.Transactional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import repositories.AudienceMembershipRepository;
+import domain.Actor;
+import domain.AudienceMembership;
+import domain.Message;
+
+@Service
+@Transactional
+public class AudienceMembershipService {
+
+	// Managed repository --------------------------
+	@Autowired
+	private AudienceMembershipRepository	audienceMembershipRepository;
+
+	// Supporting services -------------------------
+	@Autowired
+	private ActorService					actorService;
+
+	@Autowired
+	private UtilityService					utilityService;
+
+
+	// Constructor --------------------------------
+	public AudienceMembershipService() {
+		super();
+	}
+
+	// Simple CRUD methods ------------------------
+	protected AudienceMembership create(final Actor actor, final String audience, final Date startMoment) {
+		AudienceMembership result;
+
+		result = new AudienceMembership();
+		result.setActor(actor);
+		result.setAudience(audience);
+		result.setStartMoment(startMoment);
+
+		return result;
+	}
+
+	// Other business methods ---------------------
+	protected Collection<AudienceMembership> findMembershipsByActor(final Actor actor) {
+		Collection<AudienceMembership> results;
+
+		results = this.audienceMembershipRepository.findMembershipsByActor(actor.getId());
+
+		return results;
+	}
+
+	// Opens a period for every audience the actor has joined and closes the
+	// ones of the audiences he or she has left, such as the premium one when
+	// a customer stops being premium
+	protected void synchronise(final Actor actor) {
+		Assert.isTrue(actor.getId() != 0);
+
+		Collection<String> audiences;
+		Set<String> current;
+		List<AudienceMembership> changed;
+		Date current_moment;
+
+		audiences = this.actorService.findAudiences(actor);
+		current_moment = this.utilityService.current_moment();
+
+		current = new HashSet<String>();
+		changed = new ArrayList<AudienceMembership>();
+		for (final AudienceMembership am : this.audienceMembershipRepository.findCurrentMembershipsByActor(actor.getId())) {
+			current.add(am.getAudience());
+			if (!audiences.contains(am.getAudience())) {
+				am.setEndMoment(current_moment);
+				changed.add(am);
+			}
+		}
+		for (final String a : audiences)
+			if (!current.contains(a))
+				changed.add(this.create(actor, a, current_moment));
+
+		if (!changed.isEmpty())
+			this.audienceMembershipRepository.save(changed);
+	}
+
+	// Whether the message is addressed to an audience the actor belonged to
+	// when it was sent
+	protected boolean isMember(final Actor actor, final Message message) {
+		boolean result;
+
+		result = message.getAudience() != null && this.audienceMembershipRepository.numberOfMembershipsAt(actor.getId(), message.getAudience(), message.getSentMoment()) > 0;
+
+		return result;
+	}
+
+	protected int deleteMembershipsFromActor(final Actor actor) {
+		int result;
+
+		result = this.audienceMembershipRepository.deleteMembershipsFromActor(actor.getId());
+
+		return result;
+	}
+
+}
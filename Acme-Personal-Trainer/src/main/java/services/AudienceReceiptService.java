@@ -0,0 +1,178 @@
+
+package services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.transaction.Transactional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import repositories.AudienceReceiptRepository;
+import domain.Actor;
+import domain.AudienceReceipt;
+import domain.Message;
+
+@Service
+@Transactional
+public class AudienceReceiptService {
+
+	// Managed repository --------------------------
+	@Autowired
+	private AudienceReceiptRepository	audienceReceiptRepository;
+
+
+	// Constructor --------------------------------
+	public AudienceReceiptService() {
+		super();
+	}
+
+	// Simple CRUD methods ------------------------
+	protected AudienceReceipt create(final Actor actor, final Message message) {
+		AudienceReceipt result;
+
+		result = new AudienceReceipt();
+		result.setActor(actor);
+		result.setMessage(message);
+
+		return result;
+	}
+
+	protected AudienceReceipt save(final AudienceReceipt audienceReceipt) {
+		Assert.notNull(audienceReceipt);
+		Assert.notNull(audienceReceipt.getMessage().getAudience());
+
+		AudienceReceipt result;
+
+		result = this.audienceReceiptRepository.save(audienceReceipt);
+
+		return result;
+	}
+
+	// Other business methods ---------------------
+	protected AudienceReceipt findByActorAndMessage(final Actor actor, final Message message) {
+		AudienceReceipt result;
+
+		result = this.audienceReceiptRepository.findByActorAndMessage(actor.getId(), message.getId());
+
+		return result;
+	}
+
+	// Actors that have taken each of the messages
+	protected Map<Integer, Set<Integer>> findActorIdsByMessages(final Collection<Integer> messageIds) {
+		Map<Integer, Set<Integer>> result;
+		Set<Integer> actorIds;
+
+		result = new HashMap<Integer, Set<Integer>>();
+		for (final Object[] row : this.audienceReceiptRepository.findActorIdsByMessages(messageIds)) {
+			actorIds = result.get(row[0]);
+			if (actorIds == null) {
+				actorIds = new HashSet<Integer>();
+				result.put((Integer) row[0], actorIds);
+			}
+			actorIds.add((Integer) row[1]);
+		}
+
+		return result;
+	}
+
+	// Messages addressed to the actor's audiences, while he or she belonged
+	// to them, that he or she has not taken yet, in the order and with the
+	// cursor used by MailboxEntryService, where the key of a message is its
+	// id negated. They are returned in scan
+	// order: newest first, or oldest first when going backwards.
+	protected List<Message> findPendingMessages(final Actor actor, final boolean isSpam, final Date moment, final Integer key, final boolean backwards, final int size) {
+		Assert.isTrue(size > 0);
+		Assert.isTrue((moment == null) == (key == null));
+
+		List<Message> results;
+		PageRequest pageRequest;
+
+		pageRequest = new PageRequest(0, size);
+		if (moment == null)
+			results = this.audienceReceiptRepository.findFirstPageOfPendingMessages(isSpam, actor.getId(), pageRequest);
+		else if (backwards)
+			results = this.audienceReceiptRepository.findPageOfPendingMessagesAfter(isSpam, actor.getId(), moment, -key, pageRequest);
+		else
+			results = this.audienceReceiptRepository.findPageOfPendingMessagesBefore(isSpam, actor.getId(), moment, -key, pageRequest);
+
+		return results;
+	}
+
+	protected Integer numberOfPendingMessages(final Actor actor, final boolean isSpam) {
+		Integer result;
+
+		result = this.audienceReceiptRepository.numberOfPendingMessages(isSpam, actor.getId());
+
+		return result;
+	}
+
+	protected Integer numberOfPendingMessagesSentUpTo(final Actor actor, final boolean isSpam, final Date moment) {
+		Integer result;
+
+		result = this.audienceReceiptRepository.numberOfPendingMessagesSentUpTo(isSpam, actor.getId(), moment);
+
+		return result;
+	}
+
+	// Messages of the selection addressed to the actor's audiences that he
+	// or she has not taken yet
+	protected List<Message> findPendingMessagesByIds(final Actor actor, final boolean isSpam, final Collection<Integer> messageIds) {
+		List<Message> results;
+
+		if (messageIds.isEmpty())
+			results = Collections.emptyList();
+		else
+			results = this.audienceReceiptRepository.findPendingMessagesByIds(isSpam, actor.getId(), messageIds);
+
+		return results;
+	}
+
+	// The receipts are inserted in JDBC batches
+	protected void saveReceipts(final Actor actor, final Collection<Message> messages) {
+		List<AudienceReceipt> receipts;
+
+		receipts = new ArrayList<AudienceReceipt>(messages.size());
+		for (final Message m : messages) {
+			Assert.notNull(m.getAudience());
+			receipts.add(this.create(actor, m));
+		}
+
+		this.audienceReceiptRepository.save(receipts);
+	}
+
+	protected int deleteReceiptsOfMessages(final Collection<Integer> messageIds) {
+		int result;
+
+		result = this.audienceReceiptRepository.deleteReceiptsOfMessages(messageIds);
+
+		return result;
+	}
+
+	protected int deleteReceiptsFromActor(final Actor actor) {
+		int result;
+
+		result = this.audienceReceiptRepository.deleteReceiptsFromActor(actor.getId());
+
+		return result;
+	}
+
+	protected int deleteReceiptsOfMessagesSentByActor(final Actor actor) {
+		int result;
+
+		result = this.audienceReceiptRepository.deleteReceiptsOfMessagesSentByActor(actor.getId());
+
+		return result;
+	}
+
+}
@@ -0,0 +1,119 @@
+
+package services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.transaction.Transactional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import repositories.BoxCounterRepository;
+import domain.Actor;
+import domain.Box;
+import domain.BoxCounter;
+import domain.Message;
+
+// Keeps the message counter of every box in SLOTS rows of its own, apart
+// from the box. Each change goes to a random slot with a single bulk update,
+// in the same transaction as the entries it counts, and reading a counter
+// only sums its slots.
+@Service
+@Transactional
+public class BoxCounterService {
+
+	private static final int		SLOTS	= 4;
+
+	// Managed repository --------------------------
+	@Autowired
+	private BoxCounterRepository	boxCounterRepository;
+
+
+	// Constructor --------------------------------
+	public BoxCounterService() {
+		super();
+	}
+
+	// Protected methods --------------------------
+
+	protected void createCounters(final Box box) {
+		BoxCounter counter;
+		List<BoxCounter> counters;
+
+		counters = new ArrayList<BoxCounter>(BoxCounterService.SLOTS);
+		for (int slot = 0; slot < BoxCounterService.SLOTS; slot++) {
+			counter = new BoxCounter();
+			counter.setBox(box);
+			counter.setSlot(slot);
+			counter.setMessageCount(0);
+			counters.add(counter);
+		}
+
+		this.boxCounterRepository.save(counters);
+	}
+
+	protected void deleteCounters(final Collection<Integer> boxIds) {
+		if (!boxIds.isEmpty())
+			this.boxCounterRepository.deleteCounters(boxIds);
+	}
+
+	protected void deleteCountersFromActor(final Actor actor) {
+		this.boxCounterRepository.deleteCountersFromActor(actor.getId());
+	}
+
+	protected int numberOfMessagesByBox(final Box box) {
+		Long result;
+
+		result = this.boxCounterRepository.numberOfMessagesByBox(box.getId());
+
+		return result == null ? 0 : result.intValue();
+	}
+
+	protected Map<Integer, Integer> numberOfMessagesByBoxFromActor(final Actor actor) {
+		Map<Integer, Integer> result;
+
+		result = new HashMap<Integer, Integer>();
+		for (final Object[] row : this.boxCounterRepository.numberOfMessagesByBoxFromActor(actor.getId()))
+			result.put((Integer) row[0], ((Long) row[1]).intValue());
+
+		return result;
+	}
+
+	protected void add(final Collection<Integer> boxIds, final int delta) {
+		if (!boxIds.isEmpty() && delta != 0)
+			this.boxCounterRepository.addToMessageCount(boxIds, BoxCounterService.slot(), delta);
+	}
+
+	// The subtractions count the entries, so they must run before the
+	// entries are deleted
+
+	protected void subtractMessageFromActor(final Actor actor, final Message message) {
+		this.boxCounterRepository.decrementMessageCountFromActorByMessage(actor.getId(), message.getId(), BoxCounterService.slot());
+	}
+
+	protected void subtractMessagesFromActor(final Actor actor, final Collection<Integer> messageIds) {
+		if (!messageIds.isEmpty())
+			this.boxCounterRepository.subtractMessagesFromActor(actor.getId(), messageIds, BoxCounterService.slot());
+	}
+
+	protected void subtractMessagesSentByActor(final Actor actor) {
+		this.boxCounterRepository.subtractMessagesSentByActor(actor.getId(), BoxCounterService.slot());
+	}
+
+	protected void subtractMessages(final Collection<Integer> messageIds) {
+		if (!messageIds.isEmpty())
+			this.boxCounterRepository.subtractMessages(messageIds, BoxCounterService.slot());
+	}
+
+	// Private methods ---------------------------
+
+	private static int slot() {
+		return ThreadLocalRandom.current().nextInt(BoxCounterService.SLOTS);
+	}
+
+}
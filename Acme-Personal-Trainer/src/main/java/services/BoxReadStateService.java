@@ -0,0 +1,387 @@
+
+package services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.transaction.Transactional;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import repositories.BoxReadStateRepository;
+import domain.Actor;
+import domain.Box;
+import domain.BoxReadState;
+
+// Keeps, for each box, the ids of the messages that its owner has read as a
+// roaring bitmap. The bitmaps only hold messages stored in the box, so the
+// number of unread messages is the message counter of the box minus the
+// cardinality of its bitmap; the audience messages not taken yet are read
+// up to the pending read moment of the box instead. Decoded bitmaps are cached and only published
+// to the cache once the transaction that read or wrote them commits.
+@Service
+@Transactional
+public class BoxReadStateService {
+
+	private static final int		READ_STATE_CACHE_SIZE	= 10000;
+
+	// Managed repository --------------------------
+	@Autowired
+	private BoxReadStateRepository	boxReadStateRepository;
+
+	private final ReadStateCache	readStateCache			= new ReadStateCache(BoxReadStateService.READ_STATE_CACHE_SIZE);
+
+
+	// Constructor --------------------------------
+	public BoxReadStateService() {
+		super();
+	}
+
+	// Read state cache statistics ----------------
+	public long getReadStateCacheHits() {
+		return this.readStateCache.getHits();
+	}
+
+	public long getReadStateCacheMisses() {
+		return this.readStateCache.getMisses();
+	}
+
+	public long getReadStateCacheEvictions() {
+		return this.readStateCache.getEvictions();
+	}
+
+	public int getReadStateCacheSize() {
+		return this.readStateCache.size();
+	}
+
+	// Protected methods --------------------------
+
+	// Read messages of the box. The bitmap must not be modified.
+	protected RoaringBitmap findReadMessages(final Box box) {
+		RoaringBitmap result;
+
+		result = this.findReadMessages(Collections.singleton(box.getId())).get(box.getId());
+
+		return result;
+	}
+
+	// Read messages of each box, keyed by box id. Boxes missing from the
+	// cache are resolved together with a single query. The bitmaps must not
+	// be modified.
+	protected Map<Integer, RoaringBitmap> findReadMessages(final Collection<Integer> boxIds) {
+		Map<Integer, RoaringBitmap> result;
+		Collection<Integer> misses;
+		RoaringBitmap readMessages;
+
+		result = new HashMap<Integer, RoaringBitmap>();
+		misses = new ArrayList<Integer>();
+		for (final Integer boxId : boxIds) {
+			readMessages = this.readStateCache.get(boxId);
+			if (readMessages == null)
+				misses.add(boxId);
+			else
+				result.put(boxId, readMessages);
+		}
+
+		if (!misses.isEmpty()) {
+			for (final BoxReadState s : this.boxReadStateRepository.findByBoxes(misses)) {
+				readMessages = BoxReadStateService.decode(s.getReadMessages());
+				result.put(s.getBox().getId(), readMessages);
+				this.publish(s.getBox().getId(), s.getVersion(), readMessages);
+			}
+
+			for (final Integer boxId : misses)
+				if (!result.containsKey(boxId)) {
+					readMessages = new RoaringBitmap();
+					result.put(boxId, readMessages);
+					this.publish(boxId, -1, readMessages);
+				}
+		}
+
+		return result;
+	}
+
+	// The messages must be stored in the box
+	protected void markAsRead(final Box box, final Collection<Integer> messageIds) {
+		Assert.notNull(box);
+		Assert.notNull(messageIds);
+
+		BoxReadState state;
+		RoaringBitmap readMessages;
+		boolean changed;
+
+		state = this.findOrCreate(box);
+		readMessages = BoxReadStateService.decode(state.getReadMessages());
+
+		changed = state.getId() == 0;
+		for (final Integer messageId : messageIds)
+			changed |= readMessages.checkedAdd(messageId);
+
+		if (changed)
+			this.update(state, readMessages);
+	}
+
+	// Bulk version of markAsRead, for a bitmap of messages stored in the box
+	protected void markAsRead(final Box box, final RoaringBitmap messageIds) {
+		Assert.notNull(box);
+		Assert.notNull(messageIds);
+
+		BoxReadState state;
+		RoaringBitmap readMessages;
+		int cardinality;
+
+		state = this.findOrCreate(box);
+		readMessages = BoxReadStateService.decode(state.getReadMessages());
+
+		cardinality = readMessages.getCardinality();
+		readMessages.or(messageIds);
+
+		if (state.getId() == 0 || readMessages.getCardinality() != cardinality)
+			this.update(state, readMessages);
+	}
+
+	// Moment up to which the audience messages shown in the box and not
+	// taken yet have been read, or null if none has
+	protected Date findPendingReadMoment(final int boxId) {
+		BoxReadState state;
+		Date result;
+
+		state = this.boxReadStateRepository.findByBox(boxId);
+		result = state == null ? null : state.getPendingReadMoment();
+
+		return result;
+	}
+
+	// The audience messages shown in the box that are not taken yet and were
+	// sent up to the moment are read, without storing a row for any of them
+	protected void markPendingAsRead(final Box box, final Date moment) {
+		Assert.notNull(box);
+		Assert.notNull(moment);
+
+		BoxReadState state;
+
+		state = this.findOrCreate(box);
+		if (state.getPendingReadMoment() == null || state.getPendingReadMoment().before(moment)) {
+			state.setPendingReadMoment(moment);
+			this.update(state, BoxReadStateService.decode(state.getReadMessages()));
+		}
+	}
+
+	// Moves the read marks of the given messages, or of every message when
+	// none is given, from the origin box to the destination box
+	protected void transfer(final Box origin, final Box destination, final Collection<Integer> messageIds) {
+		BoxReadState originState, destinationState;
+		RoaringBitmap originMessages, moved, destinationMessages;
+
+		originState = this.boxReadStateRepository.findByBox(origin.getId());
+		if (originState != null) {
+			originMessages = BoxReadStateService.decode(originState.getReadMessages());
+			moved = messageIds == null ? originMessages.clone() : RoaringBitmap.and(originMessages, BoxReadStateService.toBitmap(messageIds));
+
+			if (!moved.isEmpty()) {
+				originMessages.andNot(moved);
+				this.update(originState, originMessages);
+
+				destinationState = this.findOrCreate(destination);
+				destinationMessages = BoxReadStateService.decode(destinationState.getReadMessages());
+				destinationMessages.or(moved);
+				this.update(destinationState, destinationMessages);
+			}
+		}
+	}
+
+	// Moves the read marks of the given boxes to the destination box and
+	// deletes their read states. It must be called before deleting the boxes.
+	protected void transferAndDelete(final Collection<Box> origins, final Box destination) {
+		Collection<BoxReadState> states;
+		Collection<Integer> boxIds;
+		BoxReadState destinationState;
+		RoaringBitmap moved, destinationMessages;
+
+		boxIds = new ArrayList<Integer>(origins.size());
+		for (final Box b : origins)
+			boxIds.add(b.getId());
+
+		states = this.boxReadStateRepository.findByBoxes(boxIds);
+		if (!states.isEmpty()) {
+			moved = new RoaringBitmap();
+			for (final BoxReadState s : states)
+				moved.or(BoxReadStateService.decode(s.getReadMessages()));
+
+			if (!moved.isEmpty()) {
+				destinationState = this.findOrCreate(destination);
+				destinationMessages = BoxReadStateService.decode(destinationState.getReadMessages());
+				destinationMessages.or(moved);
+				this.update(destinationState, destinationMessages);
+			}
+
+			this.delete(states);
+		}
+	}
+
+	protected void remove(final Box box, final Collection<Integer> messageIds) {
+		BoxReadState state;
+
+		state = this.boxReadStateRepository.findByBox(box.getId());
+		if (state != null)
+			this.remove(state, messageIds);
+	}
+
+	// Clears the read marks of the given messages in every box of the actor.
+	// It must be called before removing the messages from the boxes.
+	protected void removeMessagesFromActor(final Actor actor, final Collection<Integer> messageIds) {
+		this.remove(this.boxReadStateRepository.findStoredMessagesFromActor(actor.getId(), messageIds));
+	}
+
+	// Clears the read marks of the messages sent by the actor in every box.
+	// It must be called before removing the messages from the boxes.
+	protected void removeMessagesSentByActor(final Actor actor) {
+		this.remove(this.boxReadStateRepository.findStoredMessagesSentByActor(actor.getId()));
+	}
+
+	// Clears the read marks of the given messages in every box. It must be
+	// called before removing the messages from the boxes.
+	protected void removeMessages(final Collection<Integer> messageIds) {
+		this.remove(this.boxReadStateRepository.findStoredMessages(messageIds));
+	}
+
+	// Clears the read marks of the given rows of (box id, message id)
+	protected void removeMessagesFromBoxes(final List<Object[]> rows) {
+		this.remove(rows);
+	}
+
+	protected void deleteReadStatesFromActor(final Actor actor) {
+		this.delete(this.boxReadStateRepository.findByActor(actor.getId()));
+	}
+
+	// Private methods ---------------------------
+	private BoxReadState findOrCreate(final Box box) {
+		BoxReadState result;
+
+		result = this.boxReadStateRepository.findByBox(box.getId());
+		if (result == null) {
+			result = new BoxReadState();
+			result.setBox(box);
+			result.setReadMessages(BoxReadStateService.encode(new RoaringBitmap()));
+		}
+
+		return result;
+	}
+
+	// Rows of (box id, message id)
+	private void remove(final List<Object[]> rows) {
+		Map<Integer, Collection<Integer>> messageIdsByBox;
+		Collection<Integer> messageIds;
+
+		messageIdsByBox = new HashMap<Integer, Collection<Integer>>();
+		for (final Object[] row : rows) {
+			messageIds = messageIdsByBox.get(row[0]);
+			if (messageIds == null) {
+				messageIds = new ArrayList<Integer>();
+				messageIdsByBox.put((Integer) row[0], messageIds);
+			}
+			messageIds.add((Integer) row[1]);
+		}
+
+		if (!messageIdsByBox.isEmpty())
+			for (final BoxReadState s : this.boxReadStateRepository.findByBoxes(messageIdsByBox.keySet()))
+				this.remove(s, messageIdsByBox.get(s.getBox().getId()));
+	}
+
+	private void remove(final BoxReadState state, final Collection<Integer> messageIds) {
+		RoaringBitmap readMessages;
+		boolean changed;
+
+		readMessages = BoxReadStateService.decode(state.getReadMessages());
+
+		changed = false;
+		for (final Integer messageId : messageIds)
+			changed |= readMessages.checkedRemove(messageId);
+
+		if (changed)
+			this.update(state, readMessages);
+	}
+
+	private void update(final BoxReadState state, final RoaringBitmap readMessages) {
+		BoxReadState saved;
+
+		readMessages.runOptimize();
+		state.setReadMessages(BoxReadStateService.encode(readMessages));
+		saved = this.boxReadStateRepository.saveAndFlush(state);
+
+		this.readStateCache.evict(saved.getBox().getId());
+		this.publish(saved.getBox().getId(), saved.getVersion(), readMessages.clone());
+	}
+
+	private void delete(final Collection<BoxReadState> states) {
+		for (final BoxReadState s : states)
+			this.readStateCache.evict(s.getBox().getId());
+
+		this.boxReadStateRepository.delete(states);
+	}
+
+	private void publish(final int boxId, final int version, final RoaringBitmap readMessages) {
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+				@Override
+				public void afterCommit() {
+					BoxReadStateService.this.readStateCache.put(boxId, version, readMessages);
+				}
+			});
+		else
+			this.readStateCache.put(boxId, version, readMessages);
+	}
+
+	private static RoaringBitmap toBitmap(final Collection<Integer> messageIds) {
+		RoaringBitmap result;
+
+		result = new RoaringBitmap();
+		for (final Integer messageId : messageIds)
+			result.add(messageId);
+
+		return result;
+	}
+
+	private static RoaringBitmap decode(final byte[] bytes) {
+		RoaringBitmap result;
+
+		result = new RoaringBitmap();
+		try {
+			result.deserialize(new DataInputStream(new ByteArrayInputStream(bytes)));
+		} catch (final IOException oops) {
+			throw new IllegalStateException(oops);
+		}
+
+		return result;
+	}
+
+	private static byte[] encode(final RoaringBitmap readMessages) {
+		ByteArrayOutputStream result;
+
+		result = new ByteArrayOutputStream(readMessages.serializedSizeInBytes());
+		try {
+			readMessages.serialize(new DataOutputStream(result));
+		} catch (final IOException oops) {
+			throw new IllegalStateException(oops);
+		}
+
+		return result.toByteArray();
+	}
+
+}
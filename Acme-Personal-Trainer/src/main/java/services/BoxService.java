@@ -4,32 +4,73 @@ package services;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.transaction.Transactional;
 
+import org.roaringbitmap.RoaringBitmap;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.Validator;
 
 import repositories.BoxRepository;
+import forms.BoxPage;
 import domain.Actor;
 import domain.Box;
+import domain.MailboxEntry;
 import domain.Message;
 
 @Service
 @Transactional
 public class BoxService {
 
+	// Messages shown in a page of a box, which is also the largest selection
+	// of messages that can be moved, deleted or marked as read at once
+	public static final int		PAGE_SIZE				= 5;
+
+	private static final int	DELIVERY_CHUNK_SIZE		= 1000;
+	private static final int	READ_CHUNK_SIZE			= 10000;
+	private static final int	SYSTEM_BOX_CACHE_SIZE	= 10000;
+
+	private static final String	IN_BOX					= "in box";
+	private static final String	OUT_BOX					= "out box";
+	private static final String	SPAM_BOX				= "spam box";
+	private static final String	NOTIFICATION_BOX		= "notification box";
+	private static final String	TRASH_BOX				= "trash box";
+
 	// Managed repository --------------------------
 	@Autowired
-	private BoxRepository	boxRepository;
+	private BoxRepository		boxRepository;
 
 	// Other supporting services -------------------
 	@Autowired
-	private ActorService	actorService;
+	private ActorService		actorService;
+
+	@Autowired
+	private MailboxEntryService	mailboxEntryService;
+
+	@Autowired
+	private AudienceReceiptService	audienceReceiptService;
+
+	@Autowired
+	private AudienceMembershipService	audienceMembershipService;
+
+	@Autowired
+	private BoxReadStateService		boxReadStateService;
+
+	@Autowired
+	private BoxCounterService		boxCounterService;
+
+	private final SystemBoxCache	systemBoxCache	= new SystemBoxCache(BoxService.SYSTEM_BOX_CACHE_SIZE);
 
 
 	// Constructor --------------------------------
@@ -81,7 +122,7 @@ public class BoxService {
 
 		result = new Box();
 		result.setActor(principal);
-		result.setMessages(Collections.<Message> emptySet());
+		result.setPath("/");
 
 		return result;
 	}
@@ -93,11 +134,22 @@ public class BoxService {
 		this.checkName(box);
 
 		Box result;
+		String oldPrefix, newPrefix;
 
 		if (this.boxRepository.exists(box.getId()) && box.getParent() != null)
 			this.checkParent(box);
 
+		oldPrefix = box.getId() != 0 ? this.descendantPrefix(box) : null;
+		box.setPath(box.getParent() == null ? "/" : this.descendantPrefix(box.getParent()));
+
 		result = this.boxRepository.save(box);
+		if (oldPrefix == null)
+			this.boxCounterService.createCounters(result);
+
+		// If the box has been moved, its descendants are moved with it
+		newPrefix = this.descendantPrefix(result);
+		if (oldPrefix != null && !oldPrefix.equals(newPrefix))
+			this.boxRepository.replacePathPrefix(oldPrefix, newPrefix);
 
 		return result;
 	}
@@ -110,41 +162,61 @@ public class BoxService {
 
 		Actor principal;
 		Box trashBox;
-		Collection<Message> messages;
 		Collection<Box> descendantBoxes;
+		Collection<Integer> boxIds;
+		int moved;
 
 		principal = this.actorService.findPrincipal();
 		trashBox = this.findTrashBoxFromActor(principal.getId());
 
 		// If this box contains messages, we must move those messages to
 		// trash box.
-		messages = box.getMessages();
-		if (!messages.isEmpty())
-			this.addMessages(trashBox, messages);
+		moved = this.mailboxEntryService.moveMessages(box, trashBox);
 
 		// If this box has descendant boxes, we must delete them and move the messages of those
 		// descendant boxes to trash box.
 		descendantBoxes = this.descendantBoxes(box);
+		this.boxReadStateService.transferAndDelete(this.withDescendants(box, descendantBoxes), trashBox);
+		boxIds = new ArrayList<Integer>();
+		for (final Box b : this.withDescendants(box, descendantBoxes))
+			boxIds.add(b.getId());
+		this.boxCounterService.deleteCounters(boxIds);
 		if (descendantBoxes != null && !descendantBoxes.isEmpty())
 			for (final Box descendant : descendantBoxes) {
-				messages = descendant.getMessages();
-
-				if (!messages.isEmpty())
-					this.addMessages(trashBox, messages);
+				moved += this.mailboxEntryService.moveMessages(descendant, trashBox);
 
 				this.boxRepository.delete(descendant);
 			}
 
+		this.boxCounterService.add(Collections.singleton(trashBox.getId()), moved);
+
 		this.boxRepository.delete(box);
 	}
 
 	// This method is called when a user wants to remove this data from the system
 	public void deleteBoxesFromActor(final Actor actor) {
 		Collection<Box> boxes;
+		final int actorId;
+
+		this.mailboxEntryService.deleteEntriesFromActor(actor);
+		this.boxReadStateService.deleteReadStatesFromActor(actor);
+		this.boxCounterService.deleteCountersFromActor(actor);
 
 		boxes = this.findBoxesByActor(actor.getId());
 
 		this.boxRepository.delete(boxes);
+
+		// Evicted again after commit, in case a concurrent lookup reloaded it
+		actorId = actor.getId();
+		this.systemBoxCache.evict(actorId);
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+				@Override
+				public void afterCommit() {
+					BoxService.this.systemBoxCache.evict(actorId);
+				}
+			});
 	}
 
 	public Collection<Box> findRootBoxesByActor(final int actorId) {
@@ -189,7 +261,7 @@ public class BoxService {
 			result.setVersion(storedBox.getVersion());
 			result.setIsSystemBox(storedBox.getIsSystemBox());
 			result.setActor(storedBox.getActor());
-			result.setMessages(storedBox.getMessages());
+			result.setPath(storedBox.getPath());
 		}
 
 		result.setName(box.getName().trim());
@@ -210,27 +282,52 @@ public class BoxService {
 		return results;
 	}
 
+	// System box cache statistics ----------------
+	public long getSystemBoxCacheHits() {
+		return this.systemBoxCache.getHits();
+	}
+
+	public long getSystemBoxCacheMisses() {
+		return this.systemBoxCache.getMisses();
+	}
+
+	public long getSystemBoxCacheEvictions() {
+		return this.systemBoxCache.getEvictions();
+	}
+
+	public int getSystemBoxCacheSize() {
+		return this.systemBoxCache.size();
+	}
+
 	// Protected methods --------------------------
 	protected void createSystemBoxes(final Actor actor) {
 		Assert.notNull(actor);
 
-		final String inBox = "in box";
-		final String outBox = "out box";
-		final String notificationBox = "notification box";
-		final String trashBox = "trash box";
-		final String spamBox = "spam box";
+		final Map<String, Integer> boxIds;
+		final int actorId;
+
+		boxIds = new HashMap<String, Integer>();
+		for (final String name : new String[] {
+			BoxService.IN_BOX, BoxService.OUT_BOX, BoxService.SPAM_BOX, BoxService.NOTIFICATION_BOX, BoxService.TRASH_BOX
+		})
+			boxIds.put(name, this.createSystemBox(actor, name).getId());
 
-		this.createSystemBox(actor, inBox);
-		this.createSystemBox(actor, outBox);
-		this.createSystemBox(actor, spamBox);
-		this.createSystemBox(actor, notificationBox);
-		this.createSystemBox(actor, trashBox);
+		// The ids are only published once the actor is committed
+		actorId = actor.getId();
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+				@Override
+				public void afterCommit() {
+					BoxService.this.systemBoxCache.put(actorId, boxIds);
+				}
+			});
 	}
 
 	protected Box findInBoxFromActor(final int actorId) {
 		Box result;
 
-		result = this.boxRepository.findInBoxFromActor(actorId);
+		result = this.findSystemBoxFromActor(actorId, BoxService.IN_BOX);
 
 		return result;
 	}
@@ -238,7 +335,7 @@ public class BoxService {
 	protected Box findOutBoxFromActor(final int actorId) {
 		Box result;
 
-		result = this.boxRepository.findOutBoxFromActor(actorId);
+		result = this.findSystemBoxFromActor(actorId, BoxService.OUT_BOX);
 
 		return result;
 	}
@@ -246,7 +343,7 @@ public class BoxService {
 	protected Box findSpamBoxFromActor(final int actorId) {
 		Box result;
 
-		result = this.boxRepository.findSpamBoxFromActor(actorId);
+		result = this.findSystemBoxFromActor(actorId, BoxService.SPAM_BOX);
 
 		return result;
 	}
@@ -254,7 +351,7 @@ public class BoxService {
 	protected Box findTrashBoxFromActor(final int actorId) {
 		Box result;
 
-		result = this.boxRepository.findTrashBoxFromActor(actorId);
+		result = this.findSystemBoxFromActor(actorId, BoxService.TRASH_BOX);
 
 		return result;
 	}
@@ -262,7 +359,7 @@ public class BoxService {
 	protected Box findNotificationBoxFromActor(final int actorId) {
 		Box result;
 
-		result = this.boxRepository.findNotificationBoxFromActor(actorId);
+		result = this.findSystemBoxFromActor(actorId, BoxService.NOTIFICATION_BOX);
 
 		return result;
 	}
@@ -270,7 +367,7 @@ public class BoxService {
 	protected Collection<Box> findBoxesFromActorThatContaintsAMessage(final int actorId, final int messageId) {
 		Collection<Box> results;
 
-		results = this.boxRepository.findBoxesFromActorThatContaintsAMessage(actorId, messageId);
+		results = this.mailboxEntryService.findBoxesFromActorThatContaintsAMessage(actorId, messageId);
 
 		return results;
 	}
@@ -278,21 +375,341 @@ public class BoxService {
 	protected Integer numberOfBoxesThatContaintAMessage(final int messageId) {
 		Integer result;
 
-		result = this.boxRepository.numberOfBoxesThatContaintAMessage(messageId);
+		result = this.mailboxEntryService.numberOfBoxesThatContaintAMessage(messageId);
 
 		return result;
 	}
 
-	protected void addMessage(final Box box, final Message message) {
-		box.getMessages().add(message);
+	// Page of the box, newest first. The entries are read with a keyset
+	// cursor and, in the notification and spam boxes, merged with the
+	// messages addressed to an audience of the owner that he or she has not
+	// taken yet, which are shown as entries whose id is the message id
+	// negated and are read if they were sent up to the pending read moment
+	// of the box. One extra row is read to know whether there is another
+	// page in the same direction.
+	public BoxPage findMessagesPageByBox(final int boxId, final Date moment, final Integer entryId, final boolean backwards) {
+		BoxPage result;
+		Box box;
+		List<MailboxEntry> entries;
+		List<Message> pending;
+		boolean isSpam, more;
+		int total, unread;
+		RoaringBitmap readMessages;
+		Map<Integer, Boolean> read;
+		Date pendingReadMoment;
+
+		box = this.findOne(boxId);
+		entries = this.mailboxEntryService.findEntriesByBox(boxId, moment, entryId, backwards, BoxService.PAGE_SIZE + 1);
+		total = this.boxCounterService.numberOfMessagesByBox(box);
+		readMessages = this.boxReadStateService.findReadMessages(box);
+		unread = total - readMessages.getCardinality();
+		pendingReadMoment = null;
+
+		if (this.showsAudienceMessages(box)) {
+			isSpam = box.getName().equals(BoxService.SPAM_BOX);
+
+			pending = this.audienceReceiptService.findPendingMessages(box.getActor(), isSpam, moment, entryId, backwards, BoxService.PAGE_SIZE + 1);
+			entries = this.merge(entries, this.toEntries(box, pending), backwards, BoxService.PAGE_SIZE + 1);
+			total += this.audienceReceiptService.numberOfPendingMessages(box.getActor(), isSpam);
+
+			pendingReadMoment = this.boxReadStateService.findPendingReadMoment(box.getId());
+			unread = total - readMessages.getCardinality();
+			if (pendingReadMoment != null)
+				unread -= this.audienceReceiptService.numberOfPendingMessagesSentUpTo(box.getActor(), isSpam, pendingReadMoment);
+		}
+
+		entries = new ArrayList<MailboxEntry>(entries);
+		more = entries.size() > BoxService.PAGE_SIZE;
+		if (more)
+			entries = new ArrayList<MailboxEntry>(entries.subList(0, BoxService.PAGE_SIZE));
+		if (backwards)
+			Collections.reverse(entries);
+
+		read = new HashMap<Integer, Boolean>();
+		for (final MailboxEntry e : entries)
+			if (e.getId() > 0)
+				read.put(e.getMessage().getId(), readMessages.contains(e.getMessage().getId()));
+			else
+				read.put(e.getMessage().getId(), pendingReadMoment != null && !e.getMessage().getSentMoment().after(pendingReadMoment));
+
+		result = new BoxPage();
+		result.setEntries(entries);
+		result.setHasPrevious(backwards ? more : moment != null);
+		result.setHasNext(backwards ? true : more);
+		result.setTotal(total);
+		result.setRead(read);
+		result.setUnread(unread);
+
+		return result;
+	}
+
+	// Number of messages of each box of the actor, counting the messages
+	// addressed to his or her audiences that are not taken yet
+	public Map<Integer, Integer> numberOfMessagesByBoxFromActor(final Actor actor) {
+		Map<Integer, Integer> result;
+		Map<String, Integer> boxIds;
+		int pending;
+
+		result = new HashMap<Integer, Integer>();
+		for (final Box b : this.findBoxesByActor(actor.getId()))
+			result.put(b.getId(), 0);
+		result.putAll(this.boxCounterService.numberOfMessagesByBoxFromActor(actor));
+
+		boxIds = this.findSystemBoxIds(Collections.singleton(actor.getId())).get(actor.getId());
+		for (final String name : new String[] {
+			BoxService.NOTIFICATION_BOX, BoxService.SPAM_BOX
+		}) {
+			pending = this.audienceReceiptService.numberOfPendingMessages(actor, name.equals(BoxService.SPAM_BOX));
+			result.put(boxIds.get(name), result.get(boxIds.get(name)) + pending);
+		}
+
+		return result;
+	}
+
+	// Number of unread messages of each box of the actor, from the counts
+	// returned by numberOfMessagesByBoxFromActor
+	public Map<Integer, Integer> numberOfUnreadMessagesByBoxFromActor(final Actor actor, final Map<Integer, Integer> messageCounts) {
+		Map<Integer, Integer> result;
+		Map<Integer, RoaringBitmap> readMessages;
+		Map<String, Integer> boxIds;
+		Date pendingReadMoment;
+		int boxId;
+
+		readMessages = this.boxReadStateService.findReadMessages(messageCounts.keySet());
+
+		result = new HashMap<Integer, Integer>();
+		for (final Map.Entry<Integer, Integer> e : messageCounts.entrySet())
+			result.put(e.getKey(), e.getValue() - readMessages.get(e.getKey()).getCardinality());
+
+		// The audience messages read without being taken aren't in the bitmaps
+		boxIds = this.findSystemBoxIds(Collections.singleton(actor.getId())).get(actor.getId());
+		for (final String name : new String[] {
+			BoxService.NOTIFICATION_BOX, BoxService.SPAM_BOX
+		}) {
+			boxId = boxIds.get(name);
+			pendingReadMoment = this.boxReadStateService.findPendingReadMoment(boxId);
+			if (pendingReadMoment != null)
+				result.put(boxId, result.get(boxId) - this.audienceReceiptService.numberOfPendingMessagesSentUpTo(actor, name.equals(BoxService.SPAM_BOX), pendingReadMoment));
+		}
+
+		return result;
+	}
+
+	protected boolean containsMessage(final Box box, final Message message) {
+		boolean result;
+
+		result = this.mailboxEntryService.findByBoxAndMessage(box, message) != null;
+
+		return result;
 	}
 
-	protected void addMessages(final Box box, final Collection<Message> messages) {
-		box.getMessages().addAll(messages);
+	protected void addMessageToOutBox(final Message message) {
+		this.addMessageToSystemBoxes(message, Collections.singleton(message.getSender()), BoxService.OUT_BOX);
+	}
+
+	protected void addMessageToInBoxesByIds(final Message message, final Collection<Integer> actorIds) {
+		this.addMessageToSystemBoxesByIds(message, actorIds, BoxService.IN_BOX);
+	}
+
+	protected void addMessageToSpamBoxesByIds(final Message message, final Collection<Integer> actorIds) {
+		this.addMessageToSystemBoxesByIds(message, actorIds, BoxService.SPAM_BOX);
+	}
+
+	protected void addMessageToNotificationBoxesByIds(final Message message, final Collection<Integer> actorIds) {
+		this.addMessageToSystemBoxesByIds(message, actorIds, BoxService.NOTIFICATION_BOX);
+	}
+
+	// Stores the actor's copy of a message addressed to an audience he or
+	// she belonged to when it was sent in the box where it is shown, so that from then on it can
+	// be moved or deleted as any other message. It returns whether the copy
+	// has been taken now.
+	protected boolean takeAudienceMessage(final Actor actor, final Message message) {
+		boolean result;
+		Box box;
+
+		result = !message.getSender().equals(actor) && this.audienceMembershipService.isMember(actor, message);
+		result = result && this.audienceReceiptService.findByActorAndMessage(actor, message) == null;
+
+		if (result) {
+			this.audienceReceiptService.save(this.audienceReceiptService.create(actor, message));
+
+			box = this.findSystemBoxFromActor(actor.getId(), message.getIsSpam() ? BoxService.SPAM_BOX : BoxService.NOTIFICATION_BOX);
+			this.addMessage(box, message);
+			this.keepReadState(box, Collections.singleton(message));
+		}
+
+		return result;
+	}
+
+	// Bulk version of takeAudienceMessage for a selection of the messages
+	// shown in the box. It returns the messages taken now.
+	protected List<Message> takeAudienceMessages(final Actor actor, final Box box, final Collection<Integer> messageIds) {
+		List<Message> results;
+
+		if (this.showsAudienceMessages(box))
+			results = this.audienceReceiptService.findPendingMessagesByIds(actor, box.getName().equals(BoxService.SPAM_BOX), messageIds);
+		else
+			results = Collections.emptyList();
+
+		this.take(actor, box, results);
+
+		return results;
+	}
+
+	// The messages must be stored in the box
+	protected void markAsRead(final Box box, final Collection<Integer> messageIds) {
+		this.boxReadStateService.markAsRead(box, messageIds);
+	}
+
+	// Marks every message of the box as read. The ids of the messages stored
+	// in it are read in chunks; the messages addressed to the owner's
+	// audiences that are shown in it are not taken, but read up to the
+	// newest one, so nothing is written for each of them.
+	protected void markAllAsRead(final Box box) {
+		RoaringBitmap messageIds;
+		List<Integer> chunk;
+		List<Message> newest;
+		int lastId;
+
+		messageIds = new RoaringBitmap();
+		lastId = 0;
+		do {
+			chunk = this.mailboxEntryService.findMessageIdsByBoxAfter(box.getId(), lastId, BoxService.READ_CHUNK_SIZE);
+			for (final Integer messageId : chunk)
+				messageIds.add(messageId);
+			if (!chunk.isEmpty())
+				lastId = chunk.get(chunk.size() - 1);
+		} while (chunk.size() == BoxService.READ_CHUNK_SIZE);
+
+		this.boxReadStateService.markAsRead(box, messageIds);
+
+		if (this.showsAudienceMessages(box)) {
+			newest = this.audienceReceiptService.findPendingMessages(box.getActor(), box.getName().equals(BoxService.SPAM_BOX), null, null, false, 1);
+			if (!newest.isEmpty())
+				this.boxReadStateService.markPendingAsRead(box, newest.get(0).getSentMoment());
+		}
+	}
+
+	protected Integer numberOfMessagesInBox(final Box box, final Collection<Integer> messageIds) {
+		Integer result;
+
+		result = this.mailboxEntryService.numberOfEntriesByBoxAndMessages(box, messageIds);
+
+		return result;
+	}
+
+	// Moves the selected messages, that must all be stored in the origin
+	// box, with a constant number of statements. It returns the number of
+	// messages added to the destination.
+	protected int moveMessages(final Set<Integer> messageIds, final Box origin, final Box destination) {
+		int moved;
+
+		this.boxCounterService.add(Collections.singleton(origin.getId()), -messageIds.size());
+		this.boxReadStateService.transfer(origin, destination, messageIds);
+		moved = this.mailboxEntryService.moveMessages(messageIds, origin, destination);
+		this.boxCounterService.add(Collections.singleton(destination.getId()), moved);
+
+		return moved;
+	}
+
+	// Moves the copies of the messages that are stored in the in boxes, or
+	// in the notification boxes for the ones addressed to an audience, to
+	// the spam boxes of their owners, or the other way round when they are
+	// no longer spam. Copies that have been moved elsewhere are left alone
+	// and are shown as unread in their new box. It returns the number of
+	// copies moved.
+	protected int moveBetweenSpamBoxes(final Collection<Message> messages, final boolean isSpam) {
+		Collection<Integer> messageIds, audienceMessageIds;
+		int result;
+
+		messageIds = new ArrayList<Integer>();
+		audienceMessageIds = new ArrayList<Integer>();
+		for (final Message m : messages)
+			if (m.getAudience() == null)
+				messageIds.add(m.getId());
+			else
+				audienceMessageIds.add(m.getId());
+
+		result = 0;
+		if (!messageIds.isEmpty())
+			result += isSpam ? this.moveBetweenSystemBoxes(messageIds, BoxService.IN_BOX, BoxService.SPAM_BOX) : this.moveBetweenSystemBoxes(messageIds, BoxService.SPAM_BOX, BoxService.IN_BOX);
+		if (!audienceMessageIds.isEmpty())
+			result += isSpam ? this.moveBetweenSystemBoxes(audienceMessageIds, BoxService.NOTIFICATION_BOX, BoxService.SPAM_BOX) : this.moveBetweenSystemBoxes(audienceMessageIds, BoxService.SPAM_BOX, BoxService.NOTIFICATION_BOX);
+
+		return result;
+	}
+
+	protected void addMessage(final Box box, final Message message) {
+		MailboxEntry entry;
+
+		if (!this.containsMessage(box, message)) {
+			entry = this.mailboxEntryService.create(box, message);
+			this.mailboxEntryService.save(entry);
+			this.boxCounterService.add(Collections.singleton(box.getId()), 1);
+		}
 	}
 
 	protected void removeMessage(final Box box, final Message message) {
-		box.getMessages().remove(message);
+		MailboxEntry entry;
+
+		entry = this.mailboxEntryService.findByBoxAndMessage(box, message);
+		if (entry != null) {
+			this.boxReadStateService.remove(box, Collections.singleton(message.getId()));
+			this.mailboxEntryService.delete(entry);
+			this.boxCounterService.add(Collections.singleton(box.getId()), -1);
+		}
+	}
+
+	// Moves the single row that stores the message in the origin box
+	protected void moveMessage(final Message message, final Box origin, final Box destination) {
+		MailboxEntry entry;
+
+		entry = this.mailboxEntryService.findByBoxAndMessage(origin, message);
+		Assert.notNull(entry);
+
+		entry.setBox(destination);
+		this.boxReadStateService.transfer(origin, destination, Collections.singleton(message.getId()));
+		this.boxCounterService.add(Collections.singleton(origin.getId()), -1);
+		this.boxCounterService.add(Collections.singleton(destination.getId()), 1);
+	}
+
+	protected void removeMessageFromActor(final Actor actor, final Message message) {
+		this.boxReadStateService.removeMessagesFromActor(actor, Collections.singleton(message.getId()));
+		this.boxCounterService.subtractMessageFromActor(actor, message);
+		this.mailboxEntryService.deleteEntriesFromActorByMessage(actor, message);
+	}
+
+	// Removes the selected messages from every box of the actor
+	protected int removeMessagesFromActor(final Actor actor, final Collection<Integer> messageIds) {
+		int result;
+
+		this.boxReadStateService.removeMessagesFromActor(actor, messageIds);
+		this.boxCounterService.subtractMessagesFromActor(actor, messageIds);
+		result = this.mailboxEntryService.deleteEntriesFromActorByMessages(actor, messageIds);
+
+		return result;
+	}
+
+	// Removes from every box the messages sent by the actor
+	protected int removeMessagesSentByActor(final Actor actor) {
+		int result;
+
+		this.boxReadStateService.removeMessagesSentByActor(actor);
+		this.boxCounterService.subtractMessagesSentByActor(actor);
+		result = this.mailboxEntryService.deleteEntriesOfMessagesSentByActor(actor);
+
+		return result;
+	}
+
+	// Removes the given messages from every box
+	protected int removeMessages(final Collection<Integer> messageIds) {
+		int result;
+
+		this.boxReadStateService.removeMessages(messageIds);
+		this.boxCounterService.subtractMessages(messageIds);
+		result = this.mailboxEntryService.deleteEntriesOfMessages(messageIds);
+
+		return result;
 	}
 
 	protected void checkByPrincipal(final Box box) {
@@ -303,26 +720,30 @@ public class BoxService {
 		Assert.isTrue(box.getActor().equals(principal));
 	}
 
+	// Descendants of the box, deepest first, resolved from the path column
 	protected Collection<Box> descendantBoxes(final Box box) {
-		List<Box> results;
-		Collection<Box> childBoxes;
-
-		childBoxes = this.findChildBoxesByBox(box.getId());
+		Collection<Box> results;
 
-		results = new ArrayList<Box>();
-		if (!childBoxes.isEmpty()) {
-			results.addAll(childBoxes);
-			for (final Box b : childBoxes)
-				results.addAll(this.descendantBoxes(b));
-		}
+		if (box.getId() == 0)
+			results = new ArrayList<Box>();
+		else
+			results = this.boxRepository.findBoxesByPathPrefix(this.descendantPrefix(box));
 
 		return results;
 	}
 
+	protected Map<Integer, Set<Integer>> findActorIdsByMessages(final Collection<Integer> messageIds) {
+		Map<Integer, Set<Integer>> result;
+
+		result = this.mailboxEntryService.findActorIdsByMessages(messageIds);
+
+		return result;
+	}
+
 	protected Collection<Box> findBoxesByMessage(final int messageId) {
 		Collection<Box> results;
 
-		results = this.boxRepository.findBoxesByMessage(messageId);
+		results = this.mailboxEntryService.findBoxesByMessage(messageId);
 
 		return results;
 	}
@@ -335,7 +756,7 @@ public class BoxService {
 	private void checkName(final Box box) {
 		boolean validName;
 
-		validName = box.getName().equals("in box") || box.getName().equals("out box") || box.getName().equals("notification box") || box.getName().equals("trash box") || box.getName().equals("spam box");
+		validName = box.getName().equals(BoxService.IN_BOX) || box.getName().equals(BoxService.OUT_BOX) || box.getName().equals(BoxService.NOTIFICATION_BOX) || box.getName().equals(BoxService.TRASH_BOX) || box.getName().equals(BoxService.SPAM_BOX);
 
 		Assert.isTrue(!validName, "Invalid name");
 	}
@@ -343,24 +764,257 @@ public class BoxService {
 	// Check that box doesn't create a cycle.
 	private void checkParent(final Box box) {
 		Box parent;
-		Collection<Box> descendantBoxes;
 
 		parent = box.getParent();
-		descendantBoxes = this.descendantBoxes(box);
 
-		Assert.isTrue(!descendantBoxes.contains(parent));
+		Assert.isTrue(parent.getId() != box.getId());
+		Assert.isTrue(!this.descendantPrefix(parent).startsWith(this.descendantPrefix(box)));
 	}
 
-	private void createSystemBox(final Actor actor, final String name) {
-		Box box;
+	// Path shared by every descendant of the box
+	private String descendantPrefix(final Box box) {
+		String result;
+
+		result = box.getPath() + box.getId() + "/";
+
+		return result;
+	}
+
+	private boolean showsAudienceMessages(final Box box) {
+		boolean result;
+
+		result = box.getIsSystemBox() && (box.getName().equals(BoxService.NOTIFICATION_BOX) || box.getName().equals(BoxService.SPAM_BOX));
+
+		return result;
+	}
+
+	private void take(final Actor actor, final Box box, final Collection<Message> messages) {
+		if (!messages.isEmpty()) {
+			this.audienceReceiptService.saveReceipts(actor, messages);
+			this.mailboxEntryService.addMessagesToBox(messages, box);
+			this.boxCounterService.add(Collections.singleton(box.getId()), messages.size());
+			this.keepReadState(box, messages);
+		}
+	}
+
+	// The audience messages just taken into the box that had been read while
+	// pending stay read
+	private void keepReadState(final Box box, final Collection<Message> messages) {
+		Date pendingReadMoment;
+		Collection<Integer> messageIds;
+
+		pendingReadMoment = this.boxReadStateService.findPendingReadMoment(box.getId());
+		if (pendingReadMoment != null) {
+			messageIds = new ArrayList<Integer>();
+			for (final Message m : messages)
+				if (!m.getSentMoment().after(pendingReadMoment))
+					messageIds.add(m.getId());
+
+			if (!messageIds.isEmpty())
+				this.boxReadStateService.markAsRead(box, messageIds);
+		}
+	}
+
+	// The entries are moved with one statement and the counters updated
+	// with one statement per distinct change
+	private int moveBetweenSystemBoxes(final Collection<Integer> messageIds, final String origin, final String destination) {
+		List<Object[]> rows, readRows;
+		Collection<Integer> entryIds, boxIds;
+		Map<Integer, Integer> deltas;
+		Map<Integer, Collection<Integer>> boxIdsByDelta;
+
+		rows = this.mailboxEntryService.findEntriesToMoveBetweenSystemBoxes(messageIds, origin, destination);
+
+		if (!rows.isEmpty()) {
+			entryIds = new ArrayList<Integer>(rows.size());
+			readRows = new ArrayList<Object[]>(rows.size());
+			deltas = new HashMap<Integer, Integer>();
+			for (final Object[] row : rows) {
+				entryIds.add((Integer) row[0]);
+				readRows.add(new Object[] {
+					row[1], row[3]
+				});
+				this.addDelta(deltas, (Integer) row[1], -1);
+				this.addDelta(deltas, (Integer) row[2], 1);
+			}
+
+			this.boxReadStateService.removeMessagesFromBoxes(readRows);
+			this.mailboxEntryService.moveEntriesToSystemBox(entryIds, destination);
+
+			boxIdsByDelta = new HashMap<Integer, Collection<Integer>>();
+			for (final Map.Entry<Integer, Integer> e : deltas.entrySet()) {
+				boxIds = boxIdsByDelta.get(e.getValue());
+				if (boxIds == null) {
+					boxIds = new ArrayList<Integer>();
+					boxIdsByDelta.put(e.getValue(), boxIds);
+				}
+				boxIds.add(e.getKey());
+			}
+			for (final Map.Entry<Integer, Collection<Integer>> e : boxIdsByDelta.entrySet())
+				this.boxCounterService.add(e.getValue(), e.getKey());
+		}
+
+		return rows.size();
+	}
+
+	private void addDelta(final Map<Integer, Integer> deltas, final Integer boxId, final int delta) {
+		Integer current;
+
+		current = deltas.get(boxId);
+		deltas.put(boxId, current == null ? delta : current + delta);
+	}
+
+	private Collection<Box> withDescendants(final Box box, final Collection<Box> descendantBoxes) {
+		Collection<Box> results;
+
+		results = new ArrayList<Box>();
+		results.add(box);
+		if (descendantBoxes != null)
+			results.addAll(descendantBoxes);
+
+		return results;
+	}
+
+	// Pending audience messages are shown as entries of the box that are
+	// never stored
+	private List<MailboxEntry> toEntries(final Box box, final List<Message> messages) {
+		List<MailboxEntry> results;
+		MailboxEntry entry;
+
+		results = new ArrayList<MailboxEntry>(messages.size());
+		for (final Message m : messages) {
+			entry = this.mailboxEntryService.create(box, m);
+			entry.setId(-m.getId());
+			results.add(entry);
+		}
+
+		return results;
+	}
+
+	// Merges two scans of the same box, both in scan order, and keeps the
+	// first 'size' rows
+	private List<MailboxEntry> merge(final List<MailboxEntry> entries, final List<MailboxEntry> others, final boolean backwards, final int size) {
+		List<MailboxEntry> results;
+		int i, j;
+
+		results = new ArrayList<MailboxEntry>(size);
+		i = 0;
+		j = 0;
+		while (results.size() < size && (i < entries.size() || j < others.size()))
+			if (j == others.size() || (i < entries.size() && this.isNewer(entries.get(i), others.get(j)) != backwards))
+				results.add(entries.get(i++));
+			else
+				results.add(others.get(j++));
+
+		return results;
+	}
+
+	private boolean isNewer(final MailboxEntry entry, final MailboxEntry other) {
+		int comparison;
+
+		comparison = Long.compare(entry.getDeliveredMoment().getTime(), other.getDeliveredMoment().getTime());
+
+		return comparison > 0 || (comparison == 0 && entry.getId() > other.getId());
+	}
+
+	private void addMessageToSystemBoxes(final Message message, final Collection<Actor> actors, final String name) {
+		Collection<Integer> actorIds;
+
+		actorIds = new ArrayList<Integer>(actors.size());
+		for (final Actor a : actors)
+			actorIds.add(a.getId());
+
+		this.addMessageToSystemBoxesByIds(message, actorIds, name);
+	}
+
+	// Delivers a message to the system box called 'name' of every actor. The
+	// boxes are resolved from the cache, or with one query per chunk of
+	// actors, and the rows are inserted in batches, so the cost depends only
+	// on the number of actors.
+	private void addMessageToSystemBoxesByIds(final Message message, final Collection<Integer> ids, final String name) {
+		List<Integer> actorIds, chunk;
+		Map<Integer, Map<String, Integer>> systemBoxIds;
+		Collection<Integer> boxIds;
+
+		actorIds = new ArrayList<Integer>(new LinkedHashSet<Integer>(ids));
+
+		for (int i = 0; i < actorIds.size(); i += BoxService.DELIVERY_CHUNK_SIZE) {
+			chunk = actorIds.subList(i, Math.min(i + BoxService.DELIVERY_CHUNK_SIZE, actorIds.size()));
+			systemBoxIds = this.findSystemBoxIds(chunk);
+
+			boxIds = new ArrayList<Integer>(chunk.size());
+			for (final Integer actorId : chunk)
+				boxIds.add(systemBoxIds.get(actorId).get(name));
+
+			this.mailboxEntryService.addMessageToBoxes(message, boxIds);
+			this.boxCounterService.add(boxIds, 1);
+		}
+	}
+
+	// The box is a reference, loaded only if one of its properties is read
+	private Box findSystemBoxFromActor(final int actorId, final String name) {
+		Box result;
+		Map<String, Integer> boxIds;
+
+		boxIds = this.findSystemBoxIds(Collections.singleton(actorId)).get(actorId);
+		result = this.boxRepository.getOne(boxIds.get(name));
+
+		return result;
+	}
+
+	// Ids of the system boxes of the given actors, keyed by box name. Actors
+	// missing from the cache are resolved together with a single query.
+	private Map<Integer, Map<String, Integer>> findSystemBoxIds(final Collection<Integer> actorIds) {
+		Map<Integer, Map<String, Integer>> result, loaded;
+		Map<String, Integer> boxIds;
+		Collection<Integer> misses;
+
+		result = new HashMap<Integer, Map<String, Integer>>();
+		misses = new ArrayList<Integer>();
+		for (final Integer actorId : actorIds) {
+			boxIds = this.systemBoxCache.get(actorId);
+			if (boxIds == null)
+				misses.add(actorId);
+			else
+				result.put(actorId, boxIds);
+		}
+
+		if (!misses.isEmpty()) {
+			loaded = new HashMap<Integer, Map<String, Integer>>();
+			for (final Object[] row : this.boxRepository.findSystemBoxesFromActors(misses)) {
+				boxIds = loaded.get(row[0]);
+				if (boxIds == null) {
+					boxIds = new HashMap<String, Integer>();
+					loaded.put((Integer) row[0], boxIds);
+				}
+				boxIds.put((String) row[1], (Integer) row[2]);
+			}
+
+			for (final Integer actorId : misses) {
+				boxIds = loaded.get(actorId);
+				Assert.isTrue(boxIds != null && boxIds.size() == 5);
+
+				this.systemBoxCache.put(actorId, boxIds);
+				result.put(actorId, boxIds);
+			}
+		}
+
+		return result;
+	}
+
+	private Box createSystemBox(final Actor actor, final String name) {
+		Box box, result;
 
 		box = new Box();
 		box.setActor(actor);
-		box.setMessages(Collections.<Message> emptySet());
 		box.setIsSystemBox(true);
 		box.setName(name);
+		box.setPath("/");
 
-		this.boxRepository.save(box);
+		result = this.boxRepository.save(box);
+		this.boxCounterService.createCounters(result);
+
+		return result;
 	}
 
 }
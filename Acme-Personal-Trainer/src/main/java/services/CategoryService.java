@@ -27,6 +27,9 @@ public class CategoryService {
 	@Autowired
 	private UtilityService		utilityService;
 
+	@Autowired
+	private FinderService		finderService;
+
 
 	// Constructors --------------------------------------
 	public CategoryService() {
@@ -78,6 +81,10 @@ public class CategoryService {
 			Assert.isTrue(!e.isEmpty() && e != null && e != "", "Invalid format");
 		}
 
+		// The finder matches the working-outs by the names of their categories
+		if (category.getId() != 0)
+			this.finderService.reindex();
+
 		result = this.categoryRepository.save(category);
 
 		return result;
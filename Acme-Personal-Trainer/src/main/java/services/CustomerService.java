@@ -51,6 +51,9 @@ public class CustomerService {
 	@Autowired
 	private EndorsementService	endorsementService;
 
+	@Autowired
+	private FinderService		finderService;
+
 
 	// Constructors -------------------------------
 
@@ -123,6 +126,7 @@ public class CustomerService {
 		this.applicationService.deleteApplicationByCustomer(customer);
 
 		// Delete finder
+		this.finderService.deleteFinder(customer);
 
 		// Delete credit cards
 		this.creditCardService.deleteByPrincipal();
@@ -2,11 +2,14 @@
 package services;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.transaction.Transactional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.Validator;
@@ -26,6 +29,12 @@ public class CustomisationService {
 	@Autowired
 	private UtilityService			utilityService;
 
+	@Autowired
+	private SpamReclassificationService	spamReclassificationService;
+
+	// Compiled spam words, swapped when the customisation is saved
+	private final AtomicReference<SpamWordMatcher>	spamWordMatcher	= new AtomicReference<SpamWordMatcher>();
+
 
 	// Constructors -------------------------------------
 	public CustomisationService() {
@@ -38,9 +47,29 @@ public class CustomisationService {
 		Assert.isTrue(this.customisationRepository.exists(customisation.getId()) && customisation.equals(this.find()));
 
 		Customisation result;
+		final SpamWordMatcher matcher;
+		String previousSpamWords;
 
+		previousSpamWords = this.find().getSpamWords();
 		result = this.customisationRepository.save(customisation);
 
+		// Existing mail is re-scanned in the background by the SpamReclassifier
+		if (!result.getSpamWords().equals(previousSpamWords))
+			this.spamReclassificationService.request(result.getSpamWords());
+
+		// The new matcher is published only once the change is committed
+		matcher = new SpamWordMatcher(this.utilityService.ListByString(result.getSpamWords()));
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+				@Override
+				public void afterCommit() {
+					CustomisationService.this.spamWordMatcher.set(matcher);
+				}
+			});
+		else
+			this.spamWordMatcher.set(matcher);
+
 		return result;
 	}
 
@@ -85,6 +114,7 @@ public class CustomisationService {
 		result.setThreshold(customisation.getThreshold());
 		result.setTimeResults(customisation.getTimeResults());
 		result.setVAT(customisation.getVAT());
+		result.setArchiveAge(customisation.getArchiveAge());
 
 		this.validator.validate(result, binding);
 
@@ -105,6 +135,21 @@ public class CustomisationService {
 	}
 
 	// Protected methods ---------------------------------
+	protected boolean containsSpamWords(final String text) {
+		SpamWordMatcher matcher;
+		boolean result;
+
+		matcher = this.spamWordMatcher.get();
+		if (matcher == null) {
+			matcher = new SpamWordMatcher(this.utilityService.ListByString(this.find().getSpamWords()));
+			this.spamWordMatcher.compareAndSet(null, matcher);
+		}
+
+		result = matcher.matches(text);
+
+		return result;
+	}
+
 	protected void flush() {
 		this.customisationRepository.flush();
 	}
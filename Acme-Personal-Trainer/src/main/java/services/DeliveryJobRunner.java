@@ -0,0 +1,52 @@
+
+package services;
+
+import java.util.List;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Delivers the running delivery jobs in the background, one chunk of
+// recipients per transaction. The job keeps its cursor in the database, so
+// a failed chunk or a restart simply resumes from the last committed one.
+@Component
+public class DeliveryJobRunner {
+
+	private static final Logger	LOGGER		= LogManager.getLogger(DeliveryJobRunner.class);
+
+	private static final int	MAX_CHUNKS	= 20;
+
+	@Autowired
+	private DeliveryJobService	deliveryJobService;
+
+
+	public DeliveryJobRunner() {
+		super();
+	}
+
+	@Scheduled(fixedDelay = 2000)
+	public void run() {
+		List<Integer> jobIds;
+		boolean more;
+		int chunks;
+
+		jobIds = this.deliveryJobService.findRunningJobIds();
+
+		for (final Integer jobId : jobIds) {
+			chunks = 0;
+			do {
+				try {
+					more = this.deliveryJobService.processChunk(jobId);
+				} catch (final Throwable oops) {
+					DeliveryJobRunner.LOGGER.error("Cannot deliver job " + jobId, oops);
+					more = false;
+				}
+				chunks++;
+			} while (more && chunks < DeliveryJobRunner.MAX_CHUNKS);
+		}
+	}
+
+}
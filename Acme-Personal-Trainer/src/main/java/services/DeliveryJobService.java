@@ -0,0 +1,190 @@
+
+package services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeSet;
+
+import javax.transaction.Transactional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import repositories.DeliveryJobRepository;
+import domain.Actor;
+import domain.DeliveryJob;
+import domain.Message;
+
+@Service
+@Transactional
+public class DeliveryJobService {
+
+	// Recipients delivered per transaction
+	private static final int		CHUNK_SIZE	= 1000;
+
+	// Managed repository ---------------------------------------------
+	@Autowired
+	private DeliveryJobRepository	deliveryJobRepository;
+
+	// Supporting services -------------------------------------------
+	@Autowired
+	private MessageService			messageService;
+
+	@Autowired
+	private BoxService				boxService;
+
+	@Autowired
+	private UtilityService			utilityService;
+
+
+	//Constructor ----------------------------------------------------
+	public DeliveryJobService() {
+		super();
+	}
+
+	// Simple CRUD methods ------------------------
+	public DeliveryJob findOne(final int deliveryJobId) {
+		DeliveryJob result;
+
+		result = this.deliveryJobRepository.findOne(deliveryJobId);
+		Assert.notNull(result);
+
+		return result;
+	}
+
+	public Collection<DeliveryJob> findAll() {
+		Collection<DeliveryJob> results;
+
+		results = this.deliveryJobRepository.findAllOrderByStartMoment();
+
+		return results;
+	}
+
+	// Other business methods ---------------------
+
+	public List<Integer> findRunningJobIds() {
+		List<Integer> results;
+
+		results = this.deliveryJobRepository.findRunningJobIds();
+
+		return results;
+	}
+
+	// Delivers the message to the next chunk of recipients, in its own
+	// transaction, and returns whether there are recipients left.
+	@RetryOnOptimisticLock
+	public boolean processChunk(final int deliveryJobId) {
+		DeliveryJob job;
+		Message message;
+		List<Integer> actorIds;
+		boolean result;
+
+		job = this.findOne(deliveryJobId);
+		Assert.isTrue(job.getStatus().equals("RUNNING"));
+
+		message = this.messageService.findOne(job.getMessageId());
+		if (message == null)
+			actorIds = Collections.emptyList();
+		else
+			actorIds = this.messageService.findRecipientIdsAfter(message, job.getLastActorId(), DeliveryJobService.CHUNK_SIZE);
+
+		if (!actorIds.isEmpty()) {
+			this.deliver(message, job.getNotification(), actorIds);
+
+			job.setDelivered(job.getDelivered() + actorIds.size());
+			job.setLastActorId(actorIds.get(actorIds.size() - 1));
+		}
+
+		result = actorIds.size() == DeliveryJobService.CHUNK_SIZE;
+		if (!result) {
+			job.setStatus("DONE");
+			job.setFinishMoment(this.utilityService.current_moment());
+		}
+
+		this.deliveryJobRepository.save(job);
+
+		return result;
+	}
+
+	// Extrapolates the moment the job will finish from its rate so far
+	public Date estimatedFinishMoment(final DeliveryJob job) {
+		Date result, now;
+		long elapsed, remaining;
+
+		now = this.utilityService.current_moment();
+		if (job.getStatus().equals("DONE"))
+			result = job.getFinishMoment();
+		else if (job.getDelivered() == 0)
+			result = null;
+		else {
+			elapsed = Math.max(0, now.getTime() - job.getStartMoment().getTime());
+			remaining = Math.max(0, job.getTotal() - job.getDelivered());
+			result = new Date(now.getTime() + elapsed * remaining / job.getDelivered());
+		}
+
+		return result;
+	}
+
+	// Protected methods --------------------------
+
+	// Delivers a message that has just been sent to its recipients. The
+	// first chunk, in id order, is delivered in the request that sends it;
+	// if there are more, a job is recorded and the DeliveryJobRunner
+	// delivers the rest. It returns the job, or null if none was needed.
+	protected DeliveryJob start(final Message message, final boolean notification) {
+		Assert.isTrue(message.getId() != 0);
+
+		DeliveryJob result;
+		List<Integer> actorIds, first;
+
+		actorIds = new ArrayList<Integer>(new TreeSet<Integer>(this.idsOf(message.getRecipients())));
+		first = actorIds.subList(0, Math.min(DeliveryJobService.CHUNK_SIZE, actorIds.size()));
+
+		this.deliver(message, notification, first);
+
+		if (actorIds.size() > DeliveryJobService.CHUNK_SIZE) {
+			result = new DeliveryJob();
+			result.setMessageId(message.getId());
+			result.setNotification(notification);
+			result.setStatus("RUNNING");
+			result.setStartMoment(message.getSentMoment());
+			result.setDelivered(first.size());
+			result.setLastActorId(first.get(first.size() - 1));
+			result.setTotal(actorIds.size());
+
+			result = this.deliveryJobRepository.save(result);
+		} else
+			result = null;
+
+		return result;
+	}
+
+	// Private methods ----------------------------
+
+	// Notifications go to the notification boxes; the rest of the messages
+	// go to the in or spam boxes, after the flag they have now, since they
+	// may have been reclassified since they were sent
+	private void deliver(final Message message, final boolean notification, final Collection<Integer> actorIds) {
+		if (notification)
+			this.boxService.addMessageToNotificationBoxesByIds(message, actorIds);
+		else if (message.getIsSpam())
+			this.boxService.addMessageToSpamBoxesByIds(message, actorIds);
+		else
+			this.boxService.addMessageToInBoxesByIds(message, actorIds);
+	}
+
+	private Collection<Integer> idsOf(final Collection<Actor> actors) {
+		Collection<Integer> results;
+
+		results = new ArrayList<Integer>(actors.size());
+		for (final Actor a : actors)
+			results.add(a.getId());
+
+		return results;
+	}
+
+}
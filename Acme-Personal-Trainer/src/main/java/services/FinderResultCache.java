@@ -0,0 +1,134 @@
+
+package services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded LRU cache of finder results shared by every customer, keyed by the
+// criteria once normalised, so that finders that only differ in case,
+// accents, word order or blanks share the same entry. An entry holds the
+// ids of the working-outs found, by start moment, and is valid until the
+// first of them starts, since it would no longer be found then.
+//
+// Every entry is dropped when a working-out is published or deleted. A
+// result computed before that may still reach the cache afterwards, so
+// entries are stamped with the generation read before searching and are
+// discarded if it has changed in the meantime.
+final class FinderResultCache {
+
+	private final Map<String, Entry>	entries;
+	private final AtomicLong			generation;
+	private final AtomicLong			hits;
+	private final AtomicLong			misses;
+
+
+	FinderResultCache(final int capacity) {
+		this.generation = new AtomicLong();
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.entries = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+			private static final long	serialVersionUID	= 1L;
+
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+				return this.size() > capacity;
+			}
+		});
+	}
+
+	// A start date that has already passed doesn't narrow the search, which
+	// never returns working-outs that have started
+	static String keyOf(final String keyword, final String category, final Double minPrice, final Double maxPrice, final Date startDate, final Date endDate, final Date now, final int size) {
+		StringBuilder result;
+
+		result = new StringBuilder();
+		if (keyword != null)
+			for (final String w : new TreeSet<String>(WorkingOutIndex.wordsOf(keyword)))
+				result.append(w).append(' ');
+		result.append('\0');
+		if (category != null)
+			result.append(WorkingOutIndex.normalize(category));
+		result.append('\0').append(minPrice);
+		result.append('\0').append(maxPrice);
+		result.append('\0').append(startDate == null || !startDate.after(now) ? null : startDate.getTime());
+		result.append('\0').append(endDate == null ? null : endDate.getTime());
+		result.append('\0').append(size);
+
+		return result.toString();
+	}
+
+	public long getGeneration() {
+		return this.generation.get();
+	}
+
+	// Returns null on a miss
+	public List<Integer> get(final String key, final long now) {
+		List<Integer> result;
+		Entry entry;
+
+		entry = this.entries.get(key);
+		if (entry != null && entry.validUntil <= now) {
+			this.entries.remove(key);
+			entry = null;
+		}
+
+		if (entry == null) {
+			this.misses.incrementAndGet();
+			result = null;
+		} else {
+			this.hits.incrementAndGet();
+			result = entry.workingOutIds;
+		}
+
+		return result;
+	}
+
+	public void put(final String key, final long generation, final Collection<Integer> workingOutIds, final long validUntil) {
+		synchronized (this.entries) {
+			if (this.generation.get() == generation)
+				this.entries.put(key, new Entry(workingOutIds, validUntil));
+		}
+	}
+
+	public void invalidate() {
+		synchronized (this.entries) {
+			this.generation.incrementAndGet();
+			this.entries.clear();
+		}
+	}
+
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	public int size() {
+		return this.entries.size();
+	}
+
+
+	private static final class Entry {
+
+		private final List<Integer>	workingOutIds;
+		private final long			validUntil;
+
+
+		private Entry(final Collection<Integer> workingOutIds, final long validUntil) {
+			this.workingOutIds = Collections.unmodifiableList(new ArrayList<Integer>(workingOutIds));
+			this.validUntil = validUntil;
+		}
+	}
+
+}
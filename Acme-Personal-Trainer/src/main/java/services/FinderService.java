@@ -0,0 +1,439 @@
+
+package services;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.transaction.Transactional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.Validator;
+
+import repositories.FinderRepository;
+import domain.Category;
+import domain.Customer;
+import domain.Customisation;
+import domain.Finder;
+import domain.WorkingOut;
+
+@Service
+@Transactional
+public class FinderService {
+
+	private static final int		RESULT_CACHE_SIZE	= 1000;
+
+	private static final Comparator<WorkingOut>	BY_START_MOMENT		= new Comparator<WorkingOut>() {
+
+													@Override
+													public int compare(final WorkingOut a, final WorkingOut b) {
+														int result;
+
+														result = a.getStartMoment().compareTo(b.getStartMoment());
+														if (result == 0)
+															result = a.getId() < b.getId() ? -1 : a.getId() > b.getId() ? 1 : 0;
+
+														return result;
+													}
+												};
+
+	// Managed repository --------------------------
+	@Autowired
+	private FinderRepository		finderRepository;
+
+	// Other supporting services -------------------
+	@Autowired
+	private WorkingOutService		workingOutService;
+
+	@Autowired
+	private UtilityService			utilityService;
+
+	@Autowired
+	private CustomerService			customerService;
+
+	@Autowired
+	private CustomisationService	customisationService;
+
+	@Autowired
+	private Validator				validator;
+
+	// Published working-outs, loaded on the first search and kept up to date
+	// as they are published, deleted or start
+	private volatile WorkingOutIndex	workingOutIndex		= new WorkingOutIndex();
+
+	private volatile boolean		workingOutIndexLoaded;
+
+	// Visits served from the stored results and visits that had to search
+	private final AtomicLong		resultHits			= new AtomicLong();
+	private final AtomicLong		resultMisses		= new AtomicLong();
+
+	// Results shared by the finders with the same criteria
+	private final FinderResultCache	resultCache			= new FinderResultCache(FinderService.RESULT_CACHE_SIZE);
+
+
+	// Constructor --------------------------------
+	public FinderService() {
+		super();
+	}
+
+	// Simple CRUD methods ------------------------
+	public Finder findOne(final int finderId) {
+		Finder result;
+
+		result = this.finderRepository.findOne(finderId);
+		Assert.notNull(result);
+
+		return result;
+	}
+
+
+	// The finder of the principal, which is created on his or her first visit
+	public Finder findByPrincipal() {
+		Finder result;
+		Customer principal;
+
+		principal = this.customerService.findByPrincipal();
+		result = this.finderRepository.findByCustomer(principal.getId());
+		if (result == null) {
+			result = new Finder();
+			result.setCustomer(principal);
+			this.clearCriteria(result);
+
+			result = this.finderRepository.save(result);
+		}
+
+		return result;
+	}
+
+	// The results are searched again only if the criteria have changed
+	public Finder save(final Finder finder) {
+		Assert.notNull(finder);
+		this.checkByPrincipal(finder);
+
+		Finder result, stored;
+
+		stored = this.finderRepository.findOne(finder.getId());
+		Assert.notNull(stored);
+
+		if (!FinderService.sameCriteria(stored, finder))
+			this.refresh(finder, this.customisationService.find());
+
+		result = this.finderRepository.save(finder);
+
+		return result;
+	}
+
+	public void clear(final Finder finder) {
+		Assert.notNull(finder);
+		this.checkByPrincipal(finder);
+
+		this.clearCriteria(finder);
+	}
+
+	protected void deleteFinder(final Customer customer) {
+		Finder finder;
+
+		finder = this.finderRepository.findByCustomer(customer.getId());
+		if (finder != null)
+			this.finderRepository.delete(finder);
+	}
+
+	// Other business methods ---------------------
+
+	// Results of the finder of the principal. They are kept for the hours
+	// given by the customisation, so a visit only searches the working-outs
+	// once they have expired, and there are at most as many as it says: if
+	// the number has been lowered since, the stored ones are trimmed.
+	public Collection<WorkingOut> findWorkingOutsByPrincipal() {
+		List<WorkingOut> results;
+		Customisation customisation;
+		Finder finder;
+
+		customisation = this.customisationService.find();
+		finder = this.findByPrincipal();
+		if (this.isExpired(finder, customisation)) {
+			this.resultMisses.incrementAndGet();
+			results = this.refresh(finder, customisation);
+		} else {
+			this.resultHits.incrementAndGet();
+
+			results = new ArrayList<WorkingOut>(finder.getWorkingOuts());
+			Collections.sort(results, FinderService.BY_START_MOMENT);
+			if (results.size() > customisation.getNumberResults()) {
+				results = new ArrayList<WorkingOut>(results.subList(0, customisation.getNumberResults()));
+				finder.getWorkingOuts().retainAll(results);
+			}
+		}
+
+		return results;
+	}
+
+	public long getResultHits() {
+		return this.resultHits.get();
+	}
+
+	public long getResultMisses() {
+		return this.resultMisses.get();
+	}
+
+	public long getSharedResultHits() {
+		return this.resultCache.getHits();
+	}
+
+	public long getSharedResultMisses() {
+		return this.resultCache.getMisses();
+	}
+
+	// Up to size published working-outs that meet the criteria of the finder
+	// and haven't started yet, by start moment. The ids found are shared with
+	// every finder with the same criteria, so only their working-outs have to
+	// be loaded.
+	public List<WorkingOut> search(final Finder finder, final int size) {
+		Assert.notNull(finder);
+		Assert.isTrue(size > 0);
+
+		List<WorkingOut> results;
+		List<Integer> workingOutIds;
+		Map<Integer, WorkingOut> workingOuts;
+		Date now;
+		String key;
+		long generation;
+		boolean shared;
+
+		now = this.utilityService.current_moment();
+		key = FinderResultCache.keyOf(finder.getKeyword(), finder.getCategory(), finder.getStartPrice(), finder.getEndPrice(), finder.getStartDate(), finder.getEndDate(), now, size);
+		generation = this.resultCache.getGeneration();
+
+		workingOutIds = this.resultCache.get(key, now.getTime());
+		shared = workingOutIds != null;
+		if (!shared)
+			workingOutIds = this.findWorkingOutIds(finder, size);
+
+		workingOuts = new HashMap<Integer, WorkingOut>();
+		for (final WorkingOut w : this.workingOutService.findByIds(workingOutIds))
+			workingOuts.put(w.getId(), w);
+
+		results = new ArrayList<WorkingOut>();
+		for (final Integer id : workingOutIds)
+			if (workingOuts.containsKey(id))
+				results.add(workingOuts.get(id));
+
+		if (!shared)
+			this.resultCache.put(key, generation, workingOutIds, results.isEmpty() ? Long.MAX_VALUE : results.get(0).getStartMoment().getTime());
+
+		return results;
+	}
+
+	// Reconstruct ----------------------------------------------
+	public Finder reconstruct(final Finder finder, final BindingResult binding) {
+		Finder result, stored;
+
+		stored = this.findByPrincipal();
+
+		result = new Finder();
+		result.setId(stored.getId());
+		result.setVersion(stored.getVersion());
+		result.setCustomer(stored.getCustomer());
+		result.setWorkingOuts(new HashSet<WorkingOut>(stored.getWorkingOuts()));
+		result.setUpdatedMoment(stored.getUpdatedMoment());
+		result.setKeyword(finder.getKeyword() == null ? "" : finder.getKeyword().trim());
+		result.setCategory(finder.getCategory() == null ? "" : finder.getCategory().trim());
+		result.setStartPrice(finder.getStartPrice());
+		result.setEndPrice(finder.getEndPrice());
+		result.setStartDate(finder.getStartDate());
+		result.setEndDate(finder.getEndDate());
+
+		this.validator.validate(result, binding);
+
+		return result;
+	}
+
+	// Protected methods --------------------------
+
+	protected List<Integer> findWorkingOutIds(final Finder finder, final int size) {
+		List<Integer> results;
+		long from, to;
+		Calendar calendar;
+
+		if (!this.workingOutIndexLoaded)
+			this.loadWorkingOutIndex();
+
+		from = this.utilityService.current_moment().getTime();
+		this.workingOutIndex.prune(from);
+		if (finder.getStartDate() != null)
+			from = Math.max(from, finder.getStartDate().getTime());
+
+		// The end date is a day, which is included
+		to = Long.MAX_VALUE;
+		if (finder.getEndDate() != null) {
+			calendar = Calendar.getInstance();
+			calendar.setTime(finder.getEndDate());
+			calendar.add(Calendar.DAY_OF_MONTH, 1);
+			to = calendar.getTimeInMillis();
+		}
+
+		results = this.workingOutIndex.search(finder.getKeyword(), finder.getCategory(), finder.getStartPrice(), finder.getEndPrice(), from, to, size);
+
+		return results;
+	}
+
+	// The working-out is indexed once it has been published for good
+	protected void index(final WorkingOut workingOut) {
+		final WorkingOutIndex.Document document;
+		final WorkingOutIndex index;
+
+		document = this.documentOf(workingOut);
+		index = this.workingOutIndex;
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+				@Override
+				public void afterCommit() {
+					index.put(document);
+					FinderService.this.resultCache.invalidate();
+				}
+			});
+		else {
+			index.put(document);
+			this.resultCache.invalidate();
+		}
+	}
+
+	// The working-outs are also dropped from the results stored in the finders
+	protected void unindex(final Collection<Integer> workingOutIds) {
+		final WorkingOutIndex index;
+
+		if (!workingOutIds.isEmpty())
+			this.finderRepository.removeWorkingOutsFromFinders(workingOutIds);
+
+		index = this.workingOutIndex;
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+				@Override
+				public void afterCommit() {
+					index.remove(workingOutIds);
+					FinderService.this.resultCache.invalidate();
+				}
+			});
+		else {
+			index.remove(workingOutIds);
+			this.resultCache.invalidate();
+		}
+	}
+
+	// The names of the categories are stored in the index, so it is loaded
+	// again from scratch when one of them changes
+	protected void reindex() {
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+				@Override
+				public void afterCommit() {
+					FinderService.this.resetWorkingOutIndex();
+				}
+			});
+		else
+			this.resetWorkingOutIndex();
+	}
+
+	// Private methods ---------------------------
+
+	private void checkByPrincipal(final Finder finder) {
+		Assert.isTrue(finder.getCustomer().equals(this.customerService.findByPrincipal()));
+	}
+
+	private boolean isExpired(final Finder finder, final Customisation customisation) {
+		long expiration;
+
+		expiration = finder.getUpdatedMoment().getTime() + customisation.getTimeResults() * 3600000L;
+
+		return expiration <= this.utilityService.current_moment().getTime();
+	}
+
+	// The stored results are updated in place, so that only the working-outs
+	// that are no longer found are deleted and only the new ones inserted.
+	// It returns the results by start moment.
+	private List<WorkingOut> refresh(final Finder finder, final Customisation customisation) {
+		List<WorkingOut> results;
+
+		results = this.search(finder, customisation.getNumberResults());
+
+		finder.getWorkingOuts().retainAll(results);
+		finder.getWorkingOuts().addAll(results);
+		finder.setUpdatedMoment(this.utilityService.current_moment());
+
+		return results;
+	}
+
+	// The stored results, if any, expire at once
+	private void clearCriteria(final Finder finder) {
+		finder.setKeyword("");
+		finder.setCategory("");
+		finder.setStartPrice(null);
+		finder.setEndPrice(null);
+		finder.setStartDate(null);
+		finder.setEndDate(null);
+		if (finder.getWorkingOuts() == null)
+			finder.setWorkingOuts(new HashSet<WorkingOut>());
+		else
+			finder.getWorkingOuts().clear();
+		finder.setUpdatedMoment(new Date(0));
+	}
+
+	private static boolean sameCriteria(final Finder a, final Finder b) {
+		return FinderService.equal(a.getKeyword(), b.getKeyword()) && FinderService.equal(a.getCategory(), b.getCategory()) && FinderService.equal(a.getStartPrice(), b.getStartPrice()) && FinderService.equal(a.getEndPrice(), b.getEndPrice())
+			&& FinderService.equal(a.getStartDate() == null ? null : a.getStartDate().getTime(), b.getStartDate() == null ? null : b.getStartDate().getTime())
+			&& FinderService.equal(a.getEndDate() == null ? null : a.getEndDate().getTime(), b.getEndDate() == null ? null : b.getEndDate().getTime());
+	}
+
+	private static boolean equal(final Object a, final Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	private synchronized void loadWorkingOutIndex() {
+		List<WorkingOutIndex.Document> documents;
+		Date now;
+
+		if (!this.workingOutIndexLoaded) {
+			now = this.utilityService.current_moment();
+
+			documents = new ArrayList<WorkingOutIndex.Document>();
+			for (final WorkingOut w : this.workingOutService.findAllVisibleWithCategories(now))
+				documents.add(this.documentOf(w));
+
+			this.workingOutIndex.load(documents);
+			this.workingOutIndexLoaded = true;
+		}
+	}
+
+	private synchronized void resetWorkingOutIndex() {
+		this.workingOutIndex = new WorkingOutIndex();
+		this.workingOutIndexLoaded = false;
+		this.resultCache.invalidate();
+	}
+
+	private WorkingOutIndex.Document documentOf(final WorkingOut workingOut) {
+		List<String> categories;
+
+		categories = new ArrayList<String>();
+		for (final Category c : workingOut.getCategories())
+			categories.addAll(this.utilityService.ListByString(c.getName()));
+
+		return new WorkingOutIndex.Document(workingOut.getId(), workingOut.getStartMoment().getTime(), workingOut.getPrice(), categories, workingOut.getTicker(), workingOut.getDescription());
+	}
+
+}
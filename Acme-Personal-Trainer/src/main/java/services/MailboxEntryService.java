@@ -0,0 +1,246 @@
+
+package services;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.transaction.Transactional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import repositories.MailboxEntryRepository;
+import domain.Actor;
+import domain.Box;
+import domain.MailboxEntry;
+import domain.Message;
+
+@Service
+@Transactional
+public class MailboxEntryService {
+
+	// Managed repository --------------------------
+	@Autowired
+	private MailboxEntryRepository	mailboxEntryRepository;
+
+
+	// Constructor --------------------------------
+	public MailboxEntryService() {
+		super();
+	}
+
+	// Simple CRUD methods ------------------------
+	protected MailboxEntry create(final Box box, final Message message) {
+		MailboxEntry result;
+
+		result = new MailboxEntry();
+		result.setBox(box);
+		result.setMessage(message);
+		result.setDeliveredMoment(message.getSentMoment());
+
+		return result;
+	}
+
+	protected MailboxEntry save(final MailboxEntry mailboxEntry) {
+		Assert.notNull(mailboxEntry);
+
+		MailboxEntry result;
+
+		result = this.mailboxEntryRepository.save(mailboxEntry);
+
+		return result;
+	}
+
+	protected void delete(final MailboxEntry mailboxEntry) {
+		Assert.notNull(mailboxEntry);
+
+		this.mailboxEntryRepository.delete(mailboxEntry);
+	}
+
+	// Other business methods ---------------------
+	protected MailboxEntry findByBoxAndMessage(final Box box, final Message message) {
+		MailboxEntry result;
+
+		result = this.mailboxEntryRepository.findByBoxAndMessage(box.getId(), message.getId());
+
+		return result;
+	}
+
+	// Entries of the box, newest first. Without a cursor the scan starts
+	// at the newest entry; otherwise it holds the entries right after the
+	// cursor entry or, when going backwards, right before it, oldest first.
+	protected List<MailboxEntry> findEntriesByBox(final int boxId, final Date moment, final Integer entryId, final boolean backwards, final int size) {
+		Assert.isTrue(size > 0);
+		Assert.isTrue((moment == null) == (entryId == null));
+
+		List<MailboxEntry> results;
+		PageRequest pageRequest;
+
+		pageRequest = new PageRequest(0, size);
+		if (moment == null)
+			results = this.mailboxEntryRepository.findFirstPageByBox(boxId, pageRequest);
+		else if (backwards)
+			results = this.mailboxEntryRepository.findPageByBoxAfter(boxId, moment, entryId, pageRequest);
+		else
+			results = this.mailboxEntryRepository.findPageByBoxBefore(boxId, moment, entryId, pageRequest);
+
+		return results;
+	}
+
+	// Up to size ids of the messages stored in the box, by id, after the
+	// given one
+	protected List<Integer> findMessageIdsByBoxAfter(final int boxId, final int messageId, final int size) {
+		List<Integer> results;
+
+		results = this.mailboxEntryRepository.findMessageIdsByBoxAfter(boxId, messageId, new PageRequest(0, size));
+
+		return results;
+	}
+
+	protected Integer numberOfEntriesByBoxAndMessages(final Box box, final Collection<Integer> messageIds) {
+		Integer result;
+
+		result = this.mailboxEntryRepository.numberOfEntriesByBoxAndMessages(box.getId(), messageIds);
+
+		return result;
+	}
+
+	protected Collection<Box> findBoxesByMessage(final int messageId) {
+		Collection<Box> results;
+
+		results = this.mailboxEntryRepository.findBoxesByMessage(messageId);
+
+		return results;
+	}
+
+	protected Collection<Box> findBoxesFromActorThatContaintsAMessage(final int actorId, final int messageId) {
+		Collection<Box> results;
+
+		results = this.mailboxEntryRepository.findBoxesFromActorThatContaintsAMessage(actorId, messageId);
+
+		return results;
+	}
+
+	// Actors that hold each of the messages in one of their boxes
+	protected Map<Integer, Set<Integer>> findActorIdsByMessages(final Collection<Integer> messageIds) {
+		Map<Integer, Set<Integer>> result;
+		Set<Integer> actorIds;
+
+		result = new HashMap<Integer, Set<Integer>>();
+		for (final Object[] row : this.mailboxEntryRepository.findActorIdsByMessages(messageIds)) {
+			actorIds = result.get(row[0]);
+			if (actorIds == null) {
+				actorIds = new HashSet<Integer>();
+				result.put((Integer) row[0], actorIds);
+			}
+			actorIds.add((Integer) row[1]);
+		}
+
+		return result;
+	}
+
+	protected Integer numberOfBoxesThatContaintAMessage(final int messageId) {
+		Integer result;
+
+		result = this.mailboxEntryRepository.numberOfBoxesThatContaintAMessage(messageId);
+
+		return result;
+	}
+
+	protected void addMessageToBoxes(final Message message, final Collection<Integer> boxIds) {
+		this.mailboxEntryRepository.addMessageToBoxes(message, boxIds);
+	}
+
+	protected void addMessagesToBox(final Collection<Message> messages, final Box box) {
+		this.mailboxEntryRepository.addMessagesToBox(messages, box);
+	}
+
+	// Moves every message of the origin box to the destination box. Messages
+	// already stored in the destination are simply dropped from the origin.
+	// It returns the number of messages added to the destination.
+	protected int moveMessages(final Box origin, final Box destination) {
+		int result;
+		Collection<Integer> duplicated;
+
+		duplicated = this.mailboxEntryRepository.findEntriesAlsoInBox(origin.getId(), destination.getId());
+		if (!duplicated.isEmpty())
+			this.mailboxEntryRepository.deleteEntries(duplicated);
+
+		result = this.mailboxEntryRepository.moveEntries(origin.getId(), destination);
+
+		return result;
+	}
+
+	// Moves the selected messages of the origin box to the destination box.
+	// Messages already stored in the destination are simply dropped from the
+	// origin. It returns the number of messages added to the destination.
+	protected int moveMessages(final Collection<Integer> messageIds, final Box origin, final Box destination) {
+		int result;
+		Collection<Integer> duplicated;
+
+		duplicated = this.mailboxEntryRepository.findEntriesAlsoInBoxByMessages(origin.getId(), destination.getId(), messageIds);
+		if (!duplicated.isEmpty())
+			this.mailboxEntryRepository.deleteEntries(duplicated);
+
+		result = this.mailboxEntryRepository.moveEntriesByMessages(origin.getId(), destination, messageIds);
+
+		return result;
+	}
+
+	// Rows of (entry id, origin box id, destination box id, message id)
+	protected List<Object[]> findEntriesToMoveBetweenSystemBoxes(final Collection<Integer> messageIds, final String origin, final String destination) {
+		List<Object[]> results;
+
+		results = this.mailboxEntryRepository.findEntriesToMoveBetweenSystemBoxes(messageIds, origin, destination);
+
+		return results;
+	}
+
+	protected int moveEntriesToSystemBox(final Collection<Integer> entryIds, final String destination) {
+		int result;
+
+		result = this.mailboxEntryRepository.moveEntriesToSystemBox(entryIds, destination);
+
+		return result;
+	}
+
+	protected int deleteEntriesFromActorByMessages(final Actor actor, final Collection<Integer> messageIds) {
+		int result;
+
+		result = this.mailboxEntryRepository.deleteEntriesFromActorByMessages(actor.getId(), messageIds);
+
+		return result;
+	}
+
+	protected void deleteEntriesFromActorByMessage(final Actor actor, final Message message) {
+		this.mailboxEntryRepository.deleteEntriesFromActorByMessage(actor.getId(), message.getId());
+	}
+
+	protected int deleteEntriesOfMessagesSentByActor(final Actor actor) {
+		int result;
+
+		result = this.mailboxEntryRepository.deleteEntriesOfMessagesSentByActor(actor.getId());
+
+		return result;
+	}
+
+	protected int deleteEntriesOfMessages(final Collection<Integer> messageIds) {
+		int result;
+
+		result = this.mailboxEntryRepository.deleteEntriesOfMessages(messageIds);
+
+		return result;
+	}
+
+	protected void deleteEntriesFromActor(final Actor actor) {
+		this.mailboxEntryRepository.deleteEntriesFromActor(actor.getId());
+	}
+
+}
@@ -0,0 +1,79 @@
+package services;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Moves the messages older than the archive age to the archive in the
+// background. Every batch is archived in its own transaction and a run
+// stops after MAX_ROUNDS, so a big backlog is worked off over several runs
+// without holding long locks on the mailbox tables. The runs are handed off
+// to a thread of their own, so they never hold the scheduler, which the
+// short periodic tasks share, and a run is skipped while the previous one
+// is still going.
+@Component
+public class MessageArchiver implements DisposableBean {
+
+	private static final Logger		LOGGER		= LogManager.getLogger(MessageArchiver.class);
+
+	private static final int		BATCH_SIZE	= 500;
+
+	private static final int		MAX_ROUNDS	= 20;
+
+	@Autowired
+	private MessageService			messageService;
+
+	private final ExecutorService	executor;
+
+	private final AtomicBoolean		inProgress;
+
+
+	public MessageArchiver() {
+		super();
+
+		this.executor = Executors.newSingleThreadExecutor();
+		this.inProgress = new AtomicBoolean();
+	}
+
+	@Override
+	public void destroy() {
+		this.executor.shutdownNow();
+	}
+
+	@Scheduled(fixedDelay = 3600000)
+	public void archive() {
+		if (this.inProgress.compareAndSet(false, true))
+			this.executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						MessageArchiver.this.archiveRounds();
+					} catch (final Throwable oops) {
+						MessageArchiver.LOGGER.error("Cannot archive the old messages", oops);
+					} finally {
+						MessageArchiver.this.inProgress.set(false);
+					}
+				}
+			});
+	}
+
+	// Private methods ---------------------------
+	private void archiveRounds() {
+		int archived, rounds;
+
+		rounds = 0;
+		do {
+			archived = this.messageService.archiveOldMessages(MessageArchiver.BATCH_SIZE);
+			rounds++;
+		} while (archived == MessageArchiver.BATCH_SIZE && rounds < MessageArchiver.MAX_ROUNDS);
+	}
+
+}
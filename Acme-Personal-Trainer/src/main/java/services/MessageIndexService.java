@@ -0,0 +1,640 @@
+
+package services;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.transaction.Transactional;
+import javax.transaction.Transactional.TxType;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FilteredQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Version;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import domain.Actor;
+import domain.AudienceMembership;
+import domain.Message;
+import forms.MessageSearchPage;
+
+// In-process Lucene index over the subject, body and tags of the messages.
+// Every message is a document that also lists the actors that hold it in
+// one of their boxes and, if it is addressed to an audience, the audience,
+// the moment it was sent and the members that have already taken it, so
+// searches are scoped to the principal. The index is only changed once the
+// transaction that delivers or removes the message commits; if it is found
+// empty on start-up, or written with another VERSION of the documents, it
+// is rebuilt from the database.
+//
+// Changes are visible to searches as soon as the near-real-time searcher is
+// refreshed, which doesn't touch the disk. They are committed, which syncs
+// the files, in the background every COMMIT_INTERVAL and when the
+// application stops. The index is marked as dirty while it is open, so
+// after an unclean stop it is rebuilt as well.
+@Service
+@Transactional
+public class MessageIndexService implements InitializingBean, DisposableBean, ApplicationListener<ContextRefreshedEvent> {
+
+	private static final Logger	LOGGER				= LogManager.getLogger(MessageIndexService.class);
+
+	private static final long	COMMIT_INTERVAL		= 60000;
+
+	private static final String	CLEAN				= "clean";
+
+	private static final String	FORMAT				= "format";
+
+	private static final String	VERSION				= "2";
+
+	private static final int	REBUILD_PAGE_SIZE	= 500;
+
+	private static final int	PAGE_SIZE			= 10;
+
+	private static final String	ID					= "id";
+	private static final String	SENDER				= "sender";
+	private static final String	ACTOR				= "actor";
+	private static final String	SUBJECT				= "subject";
+	private static final String	BODY				= "body";
+	private static final String	TAGS				= "tags";
+	private static final String	AUDIENCE			= "audience";
+	private static final String	SENT				= "sent";
+	private static final String	RECEIPT				= "receipt";
+
+	// Supporting services -------------------------
+	@Autowired
+	private MessageService		messageService;
+
+	@Autowired
+	private BoxService			boxService;
+
+	@Autowired
+	private ActorService		actorService;
+
+	@Autowired
+	private AudienceReceiptService	audienceReceiptService;
+
+	@Autowired
+	private AudienceMembershipService	audienceMembershipService;
+
+	@Autowired
+	private ArchivedMessageService	archivedMessageService;
+
+	@Value("${acme.message.index}")
+	private String				directory;
+
+	private Analyzer			analyzer;
+	private IndexWriter			writer;
+	private SearcherManager		searcherManager;
+	private volatile boolean	rebuildNeeded;
+	private volatile long		lastCommit;
+
+
+	// Constructor --------------------------------
+	public MessageIndexService() {
+		super();
+	}
+
+	@Override
+	public void afterPropertiesSet() throws IOException {
+		this.analyzer = new StandardAnalyzer();
+		this.writer = new IndexWriter(FSDirectory.open(new File(this.directory)), new IndexWriterConfig(Version.LUCENE_4_10_4, this.analyzer));
+		this.searcherManager = new SearcherManager(this.writer, true, null);
+
+		this.rebuildNeeded = this.writer.numDocs() == 0 || !"true".equals(this.writer.getCommitData().get(MessageIndexService.CLEAN)) || !MessageIndexService.VERSION.equals(this.writer.getCommitData().get(MessageIndexService.FORMAT));
+		this.writer.setCommitData(this.commitData(false));
+		this.writer.commit();
+		this.lastCommit = System.currentTimeMillis();
+	}
+
+	@Override
+	public void destroy() throws IOException {
+		this.searcherManager.close();
+		this.writer.setCommitData(this.commitData(true));
+		this.writer.close();
+		this.analyzer.close();
+	}
+
+	// Runs without a transaction, so every page of the rebuild is read in
+	// a persistence context of its own that is closed right away
+	@Override
+	@Transactional(TxType.NOT_SUPPORTED)
+	public void onApplicationEvent(final ContextRefreshedEvent event) {
+		if (this.rebuildNeeded) {
+			this.rebuild();
+			this.rebuildNeeded = false;
+		}
+	}
+
+	// Refreshes the searcher, in case a refresh after a change was skipped
+	// because another one was running, and commits the changes once
+	// COMMIT_INTERVAL has passed since the last commit
+	@Scheduled(fixedDelay = 1000)
+	@Transactional(TxType.NOT_SUPPORTED)
+	public void flush() {
+		try {
+			this.searcherManager.maybeRefresh();
+			if (this.writer.hasUncommittedChanges() && System.currentTimeMillis() - this.lastCommit >= MessageIndexService.COMMIT_INTERVAL) {
+				this.writer.commit();
+				this.lastCommit = System.currentTimeMillis();
+			}
+		} catch (final IOException oops) {
+			MessageIndexService.LOGGER.error("Cannot commit the message index", oops);
+		}
+	}
+
+	// Other business methods ---------------------
+	public MessageSearchPage search(final String text, final int page) {
+		Assert.isTrue(page >= 0);
+
+		MessageSearchPage result;
+		Actor principal;
+		IndexSearcher searcher;
+		TopDocs topDocs;
+		ScoreDoc[] hits;
+		List<Integer> messageIds;
+		Map<Integer, Message> messages;
+		List<Message> found;
+		int total;
+
+		principal = this.actorService.findPrincipal();
+		messageIds = new ArrayList<Integer>();
+
+		try {
+			searcher = this.searcherManager.acquire();
+			try {
+				topDocs = searcher.search(this.parse(text, principal), (page + 1) * MessageIndexService.PAGE_SIZE);
+				total = topDocs.totalHits;
+				hits = topDocs.scoreDocs;
+				for (int i = page * MessageIndexService.PAGE_SIZE; i < hits.length; i++)
+					messageIds.add(Integer.valueOf(searcher.doc(hits[i].doc).get(MessageIndexService.ID)));
+			} finally {
+				this.searcherManager.release(searcher);
+			}
+		} catch (final IOException oops) {
+			throw new IllegalStateException(oops);
+		}
+
+		// The messages are loaded with one query and returned in rank order
+		messages = new HashMap<Integer, Message>();
+		if (!messageIds.isEmpty())
+			for (final Message m : this.messageService.findByIds(messageIds))
+				messages.put(m.getId(), m);
+
+		found = new ArrayList<Message>();
+		for (final Integer messageId : messageIds)
+			if (messages.containsKey(messageId))
+				found.add(messages.get(messageId));
+
+		result = new MessageSearchPage();
+		result.setText(text);
+		result.setPage(page);
+		result.setMessages(found);
+		result.setTotal(total);
+		result.setHasNext(total > (page + 1) * MessageIndexService.PAGE_SIZE);
+
+		return result;
+	}
+
+	// Protected methods --------------------------
+
+	// Indexes a message that has just been delivered to its sender and
+	// recipients
+	protected void index(final Message message) {
+		final Document document;
+		Set<Integer> actorIds;
+
+		actorIds = new LinkedHashSet<Integer>();
+		actorIds.add(message.getSender().getId());
+		for (final Actor a : message.getRecipients())
+			actorIds.add(a.getId());
+
+		document = this.toDocument(message, actorIds, Collections.<Integer> emptySet());
+
+		this.afterCommit(new Runnable() {
+
+			@Override
+			public void run() {
+				MessageIndexService.this.write(document);
+			}
+		});
+	}
+
+	// Indexes the messages with the actors that hold them and the ones that
+	// have taken them from their audience right now. It is used when members
+	// of an audience take their copies.
+	protected void reindex(final Collection<Message> messages) {
+		final List<Document> documents;
+		Collection<Integer> messageIds;
+		Map<Integer, Set<Integer>> actorIds, receiptIds;
+
+		messageIds = new ArrayList<Integer>(messages.size());
+		for (final Message m : messages)
+			messageIds.add(m.getId());
+
+		actorIds = this.boxService.findActorIdsByMessages(messageIds);
+		receiptIds = this.audienceReceiptService.findActorIdsByMessages(messageIds);
+
+		documents = new ArrayList<Document>(messages.size());
+		for (final Message m : messages)
+			documents.add(this.toDocument(m, this.valueOrEmpty(actorIds, m.getId()), this.valueOrEmpty(receiptIds, m.getId())));
+
+		this.afterCommit(new Runnable() {
+
+			@Override
+			public void run() {
+				MessageIndexService.this.write(documents);
+			}
+		});
+	}
+
+	protected void reindex(final Message message) {
+		this.reindex(Collections.singleton(message));
+	}
+
+	// The actor no longer holds the messages in any of his or her boxes
+	protected void removeActor(final Collection<Integer> messageIds, final Actor actor) {
+		final List<Integer> ids;
+		final int actorId;
+
+		ids = new ArrayList<Integer>(messageIds);
+		actorId = actor.getId();
+
+		this.afterCommit(new Runnable() {
+
+			@Override
+			public void run() {
+				BooleanQuery query;
+
+				for (int i = 0; i < ids.size(); i += BooleanQuery.getMaxClauseCount()) {
+					query = new BooleanQuery();
+					for (final Integer messageId : ids.subList(i, Math.min(i + BooleanQuery.getMaxClauseCount(), ids.size())))
+						query.add(new TermQuery(new Term(MessageIndexService.ID, String.valueOf(messageId))), Occur.SHOULD);
+
+					MessageIndexService.this.rewriteWithoutActor(query, query.clauses().size(), actorId, false);
+				}
+			}
+		});
+	}
+
+	protected void removeActor(final Message message, final Actor actor) {
+		this.removeActor(Collections.singleton(message.getId()), actor);
+	}
+
+	// The actor has purged his or her messages: the ones he or she sent and
+	// the ones only he or she held are gone, the rest lose him or her
+	protected void removeActorFromAll(final Actor actor) {
+		final int actorId;
+
+		actorId = actor.getId();
+
+		this.afterCommit(new Runnable() {
+
+			@Override
+			public void run() {
+				MessageIndexService.this.rewriteWithoutActor(new TermQuery(new Term(MessageIndexService.ACTOR, String.valueOf(actorId))), 0, actorId, true);
+			}
+		});
+	}
+
+	protected void delete(final Collection<Integer> messageIds) {
+		final Term[] terms;
+		int i;
+
+		terms = new Term[messageIds.size()];
+		i = 0;
+		for (final Integer messageId : messageIds)
+			terms[i++] = new Term(MessageIndexService.ID, String.valueOf(messageId));
+
+		this.afterCommit(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					MessageIndexService.this.writer.deleteDocuments(terms);
+					MessageIndexService.this.refresh();
+				} catch (final IOException oops) {
+					MessageIndexService.LOGGER.error("Cannot remove " + terms.length + " messages from the index", oops);
+				}
+			}
+		});
+	}
+
+	protected void delete(final Message message) {
+		this.delete(Collections.singleton(message.getId()));
+	}
+
+	// Private methods ---------------------------
+
+	// Reads every message, in pages, together with the actors that hold it
+	// and the ones that have taken it from its audience, and then the
+	// archive, which keeps those actors as they were when it was archived
+	private void rebuild() {
+		List<Message> messages;
+		List<ArchivedMessageContent> contents;
+		List<Integer> messageIds;
+		Map<Integer, Set<Integer>> actorIds, receiptIds;
+		int lastId;
+
+		try {
+			this.writer.deleteAll();
+
+			lastId = 0;
+			do {
+				messages = this.messageService.findMessagesAfter(lastId, MessageIndexService.REBUILD_PAGE_SIZE);
+
+				messageIds = new ArrayList<Integer>();
+				for (final Message m : messages)
+					messageIds.add(m.getId());
+				actorIds = messageIds.isEmpty() ? new HashMap<Integer, Set<Integer>>() : this.boxService.findActorIdsByMessages(messageIds);
+				receiptIds = messageIds.isEmpty() ? new HashMap<Integer, Set<Integer>>() : this.audienceReceiptService.findActorIdsByMessages(messageIds);
+
+				for (final Message m : messages) {
+					if (actorIds.containsKey(m.getId()) || m.getAudience() != null)
+						this.writer.addDocument(this.toDocument(m, this.valueOrEmpty(actorIds, m.getId()), this.valueOrEmpty(receiptIds, m.getId())));
+					lastId = m.getId();
+				}
+			} while (messages.size() == MessageIndexService.REBUILD_PAGE_SIZE);
+
+			lastId = 0;
+			do {
+				contents = this.archivedMessageService.findContentsAfter(lastId, MessageIndexService.REBUILD_PAGE_SIZE);
+
+				for (final ArchivedMessageContent c : contents) {
+					if (!c.getHolderIds().isEmpty() || c.getAudience() != null)
+						this.writer.addDocument(this.toDocument(c.getMessageId(), c.getSenderId(), c.getAudience(), c.getSentMoment().getTime(), c.getSubject(), c.getBody(), c.getTags(), c.getHolderIds(), c.getReceiptIds()));
+					lastId = c.getMessageId();
+				}
+			} while (contents.size() == MessageIndexService.REBUILD_PAGE_SIZE);
+
+			this.writer.commit();
+			this.searcherManager.maybeRefreshBlocking();
+		} catch (final IOException oops) {
+			throw new IllegalStateException(oops);
+		}
+	}
+
+	// The query only matches the messages the actor holds or the ones
+	// addressed to his or her audiences, while he or she belonged to them,
+	// that he or she has not taken yet
+	private Query parse(final String text, final Actor actor) {
+		Query result, query;
+		BooleanQuery filter, memberships, membership, pending;
+		MultiFieldQueryParser parser;
+		Map<String, Float> boosts;
+		String actorId;
+
+		boosts = new HashMap<String, Float>();
+		boosts.put(MessageIndexService.SUBJECT, 2.0f);
+		boosts.put(MessageIndexService.TAGS, 1.5f);
+		parser = new MultiFieldQueryParser(new String[] {
+			MessageIndexService.SUBJECT, MessageIndexService.BODY, MessageIndexService.TAGS
+		}, this.analyzer, boosts);
+
+		try {
+			query = parser.parse(text);
+		} catch (final ParseException oops) {
+			try {
+				query = parser.parse(QueryParser.escape(text));
+			} catch (final ParseException again) {
+				throw new IllegalArgumentException(again);
+			}
+		}
+
+		actorId = String.valueOf(actor.getId());
+
+		memberships = new BooleanQuery();
+		for (final AudienceMembership am : this.audienceMembershipService.findMembershipsByActor(actor)) {
+			membership = new BooleanQuery();
+			membership.add(new TermQuery(new Term(MessageIndexService.AUDIENCE, am.getAudience())), Occur.MUST);
+			membership.add(NumericRangeQuery.newLongRange(MessageIndexService.SENT, am.getStartMoment().getTime(), am.getEndMoment() == null ? null : am.getEndMoment().getTime(), true, false), Occur.MUST);
+			memberships.add(membership, Occur.SHOULD);
+		}
+
+		pending = new BooleanQuery();
+		pending.add(memberships, Occur.MUST);
+		pending.add(new TermQuery(new Term(MessageIndexService.SENDER, actorId)), Occur.MUST_NOT);
+		pending.add(new TermQuery(new Term(MessageIndexService.RECEIPT, actorId)), Occur.MUST_NOT);
+
+		filter = new BooleanQuery();
+		filter.add(new TermQuery(new Term(MessageIndexService.ACTOR, actorId)), Occur.SHOULD);
+		filter.add(pending, Occur.SHOULD);
+
+		result = new FilteredQuery(query, new QueryWrapperFilter(filter));
+
+		return result;
+	}
+
+	private Document toDocument(final Message message, final Collection<Integer> actorIds, final Collection<Integer> receiptIds) {
+		Document result;
+
+		result = this.toDocument(message.getId(), message.getSender().getId(), message.getAudience(), message.getSentMoment().getTime(), message.getSubject(), message.getBody(), message.getTags(), actorIds, receiptIds);
+
+		return result;
+	}
+
+	private Document toDocument(final int messageId, final int senderId, final String audience, final long sentMoment, final String subject, final String body, final String tags, final Collection<Integer> actorIds, final Collection<Integer> receiptIds) {
+		Document result;
+
+		result = new Document();
+		result.add(new StringField(MessageIndexService.ID, String.valueOf(messageId), Field.Store.YES));
+		result.add(new StringField(MessageIndexService.SENDER, String.valueOf(senderId), Field.Store.YES));
+		for (final Integer actorId : actorIds)
+			result.add(new StringField(MessageIndexService.ACTOR, String.valueOf(actorId), Field.Store.YES));
+		if (audience != null)
+			result.add(new StringField(MessageIndexService.AUDIENCE, audience, Field.Store.YES));
+		result.add(new LongField(MessageIndexService.SENT, sentMoment, Field.Store.YES));
+		for (final Integer actorId : receiptIds)
+			result.add(new StringField(MessageIndexService.RECEIPT, String.valueOf(actorId), Field.Store.YES));
+		result.add(new TextField(MessageIndexService.SUBJECT, subject, Field.Store.YES));
+		result.add(new TextField(MessageIndexService.BODY, body, Field.Store.YES));
+		if (tags != null)
+			result.add(new TextField(MessageIndexService.TAGS, tags, Field.Store.YES));
+
+		return result;
+	}
+
+	private Set<Integer> valueOrEmpty(final Map<Integer, Set<Integer>> map, final int key) {
+		Set<Integer> result;
+
+		result = map.get(key);
+		if (result == null)
+			result = Collections.emptySet();
+
+		return result;
+	}
+
+	private void write(final Document document) {
+		this.write(Collections.singleton(document));
+	}
+
+	private void write(final Collection<Document> documents) {
+		try {
+			for (final Document d : documents)
+				this.writer.updateDocument(new Term(MessageIndexService.ID, d.get(MessageIndexService.ID)), d);
+			this.refresh();
+		} catch (final IOException oops) {
+			MessageIndexService.LOGGER.error("Cannot index " + documents.size() + " messages", oops);
+		}
+	}
+
+	// Rewrites the documents matched by the query without the actor. A
+	// document is deleted when nobody holds it anymore and it is not
+	// addressed to an audience or, on a purge, when the actor sent it. Up
+	// to size documents match or, if it is 0, as many as the actor holds.
+	private void rewriteWithoutActor(final Query query, final int size, final int actorId, final boolean purge) {
+		final IndexSearcher searcher;
+		final List<Integer> docIds;
+		TopDocs topDocs;
+		List<Document> documents;
+		Document updated;
+		Collection<Integer> actorIds, receiptIds;
+		String messageId, audience;
+
+		try {
+			this.searcherManager.maybeRefreshBlocking();
+			searcher = this.searcherManager.acquire();
+			try {
+				// The hit queue is as big as the number of hits asked for, so
+				// the matches of an unknown number are just collected
+				docIds = new ArrayList<Integer>();
+				if (size > 0) {
+					topDocs = searcher.search(query, size);
+					for (final ScoreDoc hit : topDocs.scoreDocs)
+						docIds.add(hit.doc);
+				} else
+					searcher.search(query, new Collector() {
+
+						private int	docBase;
+
+
+						@Override
+						public void setScorer(final Scorer scorer) {
+						}
+
+						@Override
+						public void collect(final int doc) {
+							docIds.add(this.docBase + doc);
+						}
+
+						@Override
+						public void setNextReader(final AtomicReaderContext context) {
+							this.docBase = context.docBase;
+						}
+
+						@Override
+						public boolean acceptsDocsOutOfOrder() {
+							return true;
+						}
+					});
+
+				documents = new ArrayList<Document>(docIds.size());
+				for (final Integer docId : docIds)
+					documents.add(searcher.doc(docId));
+			} finally {
+				this.searcherManager.release(searcher);
+			}
+
+			for (final Document d : documents) {
+				messageId = d.get(MessageIndexService.ID);
+
+				actorIds = new LinkedHashSet<Integer>();
+				for (final String a : d.getValues(MessageIndexService.ACTOR))
+					actorIds.add(Integer.valueOf(a));
+				actorIds.remove(actorId);
+
+				receiptIds = new LinkedHashSet<Integer>();
+				for (final String a : d.getValues(MessageIndexService.RECEIPT))
+					receiptIds.add(Integer.valueOf(a));
+				if (purge)
+					receiptIds.remove(actorId);
+
+				audience = d.get(MessageIndexService.AUDIENCE);
+
+				if ((actorIds.isEmpty() && audience == null) || (purge && d.get(MessageIndexService.SENDER).equals(String.valueOf(actorId))))
+					this.writer.deleteDocuments(new Term(MessageIndexService.ID, messageId));
+				else {
+					updated = this.toDocument(Integer.valueOf(messageId), Integer.valueOf(d.get(MessageIndexService.SENDER)), audience, d.getField(MessageIndexService.SENT).numericValue().longValue(), d.get(MessageIndexService.SUBJECT), d.get(MessageIndexService.BODY), d.get(MessageIndexService.TAGS), actorIds, receiptIds);
+					this.writer.updateDocument(new Term(MessageIndexService.ID, messageId), updated);
+				}
+			}
+
+			this.refresh();
+		} catch (final IOException oops) {
+			MessageIndexService.LOGGER.error("Cannot remove actor " + actorId + " from the index", oops);
+		}
+	}
+
+	private Map<String, String> commitData(final boolean clean) {
+		Map<String, String> result;
+
+		result = new HashMap<String, String>();
+		result.put(MessageIndexService.CLEAN, String.valueOf(clean));
+		result.put(MessageIndexService.FORMAT, MessageIndexService.VERSION);
+
+		return result;
+	}
+
+	// Opens a near-real-time searcher over the changes, without committing
+	private void refresh() throws IOException {
+		this.searcherManager.maybeRefresh();
+	}
+
+	private void afterCommit(final Runnable task) {
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+				@Override
+				public void afterCommit() {
+					task.run();
+				}
+			});
+		else
+			task.run();
+	}
+
+}
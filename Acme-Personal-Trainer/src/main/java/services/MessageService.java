@@ -2,14 +2,18 @@
 package services;
 
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.transaction.Transactional;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 import org.springframework.validation.BindingResult;
@@ -29,6 +33,8 @@ import forms.MessageForm;
 @Transactional
 public class MessageService {
 
+	private static final int		PAGE_SIZE	= 500;
+
 	// Managed repository ---------------------------------------------
 	@Autowired
 	private MessageRepository		messageRepository;
@@ -50,7 +56,19 @@ public class MessageService {
 	private CustomisationService	customisationService;
 
 	@Autowired
-	private CustomerService			customerService;
+	private MessageIndexService		messageIndexService;
+
+	@Autowired
+	private AudienceReceiptService	audienceReceiptService;
+
+	@Autowired
+	private AudienceMembershipService	audienceMembershipService;
+
+	@Autowired
+	private DeliveryJobService		deliveryJobService;
+
+	@Autowired
+	private ArchivedMessageService	archivedMessageService;
 
 
 	//Constructor ----------------------------------------------------
@@ -67,13 +85,26 @@ public class MessageService {
 		return result;
 	}
 
+	// Archived messages are read from the archive; they may be displayed by
+	// their sender, by the actors that held them when they were archived or
+	// by the members of their audience
 	public Message findOneToDisplay(final int messageId) {
 		Message result;
+		ArchivedMessageContent content;
+		Actor principal;
 
 		result = this.messageRepository.findOne(messageId);
 
-		Assert.notNull(result);
-		this.checkSenderOrRecipient(result);
+		if (result != null)
+			this.checkSenderOrRecipient(result);
+		else {
+			content = this.archivedMessageService.findContent(messageId);
+			Assert.notNull(content);
+
+			principal = this.actorService.findPrincipal();
+			result = this.archivedMessageService.toMessage(content);
+			Assert.isTrue(content.getSenderId() == principal.getId() || content.getHolderIds().contains(principal.getId()) || this.isInAudience(result, principal));
+		}
 
 		return result;
 	}
@@ -108,6 +139,21 @@ public class MessageService {
 		return results;
 	}
 
+	// Page of the messages received by an actor, in id order, that follow
+	// the given message id (0 for the first page)
+	public List<Message> findReceivedMessagesByActor(final int actorId, final int afterMessageId, final int size) {
+		List<Message> results;
+		List<Integer> messageIds;
+
+		messageIds = this.messageRepository.findReceivedMessageIdsByActor(actorId, afterMessageId, size);
+		if (messageIds.isEmpty())
+			results = new ArrayList<Message>();
+		else
+			results = this.messageRepository.findByIds(messageIds);
+
+		return results;
+	}
+
 	public Message create() {
 		Message result;
 		Actor principal;
@@ -124,19 +170,18 @@ public class MessageService {
 		return result;
 	}
 
+	// A broadcast is addressed to every actor as a whole; it is resolved
+	// when their boxes are read, so it stores no recipients.
 	public Message createBroadcast() {
 		Message result;
-		Collection<Actor> recipients;
-
-		recipients = this.actorService.findActorsWithoutPrincipal();
 
 		result = this.create();
-		result.setRecipients(recipients);
+		result.setAudience("ALL");
 
 		return result;
 	}
 
-	private Message createNotification(final Collection<Actor> recipients, final String subject, final String body) {
+	private Message createNotification(final String subject, final String body) {
 		Message result;
 		Date current_moment;
 		Actor system;
@@ -146,7 +191,7 @@ public class MessageService {
 
 		result = new Message();
 		result.setSender(system);
-		result.setRecipients(recipients);
+		result.setRecipients(Collections.<Actor> emptySet());
 		result.setSentMoment(current_moment);
 		result.setBody(body);
 		result.setSubject(subject);
@@ -159,34 +204,24 @@ public class MessageService {
 	public Message send(final Message message) {
 		Assert.notNull(message);
 		Assert.isTrue(message.getId() == 0);
+		Assert.isTrue(message.getAudience() == null && !message.getRecipients().isEmpty());
 		this.checkByPrincipal(message);
 		this.checkPriority(message);
 
 		Message result;
-		Box inBoxRecipient, outBoxSender, spamBoxRecipient;
 		boolean isSpam;
 
-		result = this.messageRepository.save(message);
-
-		outBoxSender = this.boxService.findOutBoxFromActor(result.getSender().getId());
-
-		this.boxService.addMessage(outBoxSender, result);
+		isSpam = this.messageIsSpam(message);
+		message.setIsSpam(isSpam);
 
-		isSpam = this.messageIsSpam(result);
+		result = this.messageRepository.save(message);
 
-		if (isSpam) {
-			result.setIsSpam(true);
-			for (final Actor recipient : result.getRecipients()) {
-				spamBoxRecipient = this.boxService.findSpamBoxFromActor(recipient.getId());
+		this.boxService.addMessageToOutBox(result);
 
-				this.boxService.addMessage(spamBoxRecipient, result);
-			}
-		} else
-			for (final Actor recipient : result.getRecipients()) {
-				inBoxRecipient = this.boxService.findInBoxFromActor(recipient.getId());
+		// Long lists of recipients are delivered by a job in the background
+		this.deliveryJobService.start(result, false);
 
-				this.boxService.addMessage(inBoxRecipient, result);
-			}
+		this.messageIndexService.index(result);
 
 		return result;
 	}
@@ -195,33 +230,33 @@ public class MessageService {
 		Assert.notNull(message);
 		Assert.notNull(box);
 		Assert.isTrue(box.getId() != 0 && this.messageRepository.exists(message.getId()));
-		Assert.isTrue(box.getMessages().contains(message));
 		this.checkSenderOrRecipient(message);
 		this.boxService.checkByPrincipal(box);
+		this.takeAudienceMessage(message);
+		Assert.isTrue(this.boxService.containsMessage(box, message));
 
 		Actor principal;
 		final Box trashBox;
-		List<Box> boxes;
 		Integer numberBoxesWithMessage;
 
 		principal = this.actorService.findPrincipal();
 		trashBox = this.boxService.findTrashBoxFromActor(principal.getId());
 
-		if (trashBox.equals(box)) {
-			boxes = new ArrayList<Box>(this.boxService.findBoxesFromActorThatContaintsAMessage(principal.getId(), message.getId()));
-			for (final Box b : boxes)
-				this.boxService.removeMessage(b, message);
-
-			//this.boxService.removeMessage(trashBox, message);
-
-		} else {
+		if (trashBox.getId() == box.getId()) {
+			this.boxService.removeMessageFromActor(principal, message);
+			this.messageIndexService.removeActor(message, principal);
+		} else if (this.boxService.containsMessage(trashBox, message))
 			this.boxService.removeMessage(box, message);
-			this.boxService.addMessage(trashBox, message);
-		}
+		else
+			this.boxService.moveMessage(message, box, trashBox);
 
+		// A message addressed to an audience is kept while its sender exists,
+		// as other members may not have taken it yet
 		numberBoxesWithMessage = this.boxService.numberOfBoxesThatContaintAMessage(message.getId());
-		if (numberBoxesWithMessage == 0)
+		if (numberBoxesWithMessage == 0 && message.getAudience() == null) {
 			this.messageRepository.delete(message);
+			this.messageIndexService.delete(message);
+		}
 	}
 
 	// Other business methods ---------------------
@@ -230,46 +265,119 @@ public class MessageService {
 		Assert.notNull(origin);
 		Assert.notNull(destination);
 		Assert.isTrue(origin.getId() != 0 && destination.getId() != 0 && this.messageRepository.exists(message.getId()));
-		Assert.isTrue(origin.getMessages().contains(message) && !destination.getMessages().contains(message));
 		this.checkSenderOrRecipient(message);
 		this.boxService.checkByPrincipal(origin);
 		this.boxService.checkByPrincipal(destination);
+		this.takeAudienceMessage(message);
+		Assert.isTrue(this.boxService.containsMessage(origin, message) && !this.boxService.containsMessage(destination, message));
 
-		this.boxService.addMessage(destination, message);
-		this.boxService.removeMessage(origin, message);
+		this.boxService.moveMessage(message, origin, destination);
+	}
+
+	// Moves a selection of messages of the origin box to the destination
+	// box. The selection is validated with one query and moved with
+	// set-based statements; messages already stored in the destination are
+	// just removed from the origin. It returns the number of messages added
+	// to the destination.
+	public int moveMessages(final Collection<Integer> messageIds, final Box origin, final Box destination) {
+		Assert.notEmpty(messageIds);
+		Assert.isTrue(messageIds.size() <= BoxService.PAGE_SIZE);
+		Assert.notNull(origin);
+		Assert.notNull(destination);
+		Assert.isTrue(origin.getId() != destination.getId());
+		this.boxService.checkByPrincipal(origin);
+		this.boxService.checkByPrincipal(destination);
+
+		int result;
+		Set<Integer> ids;
+
+		ids = new HashSet<Integer>(messageIds);
+		this.checkSelection(ids, origin);
+
+		result = this.boxService.moveMessages(ids, origin, destination);
+
+		return result;
+	}
+
+	// Deletes a selection of messages of the box. Out of the trash box they
+	// are moved to it; from the trash box they are removed from every box of
+	// the principal, and the ones nobody holds anymore are deleted. It
+	// returns the number of rows affected.
+	public int deleteMessages(final Collection<Integer> messageIds, final Box box) {
+		Assert.notEmpty(messageIds);
+		Assert.isTrue(messageIds.size() <= BoxService.PAGE_SIZE);
+		Assert.notNull(box);
+		this.boxService.checkByPrincipal(box);
+
+		int result;
+		Set<Integer> ids;
+		Actor principal;
+		Box trashBox;
+		List<Integer> orphanIds;
+
+		ids = new HashSet<Integer>(messageIds);
+		this.checkSelection(ids, box);
+
+		principal = this.actorService.findPrincipal();
+		trashBox = this.boxService.findTrashBoxFromActor(principal.getId());
+
+		if (trashBox.getId() == box.getId()) {
+			result = this.boxService.removeMessagesFromActor(principal, ids);
+			this.messageIndexService.removeActor(ids, principal);
+
+			orphanIds = this.messageRepository.findOrphanMessageIds(ids);
+			if (!orphanIds.isEmpty()) {
+				result += this.messageRepository.deleteRecipientsOfMessages(orphanIds);
+				result += this.messageRepository.deleteMessages(orphanIds);
+				this.messageIndexService.delete(orphanIds);
+			}
+		} else
+			result = this.boxService.moveMessages(ids, box, trashBox);
+
+		return result;
+	}
+
+	// Marks a selection of messages of the box as read
+	public void markAsRead(final Collection<Integer> messageIds, final Box box) {
+		Assert.notEmpty(messageIds);
+		Assert.isTrue(messageIds.size() <= BoxService.PAGE_SIZE);
+		Assert.notNull(box);
+		this.boxService.checkByPrincipal(box);
+
+		Set<Integer> ids;
+
+		ids = new HashSet<Integer>(messageIds);
+		this.checkSelection(ids, box);
+
+		this.boxService.markAsRead(box, ids);
+	}
+
+	public void markAllAsRead(final Box box) {
+		Assert.notNull(box);
+		this.boxService.checkByPrincipal(box);
+
+		this.boxService.markAllAsRead(box);
 	}
 
 	public Message sendBroadcast(final Message message) {
 		Assert.notNull(message);
 		Assert.isTrue(message.getId() == 0);
+		Assert.isTrue(message.getAudience() != null && message.getRecipients().isEmpty());
 		this.checkByPrincipal(message);
 
 		Message result;
 		boolean isSpam;
-		Collection<Actor> recipients;
-		Box outBoxSender, notificationBoxRecipient, spamBoxRecipient;
-
-		result = this.messageRepository.save(message);
 
-		outBoxSender = this.boxService.findOutBoxFromActor(result.getSender().getId());
+		isSpam = this.messageIsSpam(message);
+		message.setIsSpam(isSpam);
 
-		this.boxService.addMessage(outBoxSender, result);
-
-		recipients = result.getRecipients();
-		isSpam = this.messageIsSpam(result);
-		if (isSpam) {
-			result.setIsSpam(true);
-			for (final Actor a : recipients) {
-				spamBoxRecipient = this.boxService.findSpamBoxFromActor(a.getId());
+		result = this.messageRepository.save(message);
 
-				this.boxService.addMessage(spamBoxRecipient, result);
-			}
-		} else
-			for (final Actor a : recipients) {
-				notificationBoxRecipient = this.boxService.findNotificationBoxFromActor(a.getId());
+		// Only the sender's copy is stored: the members of the audience see
+		// it in their notification or spam boxes until they take it
+		this.boxService.addMessageToOutBox(result);
 
-				this.boxService.addMessage(notificationBoxRecipient, result);
-			}
+		this.messageIndexService.index(result);
 
 		return result;
 	}
@@ -283,54 +391,66 @@ public class MessageService {
 		Message result;
 
 		result = this.create();
-		result.setSubject(message.getSubject());
-		result.setBody(message.getBody());
-		result.setPriority(message.getPriority());
-		result.setTags(message.getTags());
 		result.setRecipients(message.getRecipients());
+		this.bind(result, message);
 
 		this.validator.validate(result, binding);
+		if (result.getRecipients() != null && result.getRecipients().isEmpty())
+			binding.rejectValue("recipients", "message.error.recipients", "Must not be empty");
 
 		return result;
 	}
 
-	// This method id used when an actor want to delete all his or her data.
-	public void deleteMessagesFromActor(final Actor actor) {
-		Collection<Message> sentMessages, receivedMessages;
-		Collection<Box> boxes;
+	public Message reconstructBroadcast(final Message message, final BindingResult binding) {
+		Message result;
+
+		result = this.createBroadcast();
+		this.bind(result, message);
 
-		sentMessages = this.findSentMessagesByActor(actor.getId());
-		for (final Message m1 : sentMessages) {
-			boxes = this.boxService.findBoxesByMessage(m1.getId());
-			for (final Box b : boxes)
-				this.boxService.removeMessage(b, m1);
+		this.validator.validate(result, binding);
 
-			this.messageRepository.delete(m1);
+		return result;
+	}
+
+	// This method id used when an actor want to delete all his or her data.
+	// It works with bulk statements: the messages sent by the actor and the
+	// messages whose only recipient is the actor are deleted together with
+	// their box entries, and the actor is removed from the recipients of
+	// every other message. It returns the number of rows affected.
+	public int deleteMessagesFromActor(final Actor actor) {
+		int result;
+		List<Integer> orphanIds, chunk, archivedIds;
+
+		result = this.boxService.removeMessagesSentByActor(actor);
+		result += this.audienceReceiptService.deleteReceiptsOfMessagesSentByActor(actor);
+		result += this.audienceReceiptService.deleteReceiptsFromActor(actor);
+		result += this.messageRepository.deleteRecipientsOfMessagesSentByActor(actor.getId());
+		result += this.messageRepository.deleteMessagesSentByActor(actor.getId());
+
+		orphanIds = this.messageRepository.findMessageIdsReceivedOnlyByActor(actor.getId());
+		result += this.messageRepository.deleteRecipientFromMessages(actor.getId());
+
+		for (int i = 0; i < orphanIds.size(); i += MessageService.PAGE_SIZE) {
+			chunk = orphanIds.subList(i, Math.min(i + MessageService.PAGE_SIZE, orphanIds.size()));
+			result += this.boxService.removeMessages(chunk);
+			result += this.messageRepository.deleteMessages(chunk);
 		}
 
-		receivedMessages = this.findReceivedMessagesByActor(actor.getId());
-		for (final Message m2 : receivedMessages)
-			// If the message has as unique recipient the actor, then the message
-			// is deleted
-			if (m2.getRecipients().size() == 1) {
-				boxes = this.boxService.findBoxesByMessage(m2.getId());
-				for (final Box b : boxes)
-					this.boxService.removeMessage(b, m2);
+		archivedIds = this.archivedMessageService.deleteArchivedMessagesSentByActor(actor);
+		if (!archivedIds.isEmpty()) {
+			result += archivedIds.size();
+			this.messageIndexService.delete(archivedIds);
+		}
 
-				this.messageRepository.delete(m2);
-			} else
-				m2.getRecipients().remove(actor);
+		this.messageIndexService.removeActorFromAll(actor);
+
+		return result;
 	}
 
 	public Message breachNotification() {
 		Message message, result;
-		List<Actor> recipients;
-		Box notificationBox, outBox;
 		String subject, body;
 
-		recipients = new ArrayList<Actor>();
-		recipients.addAll(this.actorService.findAll());
-
 		subject = "Breach notification / Notificacin de brecha de seguridad";
 		body = "Dear valued user, we regret to inform you that your data has been exposed. Urge you to remain vigilant /" + "Apreciado usuario, lamentamos informarle de que sus datos han sido expuestos. Le instamos a estar alerta.";
 
@@ -338,18 +458,13 @@ public class MessageService {
 		message.setSubject(subject);
 		message.setBody(body);
 		message.setPriority("HIGH");
-		message.setRecipients(recipients);
+		message.setAudience("ALL");
 
 		result = this.messageRepository.save(message);
 
-		outBox = this.boxService.findOutBoxFromActor(result.getSender().getId());
-		this.boxService.addMessage(outBox, result);
+		this.boxService.addMessageToOutBox(result);
 
-		for (final Actor a : recipients) {
-			notificationBox = this.boxService.findNotificationBoxFromActor(a.getId());
-
-			this.boxService.addMessage(notificationBox, result);
-		}
+		this.messageIndexService.index(result);
 
 		return result;
 	}
@@ -359,7 +474,6 @@ public class MessageService {
 		Actor customer, trainer;
 		List<Actor> recipients;
 		String subject, body, ticker, status;
-		Box outBoxSender, notificationBoxRecipient;
 
 		customer = application.getCustomer();
 		trainer = application.getWorkingOut().getTrainer();
@@ -374,17 +488,15 @@ public class MessageService {
 		subject = "Application notification / Notificacin de solicitud";
 		body = "The application related to working-out whose ticker is " + ticker + " has been " + status + ". / La solicitud relacionada con el programa de entrenamiento cuyo ticker es " + ticker + " has sido " + status + ".";
 
-		notification = this.createNotification(recipients, subject, body);
+		notification = this.createNotification(subject, body);
+		notification.setRecipients(recipients);
 
 		result = this.messageRepository.save(notification);
 
-		outBoxSender = this.boxService.findOutBoxFromActor(result.getSender().getId());
-		this.boxService.addMessage(outBoxSender, result);
+		this.boxService.addMessageToOutBox(result);
+		this.deliveryJobService.start(result, true);
 
-		for (final Actor recipient : recipients) {
-			notificationBoxRecipient = this.boxService.findNotificationBoxFromActor(recipient.getId());
-			this.boxService.addMessage(notificationBoxRecipient, result);
-		}
+		this.messageIndexService.index(result);
 
 		return result;
 	}
@@ -392,28 +504,21 @@ public class MessageService {
 	protected Message notification_publishedWorkingOut(final WorkingOut workingOut) {
 		Message notification;
 		final Message result;
-		List<Actor> recipients;
 		String subject, body, ticker;
-		Box outBoxSender, notificationBoxRecipient;
-
-		recipients = new ArrayList<Actor>(this.customerService.findAll());
 
 		ticker = workingOut.getTicker();
 
 		subject = "Working-out notification. / Notificacin de programa de entrenamiento.";
 		body = "A working-out whose ticker is " + ticker + " has been published. / Un programa de entrenamiento cuyo ticker es " + " ha sido publicado.";
 
-		notification = this.createNotification(recipients, subject, body);
+		notification = this.createNotification(subject, body);
+		notification.setAudience("ROLE:CUSTOMER");
 
 		result = this.messageRepository.save(notification);
 
-		outBoxSender = this.boxService.findOutBoxFromActor(result.getSender().getId());
-		this.boxService.addMessage(outBoxSender, result);
+		this.boxService.addMessageToOutBox(result);
 
-		for (final Actor recipient : recipients) {
-			notificationBoxRecipient = this.boxService.findNotificationBoxFromActor(recipient.getId());
-			this.boxService.addMessage(notificationBoxRecipient, result);
-		}
+		this.messageIndexService.index(result);
 
 		return result;
 	}
@@ -421,11 +526,7 @@ public class MessageService {
 	protected Message notification_newArticle(final Article article) {
 		Message notification;
 		final Message result;
-		List<Actor> recipients;
 		String subject, body, fullname, title;
-		Box outBoxSender, notificationBoxRecipient;
-
-		recipients = new ArrayList<Actor>(this.customerService.findPremiumCustomers());
 
 		fullname = article.getNutritionist().getFullname();
 		title = article.getTitle();
@@ -433,21 +534,144 @@ public class MessageService {
 		subject = "New article. / Nuevo artculo.";
 		body = "There is a new article written by " + fullname + " and whose title is " + title + " / Un nuevo artculo ha sido escrito por " + fullname + " y cuyo ttulo es " + title;
 
-		notification = this.createNotification(recipients, subject, body);
+		notification = this.createNotification(subject, body);
+		notification.setAudience("PREMIUM");
 
 		result = this.messageRepository.save(notification);
 
-		outBoxSender = this.boxService.findOutBoxFromActor(result.getSender().getId());
-		this.boxService.addMessage(outBoxSender, result);
+		this.boxService.addMessageToOutBox(result);
+
+		this.messageIndexService.index(result);
+
+		return result;
+	}
+
+	// The messages that are no longer in the message table are read from
+	// the archive
+	protected List<Message> findByIds(final Collection<Integer> messageIds) {
+		List<Message> results;
+		Set<Integer> archivedIds;
+
+		results = this.messageRepository.findByIds(messageIds);
+
+		if (results.size() < messageIds.size()) {
+			archivedIds = new HashSet<Integer>(messageIds);
+			for (final Message m : results)
+				archivedIds.remove(m.getId());
+
+			results = new ArrayList<Message>(results);
+			results.addAll(this.archivedMessageService.toMessages(this.archivedMessageService.findContents(archivedIds)));
+		}
+
+		return results;
+	}
+
+	// Page of the ids of the recipients of the message that follow the given
+	// actor id, in id order
+	protected List<Integer> findRecipientIdsAfter(final Message message, final int actorId, final int size) {
+		List<Integer> results;
+
+		results = this.messageRepository.findRecipientIdsAfter(message.getId(), actorId, size);
+
+		return results;
+	}
+
+	// Page of the ids of the messages that follow the given message id, in
+	// id order (0 for the first page)
+	public List<Integer> findMessageIdsAfter(final int messageId, final int size) {
+		List<Integer> results;
 
-		for (final Actor recipient : recipients) {
-			notificationBoxRecipient = this.boxService.findNotificationBoxFromActor(recipient.getId());
-			this.boxService.addMessage(notificationBoxRecipient, result);
+		results = this.messageRepository.findMessageIdsAfter(messageId, new PageRequest(0, size));
+
+		return results;
+	}
+
+	// Checks the messages again against the given spam words. The ones whose
+	// spam flag changes are updated and their copies moved between the in,
+	// or notification, boxes and the spam boxes. It returns the number of
+	// messages whose flag has changed.
+	public int reclassifyMessages(final Collection<Integer> messageIds, final String spamWords) {
+		Assert.notNull(messageIds);
+		Assert.notNull(spamWords);
+
+		SpamWordMatcher matcher;
+		List<Message> spam, notSpam;
+		boolean isSpam;
+
+		matcher = new SpamWordMatcher(this.utilityService.ListByString(spamWords));
+		spam = new ArrayList<Message>();
+		notSpam = new ArrayList<Message>();
+		if (!messageIds.isEmpty())
+			for (final Message m : this.messageRepository.findByIds(messageIds)) {
+				isSpam = matcher.matches(this.spamText(m));
+				if (isSpam && !m.getIsSpam())
+					spam.add(m);
+				else if (!isSpam && m.getIsSpam())
+					notSpam.add(m);
+			}
+
+		if (!spam.isEmpty()) {
+			this.messageRepository.updateIsSpam(this.idsOf(spam), true);
+			this.boxService.moveBetweenSpamBoxes(spam, true);
 		}
+		if (!notSpam.isEmpty()) {
+			this.messageRepository.updateIsSpam(this.idsOf(notSpam), false);
+			this.boxService.moveBetweenSpamBoxes(notSpam, false);
+		}
+
+		return spam.size() + notSpam.size();
+	}
+
+	// Moves to the archive the oldest chunk of the messages older than the
+	// archive age that are no longer listed in any box but a trash box, so
+	// archiving never takes a message out of a listing the actor still
+	// uses. It returns the number of messages archived.
+	public int archiveOldMessages(final int size) {
+		int result;
+		Calendar calendar;
+
+		calendar = Calendar.getInstance();
+		calendar.setTime(this.utilityService.current_moment());
+		calendar.add(Calendar.DAY_OF_MONTH, -this.customisationService.find().getArchiveAge());
+
+		result = this.archiveMessagesSentBefore(calendar.getTime(), size);
 
 		return result;
 	}
 
+	// The messages leave the trash boxes and the message tables, so the
+	// archive keeps the actors that held them; the search index is left as
+	// it is.
+	protected int archiveMessagesSentBefore(final Date moment, final int size) {
+		Assert.notNull(moment);
+		Assert.isTrue(size > 0);
+
+		List<Integer> messageIds;
+		List<Message> messages;
+
+		messageIds = this.messageRepository.findArchivableMessageIdsSentBefore(moment, new PageRequest(0, size));
+
+		if (!messageIds.isEmpty()) {
+			messages = this.messageRepository.findByIds(messageIds);
+			this.archivedMessageService.archive(messages, this.boxService.findActorIdsByMessages(messageIds), this.audienceReceiptService.findActorIdsByMessages(messageIds));
+
+			this.boxService.removeMessages(messageIds);
+			this.audienceReceiptService.deleteReceiptsOfMessages(messageIds);
+			this.messageRepository.deleteRecipientsOfMessages(messageIds);
+			this.messageRepository.deleteArchivedMessages(messageIds);
+		}
+
+		return messageIds.size();
+	}
+
+	protected List<Message> findMessagesAfter(final int messageId, final int size) {
+		List<Message> results;
+
+		results = this.messageRepository.findMessagesAfter(messageId, new PageRequest(0, size));
+
+		return results;
+	}
+
 	protected Double numberSpamMessagesSentByActor(final int actorId) {
 		Double result;
 
@@ -486,33 +710,76 @@ public class MessageService {
 
 		principal = this.actorService.findPrincipal();
 
-		Assert.isTrue(message.getSender().equals(principal) || message.getRecipients().contains(principal));
+		Assert.isTrue(message.getSender().equals(principal) || this.isInAudience(message, principal) || this.messageRepository.numberOfRecipientRows(message.getId(), principal.getId()).intValue() > 0);
+	}
+
+	private boolean isInAudience(final Message message, final Actor actor) {
+		boolean result;
+
+		result = this.audienceMembershipService.isMember(actor, message);
+
+		return result;
+	}
+
+	// The principal's copy of an audience message is stored before it is
+	// moved or deleted
+	private void takeAudienceMessage(final Message message) {
+		Actor principal;
+
+		principal = this.actorService.findPrincipal();
+
+		if (this.boxService.takeAudienceMessage(principal, message))
+			this.messageIndexService.reindex(message);
+	}
+
+	// Every message of the selection must be stored in the box; the pending
+	// audience messages shown in it are taken first
+	private void checkSelection(final Set<Integer> messageIds, final Box box) {
+		Actor principal;
+		Collection<Message> taken;
+
+		principal = this.actorService.findPrincipal();
+
+		taken = this.boxService.takeAudienceMessages(principal, box, messageIds);
+		if (!taken.isEmpty())
+			this.messageIndexService.reindex(taken);
+
+		Assert.isTrue(this.boxService.numberOfMessagesInBox(box, messageIds) == messageIds.size());
+	}
+
+	private void bind(final Message result, final Message message) {
+		result.setSubject(message.getSubject());
+		result.setBody(message.getBody());
+		result.setPriority(message.getPriority());
+		result.setTags(message.getTags());
 	}
 
 	private boolean messageIsSpam(final Message message) {
-		String spam_words;
-		List<String> spamWords;
-		Customisation customisation;
-		String text;
 		boolean result;
 
-		customisation = this.customisationService.find();
+		result = this.customisationService.containsSpamWords(this.spamText(message));
 
-		spam_words = customisation.getSpamWords();
-		spamWords = this.utilityService.ListByString(spam_words);
+		return result;
+	}
 
-		text = message.getSubject() + " " + message.getBody();
+	private String spamText(final Message message) {
+		String result;
 
-		result = false;
-		for (final String s : spamWords)
-			if (text.toLowerCase().contains(s.toLowerCase())) {
-				result = true;
-				break;
-			}
+		result = message.getSubject() + " " + message.getBody();
 
 		return result;
 	}
 
+	private Collection<Integer> idsOf(final Collection<Message> messages) {
+		Collection<Integer> results;
+
+		results = new ArrayList<Integer>(messages.size());
+		for (final Message m : messages)
+			results.add(m.getId());
+
+		return results;
+	}
+
 	public Integer validateDestinationBox(final MessageForm messageForm, final String language, final BindingResult binding) {
 		Integer result;
 
@@ -0,0 +1,163 @@
+
+package services;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.OptimisticLockException;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.hibernate.StaleStateException;
+import org.springframework.core.Ordered;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// Runs again, after a randomised exponential backoff, the service methods
+// annotated with RetryOnOptimisticLock whose transaction fails because
+// another one changed the same rows first. Only optimistic lock conflicts
+// are retried: deadlocks and lock timeouts mean the database is already
+// contended, and running the call again would only add to it. Only the
+// calls that open the transaction are retried, since a transaction that has
+// failed can't go on; that's why the aspect wraps the transactional proxy.
+// The annotated methods take ids and load their entities again, so a retry
+// reads the rows the winner committed; it's thrown after MAX_ATTEMPTS. The
+// counters tell how often each method runs into contention.
+@Aspect
+@Component
+public class OptimisticLockRetryAspect implements Ordered {
+
+	private static final int					MAX_ATTEMPTS		= 3;
+
+	private static final long					BASE_BACKOFF_MILLIS	= 20L;
+
+	private final AtomicLong					conflicts;
+	private final AtomicLong					recoveries;
+	private final AtomicLong					failures;
+	private final ConcurrentMap<String, AtomicLong>	conflictsByMethod;
+
+
+	public OptimisticLockRetryAspect() {
+		super();
+
+		this.conflicts = new AtomicLong();
+		this.recoveries = new AtomicLong();
+		this.failures = new AtomicLong();
+		this.conflictsByMethod = new ConcurrentHashMap<String, AtomicLong>();
+	}
+
+	// Before the transaction interceptor, which has the lowest precedence
+	@Override
+	public int getOrder() {
+		return Ordered.HIGHEST_PRECEDENCE;
+	}
+
+	@Around("@annotation(services.RetryOnOptimisticLock)")
+	public Object retryOnConflict(final ProceedingJoinPoint joinPoint) throws Throwable {
+		Object result;
+		int attempt;
+		boolean retry;
+
+		if (TransactionSynchronizationManager.isActualTransactionActive())
+			result = joinPoint.proceed();
+		else {
+			result = null;
+			attempt = 1;
+			do
+				try {
+					result = joinPoint.proceed();
+					retry = false;
+
+					if (attempt > 1)
+						this.recoveries.incrementAndGet();
+				} catch (final RuntimeException oops) {
+					if (!OptimisticLockRetryAspect.isConflict(oops))
+						throw oops;
+
+					this.countConflict(joinPoint.getSignature().toShortString());
+					if (attempt == OptimisticLockRetryAspect.MAX_ATTEMPTS) {
+						this.failures.incrementAndGet();
+						throw oops;
+					}
+
+					OptimisticLockRetryAspect.backoff(attempt);
+					attempt++;
+					retry = true;
+				}
+			while (retry);
+		}
+
+		return result;
+	}
+
+	// Contention counters ------------------------
+
+	public long getConflicts() {
+		return this.conflicts.get();
+	}
+
+	public long getRecoveries() {
+		return this.recoveries.get();
+	}
+
+	public long getFailures() {
+		return this.failures.get();
+	}
+
+	public long getConflicts(final String method) {
+		AtomicLong counter;
+
+		counter = this.conflictsByMethod.get(method);
+
+		return counter == null ? 0 : counter.get();
+	}
+
+	// Private methods ---------------------------
+
+	private void countConflict(final String method) {
+		AtomicLong counter;
+
+		this.conflicts.incrementAndGet();
+
+		counter = this.conflictsByMethod.get(method);
+		if (counter == null) {
+			this.conflictsByMethod.putIfAbsent(method, new AtomicLong());
+			counter = this.conflictsByMethod.get(method);
+		}
+		counter.incrementAndGet();
+	}
+
+	// Spring translates the exceptions of the repositories and of the commit,
+	// but a flush by hand may still throw the JPA or Hibernate one
+	private static boolean isConflict(final Throwable oops) {
+		boolean result;
+		Throwable cause;
+
+		result = false;
+		cause = oops;
+		while (!result && cause != null) {
+			result = cause instanceof OptimisticLockingFailureException || cause instanceof OptimisticLockException || cause instanceof StaleStateException;
+			cause = cause.getCause();
+		}
+
+		return result;
+	}
+
+	// Waits a random time of up to BASE_BACKOFF_MILLIS * 2^attempt, so the
+	// transactions that collided don't collide again
+	private static void backoff(final int attempt) {
+		long millis;
+
+		millis = ThreadLocalRandom.current().nextLong(OptimisticLockRetryAspect.BASE_BACKOFF_MILLIS << attempt) + 1;
+		try {
+			Thread.sleep(millis);
+		} catch (final InterruptedException oops) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+
+package services;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Drains the outbox in the background. Every event is sent in its own
+// transaction, at most BATCH_SIZE events are taken per round and a run
+// stops after MAX_ROUNDS, so a big backlog never holds more than one pool
+// connection nor starves the requests.
+@Component
+public class OutboxDispatcher {
+
+	private static final int	BATCH_SIZE	= 20;
+
+	private static final int	MAX_ROUNDS	= 10;
+
+	@Autowired
+	private OutboxEventService	outboxEventService;
+
+
+	public OutboxDispatcher() {
+		super();
+	}
+
+	@Scheduled(fixedDelay = 2000)
+	public void dispatch() {
+		List<Integer> eventIds;
+		int rounds;
+
+		rounds = 0;
+		do {
+			eventIds = this.outboxEventService.findDueEventIds(OutboxDispatcher.BATCH_SIZE);
+
+			for (final Integer eventId : eventIds)
+				try {
+					this.outboxEventService.dispatch(eventId);
+				} catch (final Throwable oops) {
+					this.outboxEventService.registerFailure(eventId, oops);
+				}
+
+			rounds++;
+		} while (eventIds.size() == OutboxDispatcher.BATCH_SIZE && rounds < OutboxDispatcher.MAX_ROUNDS);
+	}
+
+}
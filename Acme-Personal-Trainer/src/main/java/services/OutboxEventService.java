@@ -0,0 +1,185 @@
+
+package services;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.transaction.Transactional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import repositories.OutboxEventRepository;
+import domain.Application;
+import domain.Article;
+import domain.OutboxEvent;
+import domain.WorkingOut;
+
+@Service
+@Transactional
+public class OutboxEventService {
+
+	// Delivery attempts before an event is given up
+	private static final int		MAX_ATTEMPTS		= 8;
+
+	// Delay before the first retry, doubled on every failed attempt
+	private static final long		RETRY_DELAY_MILLIS	= 30000L;
+
+	// Managed repository ---------------------------------------------
+	@Autowired
+	private OutboxEventRepository	outboxEventRepository;
+
+	// Supporting services -------------------------------------------
+	@Autowired
+	private MessageService			messageService;
+
+	@Autowired
+	private UtilityService			utilityService;
+
+	@Autowired
+	private ApplicationService		applicationService;
+
+	@Autowired
+	private ArticleService			articleService;
+
+	@Autowired
+	private WorkingOutService		workingOutService;
+
+
+	//Constructor ----------------------------------------------------
+	public OutboxEventService() {
+		super();
+	}
+
+	// Simple CRUD methods ------------------------
+	public OutboxEvent findOne(final int outboxEventId) {
+		OutboxEvent result;
+
+		result = this.outboxEventRepository.findOne(outboxEventId);
+		Assert.notNull(result);
+
+		return result;
+	}
+
+	// Other business methods ---------------------
+
+	// The notifications are stored in the transaction of the business change
+	// and sent later by the OutboxDispatcher, so that the request that
+	// publishes something doesn't pay for the fan-out.
+	protected OutboxEvent notifyPublishedWorkingOut(final WorkingOut workingOut) {
+		OutboxEvent result;
+
+		result = this.enqueue("PUBLISHED_WORKING_OUT", workingOut.getId());
+
+		return result;
+	}
+
+	protected OutboxEvent notifyNewArticle(final Article article) {
+		OutboxEvent result;
+
+		result = this.enqueue("NEW_ARTICLE", article.getId());
+
+		return result;
+	}
+
+	protected OutboxEvent notifyApplicationStatusChanges(final Application application) {
+		OutboxEvent result;
+
+		result = this.enqueue("APPLICATION_STATUS", application.getId());
+
+		return result;
+	}
+
+	public List<Integer> findDueEventIds(final int max) {
+		List<Integer> results;
+		Date now;
+
+		now = this.utilityService.current_moment();
+		results = this.outboxEventRepository.findDueEventIds(now, new PageRequest(0, max));
+
+		return results;
+	}
+
+	public Integer numberOfPendingEvents() {
+		Integer result;
+
+		result = this.outboxEventRepository.numberOfPendingEvents();
+
+		return result;
+	}
+
+	// Sends the notification of an event. Two dispatchers racing for the same
+	// event conflict on its version, so only one of them commits; the loser
+	// is retried, reads the event again and stops, as it is already sent.
+	@RetryOnOptimisticLock
+	public void dispatch(final int outboxEventId) {
+		OutboxEvent event;
+		String kind;
+
+		event = this.findOne(outboxEventId);
+		Assert.isTrue(event.getStatus().equals("PENDING"));
+
+		kind = event.getKind();
+		if (kind.equals("PUBLISHED_WORKING_OUT"))
+			this.messageService.notification_publishedWorkingOut(this.workingOutService.findOne(event.getEntityId()));
+		else if (kind.equals("NEW_ARTICLE"))
+			this.messageService.notification_newArticle(this.articleService.findOne(event.getEntityId()));
+		else {
+			final Application application;
+
+			application = this.applicationService.findOne(event.getEntityId());
+			Assert.notNull(application);
+
+			this.messageService.notification_applicationStatusChanges(application);
+		}
+
+		event.setAttempts(event.getAttempts() + 1);
+		event.setStatus("SENT");
+		event.setLastError(null);
+	}
+
+	public void registerFailure(final int outboxEventId, final Throwable oops) {
+		OutboxEvent event;
+		long delay;
+		String error;
+
+		event = this.findOne(outboxEventId);
+		if (!event.getStatus().equals("PENDING"))
+			return;
+
+		event.setAttempts(event.getAttempts() + 1);
+
+		error = oops.getClass().getSimpleName() + ": " + oops.getMessage();
+		event.setLastError(error.length() > 255 ? error.substring(0, 255) : error);
+
+		if (event.getAttempts() >= OutboxEventService.MAX_ATTEMPTS)
+			event.setStatus("FAILED");
+		else {
+			delay = OutboxEventService.RETRY_DELAY_MILLIS << (event.getAttempts() - 1);
+			event.setNextAttemptMoment(new Date(this.utilityService.current_moment().getTime() + delay));
+		}
+	}
+
+	// Private methods --------------------------------------
+	private OutboxEvent enqueue(final String kind, final int entityId) {
+		OutboxEvent event, result;
+		Date now;
+
+		now = this.utilityService.current_moment();
+
+		event = new OutboxEvent();
+		event.setKind(kind);
+		event.setEntityId(entityId);
+		event.setStatus("PENDING");
+		event.setAttempts(0);
+		event.setCreatedMoment(now);
+		event.setNextAttemptMoment(now);
+
+		result = this.outboxEventRepository.save(event);
+
+		return result;
+	}
+
+}
@@ -0,0 +1,103 @@
+
+package services;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.roaringbitmap.RoaringBitmap;
+
+// Bounded LRU cache from a box id to the ids of its read messages, as they
+// were last committed. Each bitmap is stored with the version of the read
+// state it was decoded from, so that a reader that loaded an older state
+// can never replace a newer one; bitmaps of the same version are published
+// in commit order, so the last one wins. Cached bitmaps are shared between
+// threads and must not be modified; a box without a read state has version
+// -1.
+final class ReadStateCache {
+
+	private static final class Entry {
+
+		private final int			version;
+		private final RoaringBitmap	readMessages;
+
+
+		private Entry(final int version, final RoaringBitmap readMessages) {
+			this.version = version;
+			this.readMessages = readMessages;
+		}
+	}
+
+
+	private final Map<Integer, Entry>	entries;
+	private final AtomicLong			hits;
+	private final AtomicLong			misses;
+	private final AtomicLong			evictions;
+
+
+	ReadStateCache(final int capacity) {
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.evictions = new AtomicLong();
+		this.entries = Collections.synchronizedMap(new LinkedHashMap<Integer, Entry>(16, 0.75f, true) {
+
+			private static final long	serialVersionUID	= 1L;
+
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Integer, Entry> eldest) {
+				boolean result;
+
+				result = this.size() > capacity;
+				if (result)
+					ReadStateCache.this.evictions.incrementAndGet();
+
+				return result;
+			}
+		});
+	}
+
+	// Returns null on a miss
+	public RoaringBitmap get(final int boxId) {
+		Entry entry;
+
+		entry = this.entries.get(boxId);
+		if (entry == null)
+			this.misses.incrementAndGet();
+		else
+			this.hits.incrementAndGet();
+
+		return entry == null ? null : entry.readMessages;
+	}
+
+	public void put(final int boxId, final int version, final RoaringBitmap readMessages) {
+		synchronized (this.entries) {
+			final Entry current = this.entries.get(boxId);
+
+			if (current == null || current.version <= version)
+				this.entries.put(boxId, new Entry(version, readMessages));
+		}
+	}
+
+	public void evict(final int boxId) {
+		this.entries.remove(boxId);
+	}
+
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	public long getEvictions() {
+		return this.evictions.get();
+	}
+
+	public int size() {
+		return this.entries.size();
+	}
+
+}
@@ -0,0 +1,20 @@
+
+package services;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Marks the public service methods the OptimisticLockRetryAspect may run
+// again when their transaction loses an optimistic lock race. Only
+// idempotent methods that take the ids of the entities they change and
+// load them again inside may carry it: a retry must never see arguments
+// mutated or versions left stale by the failed attempt.
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface RetryOnOptimisticLock {
+
+}
@@ -0,0 +1,123 @@
+
+package services;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import security.LoginService;
+
+// Limits how often each actor may send messages and broadcasts, with a
+// token bucket per actor and kind of message. It is checked before any
+// transaction is opened, so a rejected request doesn't take a connection
+// from the pool. Actors are keyed by their user account, which is read from
+// the security context. The budgets are read from application.properties
+// and the buckets of the least recently active actors are forgotten,
+// that is, refilled, once there are more than BUCKET_CACHE_SIZE.
+@Component
+public class SendRateLimiter {
+
+	private static final int					BUCKET_CACHE_SIZE			= 10000;
+
+	// 10 messages in a row, then one every 6 seconds
+	@Value("${acme.rate.message.capacity:10}")
+	private int									messageCapacity;
+
+	@Value("${acme.rate.message.refillMillis:6000}")
+	private long								messageRefillMillis;
+
+	// 2 broadcasts in a row, then one every 5 minutes
+	@Value("${acme.rate.broadcast.capacity:2}")
+	private int									broadcastCapacity;
+
+	@Value("${acme.rate.broadcast.refillMillis:300000}")
+	private long								broadcastRefillMillis;
+
+	private final Map<Integer, TokenBucket>		messageBuckets;
+	private final Map<Integer, TokenBucket>		broadcastBuckets;
+	private final AtomicLong					messageRejections;
+	private final AtomicLong					broadcastRejections;
+
+
+	public SendRateLimiter() {
+		super();
+
+		this.messageBuckets = SendRateLimiter.newBucketCache();
+		this.broadcastBuckets = SendRateLimiter.newBucketCache();
+		this.messageRejections = new AtomicLong();
+		this.broadcastRejections = new AtomicLong();
+	}
+
+	// Takes a token of the principal to send a message. It returns false,
+	// and counts a rejection, if the principal has run out of them.
+	public boolean tryAcquireMessage() {
+		boolean result;
+
+		result = SendRateLimiter.tryConsume(this.messageBuckets, this.messageCapacity, this.messageRefillMillis);
+		if (!result)
+			this.messageRejections.incrementAndGet();
+
+		return result;
+	}
+
+	public boolean tryAcquireBroadcast() {
+		boolean result;
+
+		result = SendRateLimiter.tryConsume(this.broadcastBuckets, this.broadcastCapacity, this.broadcastRefillMillis);
+		if (!result)
+			this.broadcastRejections.incrementAndGet();
+
+		return result;
+	}
+
+	// Rejection counters -------------------------
+	public long getMessageRejections() {
+		return this.messageRejections.get();
+	}
+
+	public long getBroadcastRejections() {
+		return this.broadcastRejections.get();
+	}
+
+	// Private methods ---------------------------
+	private static boolean tryConsume(final Map<Integer, TokenBucket> buckets, final int capacity, final long refillMillis) {
+		TokenBucket bucket;
+		final int userAccountId;
+		final long now;
+
+		userAccountId = LoginService.getPrincipal().getId();
+		now = System.currentTimeMillis();
+
+		synchronized (buckets) {
+			bucket = buckets.get(userAccountId);
+			if (bucket == null) {
+				bucket = new TokenBucket(capacity, refillMillis, now);
+				buckets.put(userAccountId, bucket);
+			}
+		}
+
+		return bucket.tryConsume(now);
+	}
+
+	private static Map<Integer, TokenBucket> newBucketCache() {
+		Map<Integer, TokenBucket> result;
+
+		result = Collections.synchronizedMap(new LinkedHashMap<Integer, TokenBucket>(16, 0.75f, true) {
+
+			private static final long	serialVersionUID	= 1L;
+
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Integer, TokenBucket> eldest) {
+				return this.size() > SendRateLimiter.BUCKET_CACHE_SIZE;
+			}
+		});
+
+		return result;
+	}
+
+}
@@ -0,0 +1,98 @@
+
+package services;
+
+import java.util.List;
+
+import javax.transaction.Transactional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import repositories.SpamReclassificationRepository;
+import domain.SpamReclassification;
+
+@Service
+@Transactional
+public class SpamReclassificationService {
+
+	// Managed repository --------------------------
+	@Autowired
+	private SpamReclassificationRepository	spamReclassificationRepository;
+
+	// Other supporting services -------------------
+	@Autowired
+	private UtilityService					utilityService;
+
+
+	// Constructor --------------------------------
+	public SpamReclassificationService() {
+		super();
+	}
+
+	// Simple CRUD methods ------------------------
+	public SpamReclassification findOne(final int spamReclassificationId) {
+		SpamReclassification result;
+
+		result = this.spamReclassificationRepository.findOne(spamReclassificationId);
+		Assert.notNull(result);
+
+		return result;
+	}
+
+	// Other business methods ---------------------
+
+	// The latest re-scan that has not finished yet, or null
+	public SpamReclassification findPending() {
+		SpamReclassification result;
+		List<SpamReclassification> pending;
+
+		pending = this.spamReclassificationRepository.findPending(new PageRequest(0, 1));
+		result = pending.isEmpty() ? null : pending.get(0);
+
+		return result;
+	}
+
+	// Records the progress of a re-scan. It returns false if the re-scan has
+	// been superseded by a newer one in the meantime.
+	public boolean advance(final int spamReclassificationId, final int lastMessageId, final int reclassified, final boolean finished) {
+		SpamReclassification spamReclassification;
+		boolean result;
+
+		spamReclassification = this.findOne(spamReclassificationId);
+		result = !spamReclassification.getIsFinished();
+
+		if (result) {
+			Assert.isTrue(lastMessageId >= spamReclassification.getLastMessageId());
+
+			spamReclassification.setLastMessageId(lastMessageId);
+			spamReclassification.setReclassified(spamReclassification.getReclassified() + reclassified);
+			spamReclassification.setIsFinished(finished);
+			this.spamReclassificationRepository.save(spamReclassification);
+		}
+
+		return result;
+	}
+
+	// Protected methods --------------------------
+
+	// Requests a re-scan of every message against the given spam words. Any
+	// re-scan still running is superseded, since it uses an older list.
+	protected SpamReclassification request(final String spamWords) {
+		Assert.notNull(spamWords);
+
+		SpamReclassification result;
+
+		this.spamReclassificationRepository.finishPending();
+
+		result = new SpamReclassification();
+		result.setSpamWords(spamWords);
+		result.setRequestMoment(this.utilityService.current_moment());
+
+		result = this.spamReclassificationRepository.save(result);
+
+		return result;
+	}
+
+}
@@ -0,0 +1,144 @@
+
+package services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import domain.SpamReclassification;
+
+// Re-scans the existing messages in the background after the spam words
+// change. Messages are taken in id order in waves of PARALLELISM chunks;
+// the chunks of a wave are reclassified in parallel, each one in its own
+// transaction, so no box is locked for longer than a chunk. The progress is
+// saved after every wave, and a run stops after MAX_WAVES or as soon as a
+// newer re-scan supersedes the current one. A failed wave is simply run
+// again, since reclassifying a message twice changes nothing.
+//
+// The runs are handed off to a coordinator thread of their own, so they
+// never hold the scheduler, which the short periodic tasks share, and a
+// run is skipped while the previous one is still going.
+@Component
+public class SpamReclassifier implements DisposableBean {
+
+	private static final Logger			LOGGER		= LogManager.getLogger(SpamReclassifier.class);
+
+	private static final int			CHUNK_SIZE	= 200;
+
+	// Kept below the size of the connection pool, so the requests can
+	// still get a connection while a re-scan runs
+	private static final int			PARALLELISM	= 2;
+
+	private static final int			MAX_WAVES	= 50;
+
+	@Autowired
+	private SpamReclassificationService	spamReclassificationService;
+
+	@Autowired
+	private MessageService				messageService;
+
+	private final ExecutorService		coordinator;
+
+	private final ExecutorService		executor;
+
+	private final AtomicBoolean			inProgress;
+
+
+	public SpamReclassifier() {
+		super();
+
+		this.coordinator = Executors.newSingleThreadExecutor();
+		this.executor = Executors.newFixedThreadPool(SpamReclassifier.PARALLELISM);
+		this.inProgress = new AtomicBoolean();
+	}
+
+	@Override
+	public void destroy() {
+		this.coordinator.shutdownNow();
+		this.executor.shutdownNow();
+	}
+
+	@Scheduled(fixedDelay = 10000)
+	public void reclassify() {
+		if (this.inProgress.compareAndSet(false, true))
+			this.coordinator.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						SpamReclassifier.this.reclassifyPending();
+					} catch (final Throwable oops) {
+						SpamReclassifier.LOGGER.error("Cannot reclassify the messages", oops);
+					} finally {
+						SpamReclassifier.this.inProgress.set(false);
+					}
+				}
+			});
+	}
+
+	// Private methods ---------------------------
+	private void reclassifyPending() throws ExecutionException {
+		SpamReclassification spamReclassification;
+
+		spamReclassification = this.spamReclassificationService.findPending();
+		if (spamReclassification != null)
+			try {
+				this.reclassify(spamReclassification);
+			} catch (final InterruptedException oops) {
+				Thread.currentThread().interrupt();
+			}
+	}
+
+	private void reclassify(final SpamReclassification spamReclassification) throws InterruptedException, ExecutionException {
+		final String spamWords;
+		List<Integer> messageIds;
+		List<Callable<Integer>> chunks;
+		int lastMessageId, reclassified, waves;
+		boolean finished, running;
+
+		spamWords = spamReclassification.getSpamWords();
+		lastMessageId = spamReclassification.getLastMessageId();
+		waves = 0;
+
+		do {
+			messageIds = this.messageService.findMessageIdsAfter(lastMessageId, SpamReclassifier.CHUNK_SIZE * SpamReclassifier.PARALLELISM);
+
+			chunks = new ArrayList<Callable<Integer>>();
+			for (int i = 0; i < messageIds.size(); i += SpamReclassifier.CHUNK_SIZE) {
+				final List<Integer> chunk = new ArrayList<Integer>(messageIds.subList(i, Math.min(i + SpamReclassifier.CHUNK_SIZE, messageIds.size())));
+
+				chunks.add(new Callable<Integer>() {
+
+					@Override
+					public Integer call() {
+						return SpamReclassifier.this.messageService.reclassifyMessages(chunk, spamWords);
+					}
+				});
+			}
+
+			reclassified = 0;
+			for (final Future<Integer> f : this.executor.invokeAll(chunks))
+				reclassified += f.get();
+
+			if (!messageIds.isEmpty())
+				lastMessageId = messageIds.get(messageIds.size() - 1);
+			finished = messageIds.size() < SpamReclassifier.CHUNK_SIZE * SpamReclassifier.PARALLELISM;
+
+			running = this.spamReclassificationService.advance(spamReclassification.getId(), lastMessageId, reclassified, finished) && !finished;
+			waves++;
+		} while (running && waves < SpamReclassifier.MAX_WAVES);
+	}
+
+}
@@ -0,0 +1,118 @@
+
+package services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+// Aho-Corasick automaton over the spam words. It is built once from the
+// customisation and is immutable afterwards, so it can be shared between
+// threads. Matching is case insensitive and takes a single pass over the
+// text, whatever the number of spam words.
+final class SpamWordMatcher {
+
+	private final List<Map<Character, Integer>>	transitions;
+	private final List<Integer>					failures;
+	private final List<Boolean>					terminals;
+
+
+	SpamWordMatcher(final Collection<String> words) {
+		this.transitions = new ArrayList<Map<Character, Integer>>();
+		this.failures = new ArrayList<Integer>();
+		this.terminals = new ArrayList<Boolean>();
+
+		this.newState();
+		for (final String word : words)
+			if (word != null && !word.trim().isEmpty())
+				this.addWord(word.trim());
+		this.buildFailures();
+	}
+
+	public boolean matches(final String text) {
+		int state;
+		Integer next;
+
+		if (text == null)
+			return false;
+
+		state = 0;
+		for (int i = 0; i < text.length(); i++) {
+			final char c = Character.toLowerCase(text.charAt(i));
+
+			next = this.transitions.get(state).get(c);
+			while (next == null && state != 0) {
+				state = this.failures.get(state);
+				next = this.transitions.get(state).get(c);
+			}
+			state = next == null ? 0 : next;
+
+			if (this.terminals.get(state))
+				return true;
+		}
+
+		return false;
+	}
+
+	// Private methods ---------------------------
+
+	private int newState() {
+		this.transitions.add(new HashMap<Character, Integer>());
+		this.failures.add(0);
+		this.terminals.add(false);
+
+		return this.transitions.size() - 1;
+	}
+
+	private void addWord(final String word) {
+		int state;
+		Integer next;
+
+		state = 0;
+		for (int i = 0; i < word.length(); i++) {
+			final char c = Character.toLowerCase(word.charAt(i));
+
+			next = this.transitions.get(state).get(c);
+			if (next == null) {
+				next = this.newState();
+				this.transitions.get(state).put(c, next);
+			}
+			state = next;
+		}
+		this.terminals.set(state, true);
+	}
+
+	// Breadth-first computation of the failure links. A state is terminal
+	// if any of its proper suffixes is a spam word.
+	private void buildFailures() {
+		Queue<Integer> queue;
+		int state, failure;
+		Integer next;
+
+		queue = new LinkedList<Integer>();
+		queue.addAll(this.transitions.get(0).values());
+
+		while (!queue.isEmpty()) {
+			state = queue.remove();
+
+			for (final Map.Entry<Character, Integer> e : this.transitions.get(state).entrySet()) {
+				failure = this.failures.get(state);
+				next = this.transitions.get(failure).get(e.getKey());
+				while (next == null && failure != 0) {
+					failure = this.failures.get(failure);
+					next = this.transitions.get(failure).get(e.getKey());
+				}
+
+				this.failures.set(e.getValue(), next == null || next.equals(e.getValue()) ? 0 : next);
+				if (this.terminals.get(this.failures.get(e.getValue())))
+					this.terminals.set(e.getValue(), true);
+
+				queue.add(e.getValue());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,82 @@
+
+package services;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded LRU cache from an actor id to the ids of his or her system boxes,
+// keyed by box name. System boxes are created with the actor and are never
+// renamed, moved or deleted on their own, so an entry only has to be
+// evicted when the actor is removed. Evictions count both the entries
+// dropped to make room and the ones evicted on purpose.
+final class SystemBoxCache {
+
+	private final Map<Integer, Map<String, Integer>>	entries;
+	private final AtomicLong							hits;
+	private final AtomicLong							misses;
+	private final AtomicLong							evictions;
+
+
+	SystemBoxCache(final int capacity) {
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.evictions = new AtomicLong();
+		this.entries = Collections.synchronizedMap(new LinkedHashMap<Integer, Map<String, Integer>>(16, 0.75f, true) {
+
+			private static final long	serialVersionUID	= 1L;
+
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Integer, Map<String, Integer>> eldest) {
+				boolean result;
+
+				result = this.size() > capacity;
+				if (result)
+					SystemBoxCache.this.evictions.incrementAndGet();
+
+				return result;
+			}
+		});
+	}
+
+	// Returns null on a miss
+	public Map<String, Integer> get(final int actorId) {
+		Map<String, Integer> result;
+
+		result = this.entries.get(actorId);
+		if (result == null)
+			this.misses.incrementAndGet();
+		else
+			this.hits.incrementAndGet();
+
+		return result;
+	}
+
+	public void put(final int actorId, final Map<String, Integer> boxIds) {
+		this.entries.put(actorId, Collections.unmodifiableMap(new LinkedHashMap<String, Integer>(boxIds)));
+	}
+
+	public void evict(final int actorId) {
+		if (this.entries.remove(actorId) != null)
+			this.evictions.incrementAndGet();
+	}
+
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	public long getEvictions() {
+		return this.evictions.get();
+	}
+
+	public int size() {
+		return this.entries.size();
+	}
+
+}
@@ -0,0 +1,107 @@
+
+package services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+// Hands out the six characters that follow the date in the tickers of the
+// working-outs. The suffixes of a day are the values of a counter, which
+// each node reserves from the database in blocks of BLOCK_SIZE, mapped
+// through a bijection of [0, 36^6) and written in base 36. So they look
+// random but two of them can't be equal, and no query is needed to check it.
+// Values reserved and not used, e.g. when a node stops, are simply lost.
+@Component
+public class TickerAllocator {
+
+	private static final String		ALPHABET			= "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+	private static final int		LENGTH				= 6;
+
+	// 36^6, the number of suffixes of a day
+	private static final long		RANGE				= 2176782336L;
+
+	private static final int		BLOCK_SIZE			= 100;
+
+	// Multipliers coprime with 36, so that the affine maps are bijections
+	private static final long		FIRST_MULTIPLIER	= 1299709L;
+	private static final long		FIRST_OFFSET		= 918273645L;
+	private static final long		SECOND_MULTIPLIER	= 15485863L;
+	private static final long		SECOND_OFFSET		= 1234567891L;
+
+	@Autowired
+	private TickerSequenceService	tickerSequenceService;
+
+	// Block of the current date prefix: [next, end)
+	private String					datePrefix;
+	private long					next;
+	private long					end;
+
+
+	public TickerAllocator() {
+		super();
+	}
+
+	public synchronized String allocate(final String datePrefix) {
+		String result;
+
+		if (!datePrefix.equals(this.datePrefix) || this.next == this.end) {
+			this.next = this.reserve(datePrefix);
+			this.end = this.next + TickerAllocator.BLOCK_SIZE;
+			this.datePrefix = datePrefix;
+		}
+
+		result = TickerAllocator.scramble(this.next);
+		this.next++;
+
+		return result;
+	}
+
+	// Private methods ---------------------------
+
+	// The first reservation of a day creates its counter, which may fail if
+	// another node creates it at the same time: either on the unique
+	// constraint or, since both lock the same gap of the index while looking
+	// for the row, as a deadlock or a lock timeout. The second one finds it.
+	private long reserve(final String datePrefix) {
+		long result;
+
+		try {
+			result = this.tickerSequenceService.reserve(datePrefix, TickerAllocator.BLOCK_SIZE, TickerAllocator.RANGE);
+		} catch (final DataIntegrityViolationException oops) {
+			result = this.tickerSequenceService.reserve(datePrefix, TickerAllocator.BLOCK_SIZE, TickerAllocator.RANGE);
+		} catch (final ConcurrencyFailureException oops) {
+			result = this.tickerSequenceService.reserve(datePrefix, TickerAllocator.BLOCK_SIZE, TickerAllocator.RANGE);
+		}
+
+		return result;
+	}
+
+	// Affine map, reversal of the base-36 digits and affine map again. Every
+	// step is a bijection of [0, 36^6); the reversal spreads consecutive
+	// values over the whole range.
+	private static String scramble(final long value) {
+		long x, reversed;
+		char[] digits;
+
+		x = (TickerAllocator.FIRST_MULTIPLIER * value + TickerAllocator.FIRST_OFFSET) % TickerAllocator.RANGE;
+
+		reversed = 0;
+		for (int i = 0; i < TickerAllocator.LENGTH; i++) {
+			reversed = reversed * TickerAllocator.ALPHABET.length() + x % TickerAllocator.ALPHABET.length();
+			x /= TickerAllocator.ALPHABET.length();
+		}
+
+		x = (TickerAllocator.SECOND_MULTIPLIER * reversed + TickerAllocator.SECOND_OFFSET) % TickerAllocator.RANGE;
+
+		digits = new char[TickerAllocator.LENGTH];
+		for (int i = TickerAllocator.LENGTH - 1; i >= 0; i--) {
+			digits[i] = TickerAllocator.ALPHABET.charAt((int) (x % TickerAllocator.ALPHABET.length()));
+			x /= TickerAllocator.ALPHABET.length();
+		}
+
+		return new String(digits);
+	}
+
+}
@@ -0,0 +1,60 @@
+
+package services;
+
+import javax.transaction.Transactional;
+import javax.transaction.Transactional.TxType;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import repositories.TickerSequenceRepository;
+import domain.TickerSequence;
+
+@Service
+@Transactional
+public class TickerSequenceService {
+
+	// Managed repository --------------------------
+	@Autowired
+	private TickerSequenceRepository	tickerSequenceRepository;
+
+
+	// Constructor --------------------------------
+	public TickerSequenceService() {
+		super();
+	}
+
+	// Other business methods ---------------------
+
+	// Reserves the next size values of the date prefix and returns the first
+	// one. It runs in a transaction of its own, so the block is committed,
+	// and the row unlocked, before the caller goes on; a block whose caller
+	// rolls back is just left unused. If two nodes create the row of a day
+	// at once, the loser fails on the unique constraint, or on a deadlock
+	// over the gap both of them locked, and may try again.
+	@Transactional(TxType.REQUIRES_NEW)
+	public long reserve(final String datePrefix, final int size, final long limit) {
+		Assert.notNull(datePrefix);
+		Assert.isTrue(size > 0);
+
+		TickerSequence tickerSequence;
+		long result;
+
+		tickerSequence = this.tickerSequenceRepository.findByDatePrefixForUpdate(datePrefix);
+		if (tickerSequence == null) {
+			tickerSequence = new TickerSequence();
+			tickerSequence.setDatePrefix(datePrefix);
+			tickerSequence.setNextValue(0);
+		}
+
+		result = tickerSequence.getNextValue();
+		Assert.isTrue(result + size <= limit);
+
+		tickerSequence.setNextValue(result + size);
+		this.tickerSequenceRepository.saveAndFlush(tickerSequence);
+
+		return result;
+	}
+
+}
@@ -0,0 +1,36 @@
+
+package services;
+
+// Token bucket that holds up to 'capacity' tokens and earns one token every
+// 'refillMillis' milliseconds. It is refilled lazily when it is used.
+final class TokenBucket {
+
+	private final int	capacity;
+	private final long	refillMillis;
+	private double		tokens;
+	private long		lastRefill;
+
+
+	TokenBucket(final int capacity, final long refillMillis, final long now) {
+		this.capacity = capacity;
+		this.refillMillis = refillMillis;
+		this.tokens = capacity;
+		this.lastRefill = now;
+	}
+
+	public synchronized boolean tryConsume(final long now) {
+		boolean result;
+
+		if (now > this.lastRefill) {
+			this.tokens = Math.min(this.capacity, this.tokens + (double) (now - this.lastRefill) / this.refillMillis);
+			this.lastRefill = now;
+		}
+
+		result = this.tokens >= 1;
+		if (result)
+			this.tokens--;
+
+		return result;
+	}
+
+}
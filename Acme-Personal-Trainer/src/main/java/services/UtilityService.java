@@ -6,7 +6,6 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.Random;
 
 import javax.transaction.Transactional;
 
@@ -40,7 +39,7 @@ public class UtilityService {
 	private UserAccountService		userAccountService;
 
 	@Autowired
-	private WorkingOutService		workingOutService;
+	private TickerAllocator			tickerAllocator;
 
 
 	// Constructors ------------------------
@@ -149,38 +148,20 @@ public class UtilityService {
 		return result;
 	}
 
+	// The date and a suffix that is unique for the day, see TickerAllocator
 	public String generateValidTicker() {
 		String numbers, result;
 		Integer day, month, year;
 		LocalDate currentDate;
-		Integer counter;
 
 		currentDate = LocalDate.now();
 		year = currentDate.getYear() % 100;
 		month = currentDate.getMonthOfYear();
 		day = currentDate.getDayOfMonth();
 
-		numbers = String.format("%02d", year) + "" + String.format("%02d", month) + "" + String.format("%02d", day) + "-";
-		counter = 0;
+		numbers = String.format("%02d", year) + "" + String.format("%02d", month) + "" + String.format("%02d", day);
 
-		do {
-			result = numbers + this.createRandomLetters();
-			counter++;
-		} while (!(this.workingOutService.existTicker(result) == null) && counter < 650000);
-
-		return result;
-	}
-
-	private String createRandomLetters() {
-		String result, characters;
-		Random randomNumber;
-
-		result = "";
-		randomNumber = new Random();
-		characters = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
-
-		for (int i = 0; i <= 5; i++)
-			result += characters.charAt(randomNumber.nextInt(characters.length()));
+		result = numbers + "-" + this.tickerAllocator.allocate(numbers);
 
 		return result;
 	}
@@ -0,0 +1,456 @@
+
+package services;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// In-memory index of the published working-outs that the finder searches.
+// The working-outs are numbered by start moment, so a range of moments is a
+// range of positions; prices are kept sorted, with the position of each one,
+// and categories and words map to bitsets of positions. A search intersects
+// one bitset per criterion and reads the positions left in order.
+//
+// The arrays are read without locking through an immutable snapshot. A
+// change doesn't rebuild them: the working-outs published since are kept
+// aside, sorted by start moment, and the positions of the ones deleted or
+// already started are masked with a bitset, so a search reads both and
+// merges them. The arrays are only rebuilt once either of them grows past a
+// bound. Working-outs can't change once published, so an update is never
+// undone by an older copy, e.g. from the initial load; a deleted one is
+// remembered so that the load doesn't bring it back.
+final class WorkingOutIndex {
+
+	// Working-outs kept aside before the arrays are rebuilt
+	private static final int				MAX_ADDED			= 64;
+
+	private static final Comparator<Document>	BY_START_MOMENT	= new Comparator<Document>() {
+
+													@Override
+													public int compare(final Document a, final Document b) {
+														int result;
+
+														result = a.startMoment < b.startMoment ? -1 : a.startMoment > b.startMoment ? 1 : 0;
+														if (result == 0)
+															result = a.id < b.id ? -1 : a.id > b.id ? 1 : 0;
+
+														return result;
+													}
+												};
+
+	private final Map<Integer, Document>	documents;
+	private final Set<Integer>				removed;
+	private volatile Snapshot				snapshot;
+
+
+	WorkingOutIndex() {
+		this.documents = new HashMap<Integer, Document>();
+		this.removed = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+		this.snapshot = Snapshot.of(Columns.build(Collections.<Document> emptyList()));
+	}
+
+	// Adds the working-outs that are not indexed yet
+	public synchronized void load(final Collection<Document> documents) {
+		for (final Document d : documents)
+			if (!this.removed.contains(d.id) && !this.documents.containsKey(d.id))
+				this.documents.put(d.id, d);
+
+		this.snapshot = Snapshot.of(Columns.build(this.documents.values()));
+	}
+
+	public synchronized void put(final Document document) {
+		Snapshot next;
+
+		if (!this.removed.contains(document.id)) {
+			next = this.snapshot;
+			if (this.documents.put(document.id, document) != null)
+				next = next.without(Collections.singleton(document.id));
+
+			this.publish(next.with(document));
+		}
+	}
+
+	public synchronized void remove(final Collection<Integer> workingOutIds) {
+		this.removed.addAll(workingOutIds);
+		if (this.documents.keySet().removeAll(workingOutIds))
+			this.publish(this.snapshot.without(workingOutIds));
+	}
+
+	// Drops the working-outs that start before the moment, since no search
+	// can find them any more
+	public void prune(final long moment) {
+		if (this.snapshot.earliest < moment)
+			this.pruneBefore(moment);
+	}
+
+	// Ids of up to size working-outs that start within [from, to) and meet
+	// the rest of the criteria, by start moment. A null criterion is not
+	// applied; every word of the keyword must start a word of the ticker or
+	// the description of the working-out.
+	public List<Integer> search(final String keyword, final String category, final Double minPrice, final Double maxPrice, final long from, final long to, final int size) {
+		List<Integer> results;
+		List<Document> added;
+		Snapshot current;
+		Set<String> words;
+		BitSet matches;
+		double min, max;
+		int i, j;
+
+		current = this.snapshot;
+		min = minPrice == null ? Double.NEGATIVE_INFINITY : minPrice;
+		max = maxPrice == null ? Double.POSITIVE_INFINITY : maxPrice;
+		words = keyword == null ? Collections.<String> emptySet() : WorkingOutIndex.wordsOf(keyword);
+
+		matches = current.columns.byStartMoment(from, to);
+		matches.andNot(current.dropped);
+		if (category != null && !category.trim().isEmpty())
+			matches.and(current.columns.byCategory(category));
+		if (minPrice != null || maxPrice != null)
+			matches.and(current.columns.byPrice(min, max));
+		for (final String w : words)
+			if (!matches.isEmpty())
+				matches.and(current.columns.byWordPrefix(w));
+
+		added = new ArrayList<Document>();
+		for (final Document d : current.added)
+			if (d.startMoment >= from && d.startMoment < to && d.matches(category, min, max, words))
+				added.add(d);
+
+		// Both are sorted by start moment
+		results = new ArrayList<Integer>();
+		i = matches.nextSetBit(0);
+		j = 0;
+		while (results.size() < size && (i >= 0 || j < added.size()))
+			if (j == added.size() || i >= 0 && current.columns.precedes(i, added.get(j))) {
+				results.add(current.columns.ids[i]);
+				i = matches.nextSetBit(i + 1);
+			} else {
+				results.add(added.get(j).id);
+				j++;
+			}
+
+		return results;
+	}
+
+	public int size() {
+		return this.snapshot.size;
+	}
+
+	// Private methods ---------------------------
+
+	private synchronized void pruneBefore(final long moment) {
+		Collection<Integer> started;
+
+		started = new ArrayList<Integer>();
+		for (final Document d : this.documents.values())
+			if (d.startMoment < moment)
+				started.add(d.id);
+
+		if (!started.isEmpty()) {
+			this.documents.keySet().removeAll(started);
+			this.publish(this.snapshot.without(started));
+		}
+	}
+
+	private void publish(final Snapshot next) {
+		if (next.isWorn())
+			this.snapshot = Snapshot.of(Columns.build(this.documents.values()));
+		else
+			this.snapshot = next;
+	}
+
+	// Lower case words without accents
+	static Set<String> wordsOf(final String text) {
+		Set<String> results;
+
+		results = new LinkedHashSet<String>();
+		for (final String w : WorkingOutIndex.normalize(text).split("[^\\p{L}\\p{N}]+"))
+			if (!w.isEmpty())
+				results.add(w);
+
+		return results;
+	}
+
+	static String normalize(final String text) {
+		return Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "").toLowerCase().trim();
+	}
+
+
+	// What the index keeps of a working-out. The category names hold every
+	// translation of each category.
+	static final class Document {
+
+		private final int			id;
+		private final long			startMoment;
+		private final double		price;
+		private final Set<String>	categories;
+		private final Set<String>	words;
+
+
+		Document(final int id, final long startMoment, final double price, final Collection<String> categories, final String ticker, final String description) {
+			this.id = id;
+			this.startMoment = startMoment;
+			this.price = price;
+
+			this.categories = new LinkedHashSet<String>();
+			for (final String c : categories)
+				this.categories.add(WorkingOutIndex.normalize(c));
+
+			this.words = WorkingOutIndex.wordsOf(ticker + " " + description);
+			this.words.add(WorkingOutIndex.normalize(ticker));
+		}
+
+		// Criteria of a search, once normalised, checked one by one
+		private boolean matches(final String category, final double min, final double max, final Set<String> prefixes) {
+			boolean result;
+
+			result = this.price >= min && this.price <= max;
+			if (result && category != null && !category.trim().isEmpty())
+				result = this.categories.contains(WorkingOutIndex.normalize(category));
+			for (final String p : prefixes)
+				if (result) {
+					result = false;
+					for (final String w : this.words)
+						if (!result)
+							result = w.startsWith(p);
+				}
+
+			return result;
+		}
+	}
+
+	// What a search reads: the arrays, the positions of them that no longer
+	// count and the working-outs published since they were built
+	private static final class Snapshot {
+
+		private final Columns			columns;
+		private final BitSet			dropped;
+		private final List<Document>	added;
+
+		// Number of working-outs and earliest start moment among them
+		private final int				size;
+		private final long				earliest;
+
+
+		private Snapshot(final Columns columns, final BitSet dropped, final List<Document> added) {
+			int first;
+
+			this.columns = columns;
+			this.dropped = dropped;
+			this.added = added;
+
+			this.size = columns.ids.length - dropped.cardinality() + added.size();
+
+			first = dropped.nextClearBit(0);
+			this.earliest = Math.min(first < columns.ids.length ? columns.startMoments[first] : Long.MAX_VALUE, added.isEmpty() ? Long.MAX_VALUE : added.get(0).startMoment);
+		}
+
+		private static Snapshot of(final Columns columns) {
+			return new Snapshot(columns, new BitSet(), Collections.<Document> emptyList());
+		}
+
+		private Snapshot with(final Document document) {
+			List<Document> added;
+			int index;
+
+			added = new ArrayList<Document>(this.added);
+			index = Collections.binarySearch(added, document, WorkingOutIndex.BY_START_MOMENT);
+			added.add(-index - 1, document);
+
+			return new Snapshot(this.columns, this.dropped, added);
+		}
+
+		private Snapshot without(final Collection<Integer> workingOutIds) {
+			List<Document> added;
+			BitSet dropped;
+			Integer position;
+
+			dropped = (BitSet) this.dropped.clone();
+			for (final Integer id : workingOutIds) {
+				position = this.columns.positions.get(id);
+				if (position != null)
+					dropped.set(position);
+			}
+
+			added = new ArrayList<Document>(this.added.size());
+			for (final Document d : this.added)
+				if (!workingOutIds.contains(d.id))
+					added.add(d);
+
+			return new Snapshot(this.columns, dropped, added);
+		}
+
+		// Whether the arrays had better be rebuilt from the working-outs left
+		private boolean isWorn() {
+			return this.added.size() > WorkingOutIndex.MAX_ADDED || this.dropped.cardinality() > this.size;
+		}
+	}
+
+	private static final class Columns {
+
+		// By position, that is, by start moment
+		private final int[]							ids;
+		private final long[]						startMoments;
+
+		// Sorted prices and the position of each one
+		private final double[]						prices;
+		private final int[]							pricePositions;
+
+		private final Map<String, BitSet>			categories;
+		private final NavigableMap<String, BitSet>	words;
+
+		// Position of each id
+		private final Map<Integer, Integer>			positions;
+
+
+		private Columns(final int size) {
+			this.ids = new int[size];
+			this.startMoments = new long[size];
+			this.prices = new double[size];
+			this.pricePositions = new int[size];
+			this.categories = new HashMap<String, BitSet>();
+			this.words = new TreeMap<String, BitSet>();
+			this.positions = new HashMap<Integer, Integer>();
+		}
+
+		private static Columns build(final Collection<Document> documents) {
+			final Columns result;
+			final List<Document> sorted;
+			Integer[] byPrice;
+
+			sorted = new ArrayList<Document>(documents);
+			Collections.sort(sorted, WorkingOutIndex.BY_START_MOMENT);
+
+			result = new Columns(sorted.size());
+			byPrice = new Integer[sorted.size()];
+			for (int i = 0; i < sorted.size(); i++) {
+				result.ids[i] = sorted.get(i).id;
+				result.startMoments[i] = sorted.get(i).startMoment;
+				result.positions.put(sorted.get(i).id, i);
+				byPrice[i] = i;
+
+				for (final String c : sorted.get(i).categories)
+					Columns.set(result.categories, c, i);
+				for (final String w : sorted.get(i).words)
+					Columns.set(result.words, w, i);
+			}
+
+			Arrays.sort(byPrice, new Comparator<Integer>() {
+
+				@Override
+				public int compare(final Integer a, final Integer b) {
+					return Double.compare(sorted.get(a).price, sorted.get(b).price);
+				}
+			});
+			for (int i = 0; i < byPrice.length; i++) {
+				result.pricePositions[i] = byPrice[i];
+				result.prices[i] = sorted.get(byPrice[i]).price;
+			}
+
+			return result;
+		}
+
+		// Whether the working-out at the position goes before the document
+		private boolean precedes(final int position, final Document document) {
+			return this.startMoments[position] < document.startMoment || this.startMoments[position] == document.startMoment && this.ids[position] < document.id;
+		}
+
+		private BitSet byStartMoment(final long from, final long to) {
+			BitSet result;
+			int lower, upper;
+
+			result = new BitSet(this.ids.length);
+			lower = Columns.firstNotBefore(this.startMoments, from);
+			upper = Columns.firstNotBefore(this.startMoments, to);
+			if (lower < upper)
+				result.set(lower, upper);
+
+			return result;
+		}
+
+		private BitSet byPrice(final double min, final double max) {
+			BitSet result;
+
+			result = new BitSet(this.ids.length);
+			for (int i = Columns.firstNotBelow(this.prices, min); i < this.prices.length && this.prices[i] <= max; i++)
+				result.set(this.pricePositions[i]);
+
+			return result;
+		}
+
+		private BitSet byCategory(final String category) {
+			BitSet result, positions;
+
+			positions = this.categories.get(WorkingOutIndex.normalize(category));
+			result = positions == null ? new BitSet() : (BitSet) positions.clone();
+
+			return result;
+		}
+
+		private BitSet byWordPrefix(final String prefix) {
+			BitSet result;
+
+			result = new BitSet(this.ids.length);
+			for (final BitSet positions : this.words.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values())
+				result.or(positions);
+
+			return result;
+		}
+
+		private static void set(final Map<String, BitSet> bitsets, final String key, final int position) {
+			BitSet bitset;
+
+			bitset = bitsets.get(key);
+			if (bitset == null) {
+				bitset = new BitSet();
+				bitsets.put(key, bitset);
+			}
+			bitset.set(position);
+		}
+
+		private static int firstNotBefore(final long[] sorted, final long value) {
+			int lower, upper, middle;
+
+			lower = 0;
+			upper = sorted.length;
+			while (lower < upper) {
+				middle = (lower + upper) >>> 1;
+				if (sorted[middle] < value)
+					lower = middle + 1;
+				else
+					upper = middle;
+			}
+
+			return lower;
+		}
+
+		private static int firstNotBelow(final double[] sorted, final double value) {
+			int lower, upper, middle;
+
+			lower = 0;
+			upper = sorted.length;
+			while (lower < upper) {
+				middle = (lower + upper) >>> 1;
+				if (sorted[middle] < value)
+					lower = middle + 1;
+				else
+					upper = middle;
+			}
+
+			return lower;
+		}
+	}
+
+}
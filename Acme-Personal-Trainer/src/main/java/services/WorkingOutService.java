@@ -1,6 +1,7 @@
 
 package services;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -37,6 +38,12 @@ public class WorkingOutService {
 	@Autowired
 	private UtilityService			utilityService;
 
+	@Autowired
+	private OutboxEventService		outboxEventService;
+
+	@Autowired
+	private FinderService			finderService;
+
 	@Autowired
 	private Validator				validator;
 
@@ -68,7 +75,10 @@ public class WorkingOutService {
 		Assert.notNull(workingOut);
 		this.checkByPrincipal(workingOut);
 		Assert.isTrue(!workingOut.getIsFinalMode());
-		workingOut.setTicker(this.utilityService.generateValidTicker());
+
+		// The ticker is given once, when the working-out is created
+		if (workingOut.getId() == 0)
+			workingOut.setTicker(this.utilityService.generateValidTicker());
 
 		final WorkingOut result;
 
@@ -134,9 +144,10 @@ public class WorkingOutService {
 		workingOut.setPublishedMoment(this.utilityService.current_moment());
 		Assert.isTrue(workingOut.getEndMoment().after(workingOut.getStartMoment()));
 		Assert.isTrue(workingOut.getStartMoment().after(workingOut.getPublishedMoment()));
-		//TODO
-		//		this.messageService.notification_newWorkingOut(workingOut);
 
+		this.outboxEventService.notifyPublishedWorkingOut(workingOut);
+
+		this.finderService.index(workingOut);
 	}
 
 	public WorkingOut findOneFinalByPrincipal(final int workingOutId) {
@@ -215,17 +226,32 @@ public class WorkingOutService {
 		trainer = this.trainerService.findByPrincipal();
 		workingOuts = this.workingOutRepository.findAllWorkingOutsByTrainer(trainer.getId());
 
+		this.finderService.unindex(this.workingOutRepository.findFinalWorkingOutIdsByTrainer(trainer.getId()));
+
 		this.workingOutRepository.delete(workingOuts);
 	}
 
 	// Protected methods -----------------------------------------------
-	protected String existTicker(final String ticker) {
-		String result;
+	protected Collection<WorkingOut> findByIds(final Collection<Integer> workingOutIds) {
+		Collection<WorkingOut> results;
+
+		if (workingOutIds.isEmpty())
+			results = new ArrayList<WorkingOut>();
+		else
+			results = this.workingOutRepository.findAll(workingOutIds);
 
-		result = this.workingOutRepository.existTicker(ticker);
+		return results;
+	}
 
-		return result;
+	// Visible working-outs with their categories already loaded
+	protected Collection<WorkingOut> findAllVisibleWithCategories(final Date now) {
+		Collection<WorkingOut> results;
+
+		results = this.workingOutRepository.findAllVisibleWithCategories(now);
+
+		return results;
 	}
+
 	protected void checkByPrincipal(final WorkingOut workingOut) {
 		Trainer owner;
 		Trainer principal;
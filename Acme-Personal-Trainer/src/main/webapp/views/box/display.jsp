@@ -54,37 +54,85 @@
 		</display:column>
 		
 		<display:column property="name" titleKey="box.name" />
+		
+		<display:column titleKey="box.messageCount">
+			<jstl:out value="${messageCounts[row.id]}" />
+		</display:column>
 	</display:table>
 </jstl:if>
 
-<jstl:if test="${not empty messages}">
-	<p> <strong> <spring:message code="box.messages" />: </strong> </p>
-	<display:table name="messages" id="fila" requestURI="box/administrator,auditor,customer,nutritionist,trainer/display.do" pagesize="5" class="displaytag">
+<jstl:if test="${not empty page.entries}">
+	<p> <strong> <spring:message code="box.messages" />: </strong> <jstl:out value="${page.total}"/> </p>
+	<p> <strong> <spring:message code="box.unread" />: </strong> <jstl:out value="${page.unread}"/> </p>
+	<jstl:if test="${page.unread > 0}">
+		<form action="box/administrator,auditor,customer,nutritionist,trainer/markAllAsRead.do" method="post">
+			<input type="hidden" name="boxId" value="${box.id}" />
+			<input type="submit" value="<spring:message code="box.markAllAsRead" />" />
+		</form>
+	</jstl:if>
+	<form action="message/administrator,auditor,customer,nutritionist,trainer/bulk.do" method="post">
+	<input type="hidden" name="boxId" value="${box.id}" />
+
+	<display:table name="page.entries" id="fila" class="displaytag">
+		<display:column>
+			<input type="checkbox" name="messageIds" value="${fila.message.id}" />
+		</display:column>
 		<display:column>
-			<a href="message/administrator,auditor,customer,nutritionist,trainer/display.do?messageId=${fila.id}&boxId=${box.id}">
+			<a href="message/administrator,auditor,customer,nutritionist,trainer/display.do?messageId=${fila.message.id}&boxId=${box.id}">
 				<spring:message code="box.display" />
 			</a>
 		</display:column>
 		<display:column>
-			<a href="message/administrator,auditor,customer,nutritionist,trainer/move.do?messageId=${fila.id}&boxId=${box.id}">
+			<a href="message/administrator,auditor,customer,nutritionist,trainer/move.do?messageId=${fila.message.id}&boxId=${box.id}">
 				<spring:message code="box.move" />
 			</a>
 		</display:column>
 		<display:column>
-			<a href="message/administrator,auditor,customer,nutritionist,trainer/delete.do?messageId=${fila.id}&boxId=${box.id}" onclick="return confirm('<spring:message code="message.confirm.delete"/>')">
+			<a href="message/administrator,auditor,customer,nutritionist,trainer/delete.do?messageId=${fila.message.id}&boxId=${box.id}" onclick="return confirm('<spring:message code="message.confirm.delete"/>')">
 				<spring:message code="box.delete" />
 			</a>
 		</display:column>
 		
 		<spring:message code="message.date.format" var="dateFormat"/>
-		<display:column property="sentMoment" titleKey="message.sendMoment" format="${dateFormat}"/>
+		<display:column property="message.sentMoment" titleKey="message.sendMoment" format="${dateFormat}"/>
 		
-		<display:column property="subject" titleKey="message.subject"/>
+		<display:column titleKey="message.subject">
+			<jstl:choose>
+				<jstl:when test="${page.read[fila.message.id]}">
+					<jstl:out value="${fila.message.subject}" />
+				</jstl:when>
+				<jstl:otherwise>
+					<strong><jstl:out value="${fila.message.subject}" /></strong>
+				</jstl:otherwise>
+			</jstl:choose>
+		</display:column>
 		
-		<display:column property="priority" titleKey="message.priority"/>
+		<display:column property="message.priority" titleKey="message.priority"/>
 		
-		<display:column property="sender.userAccount.username" titleKey="message.sender"/>
+		<display:column property="message.sender.userAccount.username" titleKey="message.sender"/>
 	</display:table>
+
+	<label for="destinationBoxId"> <spring:message code="box.selected.destination" />: </label>
+	<select id="destinationBoxId" name="destinationBoxId">
+		<jstl:forEach var="destination" items="${destinationBoxes}">
+			<option value="${destination.id}"><jstl:out value="${destination.name}" /></option>
+		</jstl:forEach>
+	</select>
+	<input type="submit" name="move" value="<spring:message code="box.selected.move" />" />
+	<input type="submit" name="read" value="<spring:message code="box.selected.read" />" />
+	<input type="submit" name="delete" value="<spring:message code="box.selected.delete" />" onclick="return confirm('<spring:message code="message.confirm.delete"/>')" />
+	</form>
+	
+	<jstl:if test="${page.hasPrevious}">
+		<a href="box/administrator,auditor,customer,nutritionist,trainer/display.do?boxId=${box.id}&moment=${page.first.deliveredMoment.time}&entryId=${page.first.id}&previous=true">
+			<spring:message code="box.previous" />
+		</a>
+	</jstl:if>
+	<jstl:if test="${page.hasNext}">
+		<a href="box/administrator,auditor,customer,nutritionist,trainer/display.do?boxId=${box.id}&moment=${page.last.deliveredMoment.time}&entryId=${page.last.id}">
+			<spring:message code="box.next" />
+		</a>
+	</jstl:if>
 	<br/>
 </jstl:if>
 
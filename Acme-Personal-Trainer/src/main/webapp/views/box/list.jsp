@@ -35,6 +35,14 @@
 	</display:column>
 	
 	<display:column property="name" titleKey="box.name" />
+	
+	<display:column titleKey="box.messageCount">
+		<jstl:out value="${messageCounts[row.id]}" />
+	</display:column>
+	
+	<display:column titleKey="box.unread">
+		<jstl:out value="${unreadCounts[row.id]}" />
+	</display:column>
 </display:table>
 
 <!-- LINKS -->
@@ -48,6 +56,11 @@
 </a>
 <br />
 
+<a href="message/administrator,auditor,customer,nutritionist,trainer/search.do">
+	<spring:message code="message.search"/>
+</a>
+<br />
+
 <security:authorize access="hasRole('ADMIN')">
 	<a href="message/administrator/broadcast.do">
 		<spring:message code="message.broadcast" />
@@ -71,6 +71,11 @@
 	<jstl:out value="${customisation.premiumAmount}" />
 </p>
 
+<p>
+	<strong> <spring:message code="customisation.archiveAge" />: </strong>
+	<jstl:out value="${customisation.archiveAge}" />
+</p>
+
 <display:table name="spamWords" id="row" requestURI="customisation/administrator/display.do" pagesize="5" class="displaytag">
 	<display:column value="${row}" titleKey="customisation.spamWords"/>
 </display:table>
@@ -30,6 +30,7 @@
 	<acme:textbox code="customisation.numberResults" path="numberResults" />	
 	<acme:textbox code="customisation.threshold" path="threshold" />
 	<acme:textbox code="customisation.premiumAmount" path="premiumAmount" />
+	<acme:textbox code="customisation.archiveAge" path="archiveAge" />
 	<acme:textbox code="customisation.spamWords" path="spamWords" />
 	<acme:textbox code="customisation.positiveWords" path="positiveWords" />
 	<acme:textbox code="customisation.negativeWords" path="negativeWords" />
@@ -0,0 +1,65 @@
+<%--
+ * edit.jsp
+ *
+ * Copyright (C) 2019 Universidad de Sevilla
+ * 
+ * The use of this project is hereby constrained to the conditions of the 
+ * TDG Licence, a copy of which you may download from 
+ * http://www.tdg-seville.info/License.html
+ --%>
+
+<%@page language="java" contentType="text/html; charset=ISO-8859-1"
+	pageEncoding="ISO-8859-1"%>
+
+<%@taglib prefix="jstl" uri="http://java.sun.com/jsp/jstl/core"%>
+<%@taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt"%>
+<%@taglib prefix="tiles" uri="http://tiles.apache.org/tags-tiles"%>
+<%@taglib prefix="spring" uri="http://www.springframework.org/tags"%>
+<%@taglib prefix="form" uri="http://www.springframework.org/tags/form"%>
+<%@taglib prefix="security"	uri="http://www.springframework.org/security/tags"%>
+<%@taglib prefix="display" uri="http://displaytag.sf.net"%>
+<%@taglib prefix="acme" tagdir="/WEB-INF/tags"%>
+
+<form:form action="finder/customer/edit.do" modelAttribute="finder">
+	<form:hidden path="id" />
+	<form:hidden path="version" />
+
+	<acme:textbox code="finder.keyword" path="keyword" />
+	<br>
+
+	<acme:textbox code="finder.category" path="category" />
+	<br>
+
+	<acme:textbox code="finder.startPrice" path="startPrice" />
+	<br>
+
+	<acme:textbox code="finder.endPrice" path="endPrice" />
+	<br>
+
+	<acme:textbox code="finder.startDate" path="startDate" placeholder="dd/MM/yyyy" />
+	<br>
+
+	<acme:textbox code="finder.endDate" path="endDate" placeholder="dd/MM/yyyy" />
+	<br>
+
+	<acme:submit name="save" code="finder.search" />
+
+	<acme:submit name="clear" code="finder.clear" />
+</form:form>
+
+<br>
+
+<display:table name="workingOuts" id="row" requestURI="${requestURI}" class="displaytag" pagesize="5">
+	<display:column>
+		<a href="workingOut/customer,trainer/display.do?workingOutId=${row.id}"><spring:message code="finder.display" /></a>
+	</display:column>
+
+	<display:column property="ticker" titleKey="finder.ticker" />
+
+	<display:column property="description" titleKey="finder.description" />
+
+	<display:column property="price" titleKey="finder.price" sortable="true" />
+
+	<spring:message code="finder.formatMoment" var="formatMoment" />
+	<display:column property="startMoment" titleKey="finder.startMoment" sortable="true" format="${formatMoment}" />
+</display:table>
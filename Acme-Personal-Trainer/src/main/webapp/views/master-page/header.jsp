@@ -20,6 +20,7 @@
 					<li><a href="actor/administrator/registerNutritionist.do"><spring:message code="master.page.nutritionist.create" /></a></li>
 					<li><a href="actor/administrator/list.do"><spring:message code="master.page.actor.list" /></a></li>
 					<li><a href="category/administrator/list.do"><spring:message code="master.page.category" /> </a></li>
+					<li><a href="message/administrator/deliveryJobs.do"><spring:message code="master.page.deliveryJobs" /> </a></li>
 
 				</ul>
 			</li>
@@ -44,6 +45,7 @@
 				<ul>
 					<li class="arrow"></li>
 					<li><a href="workingOut/customer/listAvailable.do"><spring:message code="master.page.workingOut.list" /></a></li>
+					<li><a href="finder/customer/display.do"><spring:message code="master.page.finder" /></a></li>
 				</ul>
 			</li>
 			
@@ -0,0 +1,55 @@
+<%--
+ * deliveryJobs.jsp
+ *
+ * Copyright (C) 2017 Universidad de Sevilla
+ * 
+ * The use of this project is hereby constrained to the conditions of the 
+ * TDG Licence, a copy of which you may download from 
+ * http://www.tdg-seville.info/License.html
+ --%>
+
+<%@page language="java" contentType="text/html; charset=ISO-8859-1"
+	pageEncoding="ISO-8859-1"%>
+
+<%@taglib prefix="jstl" uri="http://java.sun.com/jsp/jstl/core"%>
+<%@taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt"%>
+<%@taglib prefix="tiles" uri="http://tiles.apache.org/tags-tiles"%>
+<%@taglib prefix="spring" uri="http://www.springframework.org/tags"%>
+<%@taglib prefix="form" uri="http://www.springframework.org/tags/form"%>
+<%@taglib prefix="security"	uri="http://www.springframework.org/security/tags"%>
+<%@taglib prefix="display" uri="http://displaytag.sf.net"%>
+<%@taglib prefix="acme" tagdir="/WEB-INF/tags"%>
+
+<spring:message code="message.format.date" var="formatDate" />
+
+<display:table name="jobs" id="row" requestURI="${requestURI}" pagesize="10" class="displaytag">
+	<display:column property="messageId" titleKey="message.job.message" />
+	
+	<display:column titleKey="message.job.start">
+		<fmt:formatDate value="${row.startMoment}" pattern="${formatDate}"/>
+	</display:column>
+	
+	<display:column titleKey="message.job.status">
+		<spring:message code="message.job.status.${row.status}" />
+	</display:column>
+	
+	<display:column titleKey="message.job.progress">
+		<jstl:out value="${row.delivered}"/> / <jstl:out value="${row.total}"/>
+		<jstl:if test="${row.total > 0}">
+			(<fmt:formatNumber value="${row.delivered / row.total}" type="percent" maxFractionDigits="0"/>)
+		</jstl:if>
+	</display:column>
+	
+	<display:column titleKey="message.job.finish">
+		<fmt:formatDate value="${finishMoments[row.id]}" pattern="${formatDate}"/>
+	</display:column>
+</display:table>
+
+<a href="message/administrator/deliveryJobs.do">
+	<spring:message code="message.job.refresh" />
+</a>
+<br />
+
+<a href="box/administrator,auditor,customer,nutritionist,trainer/list.do">
+	<spring:message code="message.button.return" />
+</a>
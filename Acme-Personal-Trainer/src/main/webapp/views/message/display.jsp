@@ -51,13 +51,41 @@
 	<jstl:out value="${messageToDisplay.sender.fullname}" />
 </p>
 
-<strong> <spring:message code="message.display.recipients"/>: </strong>
-<display:table name="${messageToDisplay.recipients}" id="row" requestURI="message/administrator,auditor,customer,nutritionist,trainer/display.do?messageId=${messageToDisplay.id}&boxId=${boxId}" pagesize="5" class="displaytag">
-	<display:column property="fullname" titleKey="message.recipient.name"/>
+<jstl:choose>
+	<jstl:when test="${messageToDisplay.audience != null}">
+		<p>
+			<strong> <spring:message code="message.display.audience" />: </strong>
+			<jstl:out value="${messageToDisplay.audience}" />
+		</p>
+	</jstl:when>
+	<jstl:otherwise>
+		<strong> <spring:message code="message.display.recipients"/>: </strong>
+		<display:table name="${messageToDisplay.recipients}" id="row" requestURI="message/administrator,auditor,customer,nutritionist,trainer/display.do?messageId=${messageToDisplay.id}&boxId=${boxId}" pagesize="5" class="displaytag">
+			<display:column property="fullname" titleKey="message.recipient.name"/>
 
-	<display:column property="email" titleKey="message.recipient.email"/>
-</display:table>	   
+			<display:column property="email" titleKey="message.recipient.email"/>
+		</display:table>
+	</jstl:otherwise>
+</jstl:choose>
 
-<a href="box/administrator,auditor,customer,nutritionist,trainer/display.do?boxId=${boxId}">
-	<spring:message code="message.button.return" />
-</a>
\ No newline at end of file
+<jstl:choose>
+	<jstl:when test="${boxId != null}">
+		<script type="text/javascript">
+			$(document).ready(function() {
+				$.post("message/administrator,auditor,customer,nutritionist,trainer/read.do", {
+					messageId : "${messageToDisplay.id}",
+					boxId : "${boxId}"
+				});
+			});
+		</script>
+
+		<a href="box/administrator,auditor,customer,nutritionist,trainer/display.do?boxId=${boxId}">
+			<spring:message code="message.button.return" />
+		</a>
+	</jstl:when>
+	<jstl:otherwise>
+		<a href="box/administrator,auditor,customer,nutritionist,trainer/list.do">
+			<spring:message code="message.button.return" />
+		</a>
+	</jstl:otherwise>
+</jstl:choose>
\ No newline at end of file
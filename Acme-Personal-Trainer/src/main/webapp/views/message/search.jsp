@@ -0,0 +1,64 @@
+<%--
+ * search.jsp
+ *
+ * Copyright (C) 2017 Universidad de Sevilla
+ * 
+ * The use of this project is hereby constrained to the conditions of the 
+ * TDG Licence, a copy of which you may download from 
+ * http://www.tdg-seville.info/License.html
+ --%>
+
+<%@page language="java" contentType="text/html; charset=ISO-8859-1"
+	pageEncoding="ISO-8859-1"%>
+
+<%@taglib prefix="jstl" uri="http://java.sun.com/jsp/jstl/core"%>
+<%@taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt"%>
+<%@taglib prefix="tiles" uri="http://tiles.apache.org/tags-tiles"%>
+<%@taglib prefix="spring" uri="http://www.springframework.org/tags"%>
+<%@taglib prefix="form" uri="http://www.springframework.org/tags/form"%>
+<%@taglib prefix="security"	uri="http://www.springframework.org/security/tags"%>
+<%@taglib prefix="display" uri="http://displaytag.sf.net"%>
+<%@taglib prefix="acme" tagdir="/WEB-INF/tags"%>
+
+<form action="message/administrator,auditor,customer,nutritionist,trainer/search.do" method="get">
+	<input type="text" name="text" value="<jstl:out value="${text}"/>" />
+	<input type="submit" value="<spring:message code="message.button.search" />" />
+</form>
+
+<jstl:if test="${searchPage != null}">
+	<p> <strong> <spring:message code="message.search.results" />: </strong> <jstl:out value="${searchPage.total}"/> </p>
+	
+	<display:table name="searchPage.messages" id="row" class="displaytag">
+		<display:column>
+			<a href="message/administrator,auditor,customer,nutritionist,trainer/display.do?messageId=${row.id}">
+				<spring:message code="message.search.display" />
+			</a>
+		</display:column>
+		
+		<spring:message code="message.format.date" var="formatDate" />
+		<display:column property="sentMoment" titleKey="message.display.sentMoment" format="{0,date,${formatDate}}"/>
+		
+		<display:column property="subject" titleKey="message.display.subject"/>
+		
+		<display:column property="sender.userAccount.username" titleKey="message.display.sender"/>
+	</display:table>
+	
+	<jstl:url var="searchURI" value="message/administrator,auditor,customer,nutritionist,trainer/search.do">
+		<jstl:param name="text" value="${searchPage.text}"/>
+	</jstl:url>
+	<jstl:if test="${searchPage.page > 0}">
+		<a href="${searchURI}&page=${searchPage.page - 1}">
+			<spring:message code="message.search.previous" />
+		</a>
+	</jstl:if>
+	<jstl:if test="${searchPage.hasNext}">
+		<a href="${searchURI}&page=${searchPage.page + 1}">
+			<spring:message code="message.search.next" />
+		</a>
+	</jstl:if>
+	<br/>
+</jstl:if>
+
+<a href="box/administrator,auditor,customer,nutritionist,trainer/list.do">
+	<spring:message code="message.button.return" />
+</a>
@@ -27,11 +27,53 @@
 	<acme:textbox path="subject" code="message.display.subject" />
 	<acme:textarea path="body" code="message.display.body" />
 	<acme:selectPrime path="priority" code="message.display.priority" items="${priorities}" />
-	<acme:selectMandatory path="recipients" code="message.display.recipients" items="${actors}" itemLabel="fullname" multiple="true" />
+	<div>
+		<form:label path="recipients">
+			<spring:message code="message.display.recipients" />
+		</form:label>
+		<spring:message code="message.recipients.search" var="searchPlaceholder" />
+		<input type="text" id="recipientSearch" placeholder="${searchPlaceholder}" />
+		<ul id="recipientList">
+			<jstl:forEach var="recipient" items="${message.recipients}">
+				<li>
+					<input type="hidden" name="recipients" value="${recipient.id}" />
+					<jstl:out value="${recipient.name} ${recipient.surname}" />
+					<a href="#" class="removeRecipient"><spring:message code="message.recipients.remove" /></a>
+				</li>
+			</jstl:forEach>
+		</ul>
+		<form:errors path="recipients" cssClass="error" />
+	</div>
 	<acme:textarea path="tags" code="message.display.tags" />	
  	<br />
 	
 	<!-- Buttons -->
 	<acme:submit name="send" code="message.button.send" />
 	<acme:cancel url="box/administrator,auditor,customer,nutritionist,trainer/list.do" code="message.button.cancel" />
-</form:form>
\ No newline at end of file
+</form:form>
+
+<spring:message code="message.recipients.remove" var="removeLabel" />
+
+<script type="text/javascript">
+	$(document).ready(function() {
+		$("#recipientSearch").autocomplete({
+			source : "message/administrator,auditor,customer,nutritionist,trainer/recipients.do",
+			minLength : 2,
+			select : function(event, ui) {
+				if ($("#recipientList input[value='" + ui.item.id + "']").length == 0)
+					$("<li></li>")
+						.append($("<input type='hidden' name='recipients' />").val(ui.item.id))
+						.append(document.createTextNode(ui.item.label + " "))
+						.append($("<a href='#' class='removeRecipient'></a>").text("${removeLabel}"))
+						.appendTo("#recipientList");
+				$(this).val("");
+				return false;
+			}
+		});
+
+		$("#recipientList").on("click", ".removeRecipient", function() {
+			$(this).closest("li").remove();
+			return false;
+		});
+	});
+</script>
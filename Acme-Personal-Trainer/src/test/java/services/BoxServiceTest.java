@@ -15,6 +15,7 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.util.Assert;
 
 import utilities.AbstractTest;
+import forms.BoxPage;
 import domain.Box;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -65,16 +66,20 @@ public class BoxServiceTest extends AbstractTest {
 
 		int boxId;
 		Box outBox;
+		BoxPage page;
 
 		// Out box of customer 1
 		boxId = super.getEntityId("box81");
 		outBox = this.boxService.findOneToDisplay(boxId);
+		page = this.boxService.findMessagesPageByBox(boxId, null, null, false);
 
 		Assert.notNull(outBox);
 		Assert.notNull(outBox.getName());
 		Assert.isTrue(outBox.getIsSystemBox());
 		Assert.notNull(outBox.getActor());
-		Assert.isTrue(outBox.getMessages().size() == 1);
+		Assert.isTrue(page.getTotal() == 1 && page.getEntries().size() == 1);
+		Assert.isTrue(this.boxService.numberOfMessagesByBoxFromActor(outBox.getActor()).get(boxId) == page.getTotal());
+		Assert.isTrue(!page.getHasPrevious() && !page.getHasNext());
 		Assert.isNull(outBox.getParent());
 
 		super.unauthenticate();
@@ -116,7 +121,6 @@ public class BoxServiceTest extends AbstractTest {
 
 		Assert.notNull(box);
 		Assert.notNull(box.getActor());
-		Assert.notNull(box.getMessages());
 		Assert.isNull(box.getName());
 		Assert.isTrue(!box.getIsSystemBox());
 		Assert.isNull(box.getParent());
@@ -344,4 +348,52 @@ public class BoxServiceTest extends AbstractTest {
 		super.unauthenticate();
 	}
 
+	/*
+	 * A: System boxes are resolved through the per-actor cache.
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void systemBoxCache_positiveTest() {
+		final int actorId = super.getEntityId("customer1");
+		Box outBox, trashBox;
+		long hits;
+
+		outBox = this.boxService.findOutBoxFromActor(actorId);
+		hits = this.boxService.getSystemBoxCacheHits();
+		trashBox = this.boxService.findTrashBoxFromActor(actorId);
+
+		Assert.isTrue(outBox.getName().equals("out box") && outBox.getActor().getId() == actorId);
+		Assert.isTrue(trashBox.getName().equals("trash box") && trashBox.getActor().getId() == actorId);
+		Assert.isTrue(this.boxService.getSystemBoxCacheHits() == hits + 1);
+	}
+
+	/*
+	 * A: Requirement 8.4 (An authenticated user can edit his or her boxes).
+	 * B: A user try to move a box into one of its descendants.
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void cycle_negativeTest() {
+		super.authenticate("auditor1");
+
+		Box parent, child;
+
+		parent = this.boxService.findOne(super.getEntityId("box35"));
+
+		child = this.boxService.create();
+		child.setName("Child box");
+		child.setParent(parent);
+		child = this.boxService.save(child);
+
+		Assert.isTrue(child.getPath().equals("/" + parent.getId() + "/"));
+		Assert.isTrue(this.boxService.descendantBoxes(parent).contains(child));
+
+		parent.setParent(child);
+		this.boxService.save(parent);
+
+		super.unauthenticate();
+	}
+
 }
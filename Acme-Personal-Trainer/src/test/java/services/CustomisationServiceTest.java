@@ -187,4 +187,18 @@ public class CustomisationServiceTest extends AbstractTest {
 
 		super.checkExceptions(expected, caught);
 	}
+
+	/*
+	 * A: Requirement 13 (The system must be easy to customise at run time):
+	 * messages are classified with the spam words of the customisation.
+	 * C: Analysis of sentence coverage: 9/9 -> 100.00% of executed lines codes .
+	 * D: intentionally blank.
+	 */
+	@Test
+	public void containsSpamWords_positiveTest() {
+		Assert.isTrue(this.customisationService.containsSpamWords("Cheap VIAGRA for you"));
+		Assert.isTrue(this.customisationService.containsSpamWords("Greetings from nigeria"));
+		Assert.isTrue(!this.customisationService.containsSpamWords("See you at the gym on Monday"));
+	}
+
 }
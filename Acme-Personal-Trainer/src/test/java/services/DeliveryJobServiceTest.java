@@ -0,0 +1,89 @@
+
+package services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.transaction.Transactional;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.util.Assert;
+
+import utilities.AbstractTest;
+import domain.Actor;
+import domain.Message;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {
+	"classpath:spring/junit.xml"
+})
+@Transactional
+public class DeliveryJobServiceTest extends AbstractTest {
+
+	// Service under test -----------------------------------------------------
+	@Autowired
+	private DeliveryJobService	deliveryJobService;
+
+	// Other services and repositories ----------------------------------------
+	@Autowired
+	private MessageService		messageService;
+
+	@Autowired
+	private ActorService		actorService;
+
+	@Autowired
+	private BoxService			boxService;
+
+
+	// Tests ------------------------------------------------------------------
+
+	/*
+	 * A: An actor can send a message and it is delivered to its recipients.
+	 * B: A short list of recipients is delivered in the request, without a job.
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void start_positiveTest() {
+		super.authenticate("customer1");
+
+		Message message, sent;
+		List<Actor> recipients;
+		int jobs;
+
+		recipients = new ArrayList<Actor>();
+		recipients.add(this.actorService.findOne(super.getEntityId("trainer1")));
+		recipients.add(this.actorService.findOne(super.getEntityId("trainer2")));
+
+		jobs = this.deliveryJobService.findAll().size();
+
+		message = this.messageService.create();
+		message.setSubject("Delivery");
+		message.setBody("Delivery body");
+		message.setPriority("LOW");
+		message.setRecipients(recipients);
+		sent = this.messageService.send(message);
+
+		Assert.isTrue(this.deliveryJobService.findAll().size() == jobs);
+		for (final Actor a : recipients)
+			Assert.isTrue(this.boxService.containsMessage(this.boxService.findInBoxFromActor(a.getId()), sent));
+
+		super.unauthenticate();
+	}
+
+	/*
+	 * A: An actor can send a message and it is delivered to its recipients.
+	 * B: A job that doesn't exist is processed.
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void processChunk_negativeTest() {
+		this.deliveryJobService.processChunk(0);
+	}
+
+}
@@ -1,14 +1,21 @@
 
 package services;
 
+import java.util.Arrays;
+import java.util.List;
+
 import javax.transaction.Transactional;
 
+import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.util.Assert;
 
 import utilities.AbstractTest;
 import domain.Finder;
+import domain.WorkingOut;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(locations = {
@@ -18,8 +25,14 @@ import domain.Finder;
 public class FinderServiceTest extends AbstractTest {
 
 	// Service under test -----------------------------------------------------
+	@Autowired
+	private FinderService	finderService;
+
 
 	// Other services and repositories ----------------------------------------
+	@Autowired
+	private CustomisationService	customisationService;
+
 
 	// Tests ------------------------------------------------------------------
 
@@ -193,6 +206,151 @@ public class FinderServiceTest extends AbstractTest {
 	//		Assert.isTrue(finder.getUpdatedMoment().equals(new Date(Integer.MIN_VALUE)));
 	//	}
 
+	/*
+	 * A: Requirement 14.2: A customer can search the working-outs with a finder.
+	 * B: Positive test
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void workingOutIndex_positiveTest() {
+		WorkingOutIndex index;
+		List<Integer> results;
+
+		index = new WorkingOutIndex();
+		index.load(Arrays.asList(new WorkingOutIndex.Document(1, 3000L, 20.0, Arrays.asList("Yoga", "Yoga"), "201105-ABC123", "Morning yoga for beginners"), new WorkingOutIndex.Document(2, 1000L, 45.0, Arrays.asList("Yoga", "Yoga"), "201105-XYZ789", "Advanced yoga"),
+			new WorkingOutIndex.Document(3, 2000L, 10.0, Arrays.asList("Tabata", "Tabata"), "201106-QWE456", "Tabata for beginners")));
+
+		results = index.search(null, "yoga", null, 50.0, 0L, Long.MAX_VALUE, 10);
+		Assert.isTrue(results.equals(Arrays.asList(2, 1)));
+
+		results = index.search("begin", null, null, null, 0L, Long.MAX_VALUE, 10);
+		Assert.isTrue(results.equals(Arrays.asList(3, 1)));
+
+		results = index.search("201105-abc", null, 15.0, 25.0, 2500L, Long.MAX_VALUE, 10);
+		Assert.isTrue(results.equals(Arrays.asList(1)));
+
+		index.remove(Arrays.asList(1));
+		results = index.search("yoga", null, null, null, 0L, Long.MAX_VALUE, 10);
+		Assert.isTrue(results.equals(Arrays.asList(2)));
+
+		index.put(new WorkingOutIndex.Document(4, 1500L, 30.0, Arrays.asList("Yoga", "Yoga"), "201107-RTY321", "Yoga at sunset"));
+		results = index.search("yoga", "yoga", null, null, 0L, Long.MAX_VALUE, 10);
+		Assert.isTrue(results.equals(Arrays.asList(2, 4)));
+
+		index.prune(1200L);
+		results = index.search(null, null, null, null, 0L, Long.MAX_VALUE, 10);
+		Assert.isTrue(results.equals(Arrays.asList(4, 3)));
+		Assert.isTrue(index.size() == 2);
+	}
+
+	/*
+	 * A: Requirement 14.2: A customer can search the working-outs with a finder.
+	 * B: Positive test
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void search_positiveTest() {
+		Finder finder;
+		List<WorkingOut> results;
+
+		finder = new Finder();
+		finder.setKeyword("");
+		finder.setStartPrice(0.0);
+		finder.setEndPrice(100.0);
+
+		results = this.finderService.search(finder, 10);
+
+		for (final WorkingOut w : results)
+			Assert.isTrue(w.getIsFinalMode());
+	}
+
+	/*
+	 * A: Requirement 14.2: The results of a finder are cached for the hours set in the customisation.
+	 * B: Positive test
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void findWorkingOutsByPrincipal_positiveTest() {
+		super.authenticate("customer1");
+
+		Finder finder, saved;
+		long hits, misses;
+
+		finder = this.finderService.findByPrincipal();
+		Assert.isTrue(finder.getId() == super.getEntityId("finder1"));
+
+		// A new search is run when the criteria change
+		finder = this.cloneFinder(finder);
+		finder.setKeyword("");
+		finder.setCategory("");
+		saved = this.finderService.save(finder);
+		Assert.isTrue(saved.getWorkingOuts().size() <= this.customisationService.find().getNumberResults());
+
+		hits = this.finderService.getResultHits();
+		misses = this.finderService.getResultMisses();
+
+		this.finderService.findWorkingOutsByPrincipal();
+		Assert.isTrue(this.finderService.getResultHits() == hits + 1);
+		Assert.isTrue(this.finderService.getResultMisses() == misses);
+
+		super.unauthenticate();
+	}
+
+	/*
+	 * A: Requirement 14.2: A customer can change the filters of his or her finder.
+	 * B: The finder can only be changed by its owner.
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void save_negativeTest() {
+		super.authenticate("customer2");
+
+		Finder finder;
+
+		finder = this.cloneFinder(this.finderService.findOne(super.getEntityId("finder1")));
+		finder.setKeyword("yoga");
+
+		this.finderService.save(finder);
+
+		super.unauthenticate();
+	}
+
+	/*
+	 * A: Requirement 14.2: A customer can search the working-outs with a finder.
+	 * B: Positive test: finders with the same criteria share their results.
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void search_sharedResultsTest() {
+		Finder finder, other;
+		List<WorkingOut> results, otherResults;
+		long hits, misses;
+
+		finder = new Finder();
+		finder.setKeyword("Shared Yoga");
+		finder.setCategory("Yoga");
+		finder.setEndPrice(50.0);
+
+		other = new Finder();
+		other.setKeyword("  yga   SHARED ");
+		other.setCategory(" yoga");
+		other.setEndPrice(50.0);
+
+		misses = this.finderService.getSharedResultMisses();
+		results = this.finderService.search(finder, 10);
+		Assert.isTrue(this.finderService.getSharedResultMisses() == misses + 1);
+
+		hits = this.finderService.getSharedResultHits();
+		otherResults = this.finderService.search(other, 10);
+		Assert.isTrue(this.finderService.getSharedResultHits() == hits + 1);
+		Assert.isTrue(otherResults.equals(results));
+	}
+
 	// Ancillary methods ------------------------------------------------------
 
 	private Finder cloneFinder(final Finder finder) {
@@ -208,6 +366,7 @@ public class FinderServiceTest extends AbstractTest {
 		res.setStartPrice(finder.getStartPrice());
 		res.setVersion(finder.getVersion());
 		res.setWorkingOuts(finder.getWorkingOuts());
+		res.setUpdatedMoment(finder.getUpdatedMoment());
 
 		return res;
 	}
@@ -0,0 +1,73 @@
+
+package services;
+
+import javax.transaction.Transactional;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.util.Assert;
+
+import utilities.AbstractTest;
+import domain.Actor;
+import domain.Message;
+import forms.MessageSearchPage;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {
+	"classpath:spring/junit.xml"
+})
+@Transactional
+public class MessageIndexServiceTest extends AbstractTest {
+
+	// Service under test -----------------------------------------------------
+	@Autowired
+	private MessageIndexService	messageIndexService;
+
+	// Other services and repositories ----------------------------------------
+	@Autowired
+	private ActorService		actorService;
+
+
+	// Tests ------------------------------------------------------------------
+
+	/*
+	 * A: An authenticated user can search his or her messages.
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void search_positiveTest() {
+		super.authenticate("customer1");
+
+		MessageSearchPage page;
+		Actor principal;
+
+		principal = this.actorService.findPrincipal();
+		page = this.messageIndexService.search("easter", 0);
+
+		Assert.isTrue(page.getTotal() > 0 && !page.getMessages().isEmpty());
+		for (final Message m : page.getMessages())
+			Assert.isTrue(m.getSender().equals(principal) || m.getRecipients().contains(principal));
+
+		super.unauthenticate();
+	}
+
+	/*
+	 * A: An authenticated user can search his or her messages.
+	 * B: The page requested is negative.
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void search_negativeTest() {
+		super.authenticate("customer1");
+
+		this.messageIndexService.search("easter", -1);
+
+		super.unauthenticate();
+	}
+
+}
@@ -3,6 +3,8 @@ package services;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 import javax.transaction.Transactional;
@@ -20,8 +22,11 @@ import domain.Actor;
 import domain.Application;
 import domain.Article;
 import domain.Box;
+import domain.Customer;
+import domain.MailboxEntry;
 import domain.Message;
 import domain.WorkingOut;
+import forms.ActorSuggestion;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(locations = {
@@ -41,6 +46,9 @@ public class MessageServiceTest extends AbstractTest {
 	@Autowired
 	private BoxService			boxService;
 
+	@Autowired
+	private SendRateLimiter		sendRateLimiter;
+
 	@Autowired
 	private ApplicationService	applicationService;
 
@@ -119,6 +127,33 @@ public class MessageServiceTest extends AbstractTest {
 		super.unauthenticate();
 	}
 
+	/*
+	 * A: Requirement 8.3 (An authenticated user can list his or her messages).
+	 * B: The received messages are read in pages of four.
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void findReceivedMessagesByActorPaged_positiveTest() {
+		int actorId, lastId;
+		List<Message> page;
+		Collection<Message> receivedMessages;
+
+		actorId = super.getEntityId("trainer1");
+		receivedMessages = new ArrayList<Message>();
+
+		lastId = 0;
+		do {
+			page = this.messageService.findReceivedMessagesByActor(actorId, lastId, 4);
+			receivedMessages.addAll(page);
+			if (!page.isEmpty())
+				lastId = page.get(page.size() - 1).getId();
+		} while (page.size() == 4);
+
+		Assert.isTrue(receivedMessages.size() == 9);
+		Assert.isTrue(receivedMessages.containsAll(this.messageService.findReceivedMessagesByActor(actorId)));
+	}
+
 	/*
 	 * A: Requirement 8.3 (An authenticated user can create a message).
 	 * C: Analysis of sentence coverage: 22/22 -> 100.00% of executed lines codes .
@@ -405,7 +440,8 @@ public class MessageServiceTest extends AbstractTest {
 
 		Assert.notNull(message);
 		Assert.notNull(message.getSender());
-		Assert.notEmpty(message.getRecipients());
+		Assert.isTrue(message.getRecipients().isEmpty());
+		Assert.isTrue(message.getAudience().equals("ALL"));
 		Assert.notNull(message.getSentMoment());
 		Assert.isNull(message.getBody());
 		Assert.isNull(message.getSubject());
@@ -493,6 +529,46 @@ public class MessageServiceTest extends AbstractTest {
 		super.unauthenticate();
 	}
 
+	/*
+	 * A: Requirement 11.3 (An administrator can broadcast a message to all the actors of the system).
+	 * B: A customer that turns premium doesn't receive the messages addressed to the premium customers before.
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void sendBroadcast_membershipTest() {
+		Message message, saved;
+		Customer customer;
+		int boxId, before;
+
+		super.authenticate("admin1");
+
+		message = this.messageService.createBroadcast();
+		message.setSubject("Test broadcast");
+		message.setBody("body broadcast");
+		message.setPriority("LOW");
+		message.setAudience("PREMIUM");
+		message.setSentMoment(new Date(System.currentTimeMillis() - 60000));
+
+		saved = this.messageService.sendBroadcast(message);
+
+		super.unauthenticate();
+
+		super.authenticate("customer1");
+
+		customer = (Customer) this.actorService.findPrincipal();
+		boxId = this.boxService.findNotificationBoxFromActor(customer.getId()).getId();
+		before = this.boxService.numberOfMessagesByBoxFromActor(customer).get(boxId);
+
+		customer.setIsPremium(true);
+		this.actorService.save(customer);
+
+		Assert.isTrue(this.boxService.numberOfMessagesByBoxFromActor(customer).get(boxId) == before);
+		Assert.isTrue(!this.boxService.takeAudienceMessage(customer, saved));
+
+		super.unauthenticate();
+	}
+
 	/*
 	 * A: Requirement 2 (A message may be stored in several boxes).
 	 * B: The principal hasn't right about this message
@@ -518,8 +594,8 @@ public class MessageServiceTest extends AbstractTest {
 
 		this.messageService.moveMessage(message, origin, destination);
 
-		Assert.isTrue(destination.getMessages().contains(message));
-		Assert.isTrue(!origin.getMessages().contains(message));
+		Assert.isTrue(this.boxService.containsMessage(destination, message));
+		Assert.isTrue(!this.boxService.containsMessage(origin, message));
 
 		super.unauthenticate();
 	}
@@ -549,8 +625,8 @@ public class MessageServiceTest extends AbstractTest {
 
 		this.messageService.moveMessage(message, origin, destination);
 
-		Assert.isTrue(destination.getMessages().contains(message));
-		Assert.isTrue(!origin.getMessages().contains(message));
+		Assert.isTrue(this.boxService.containsMessage(destination, message));
+		Assert.isTrue(!this.boxService.containsMessage(origin, message));
 
 		super.unauthenticate();
 	}
@@ -615,4 +691,316 @@ public class MessageServiceTest extends AbstractTest {
 		Assert.isTrue(notification.getId() != 0);
 	}
 
+	/*
+	 * A: An actor removes all his or her data from the system.
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void deleteMessagesFromActor_positiveTest() {
+		final int actorId = super.getEntityId("trainer1");
+		Actor actor;
+		int affected;
+
+		actor = this.actorService.findOne(actorId);
+		affected = this.messageService.deleteMessagesFromActor(actor);
+
+		Assert.isTrue(affected >= 9);
+		Assert.isTrue(this.messageService.findSentMessagesByActor(actorId).isEmpty());
+		Assert.isTrue(this.messageService.findReceivedMessagesByActor(actorId).isEmpty());
+	}
+
+	/*
+	 * A: A broadcast reaches its audience without storing a copy per actor.
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void broadcastAudience_positiveTest() {
+		Message message, saved;
+		Actor customer;
+		Box notificationBox, trashBox;
+		MailboxEntry pending;
+
+		super.authenticate("admin1");
+
+		message = this.messageService.createBroadcast();
+		message.setSubject("Test broadcast");
+		message.setBody("body broadcast");
+		message.setPriority("LOW");
+		saved = this.messageService.sendBroadcast(message);
+
+		super.unauthenticate();
+		super.authenticate("customer1");
+
+		customer = this.actorService.findPrincipal();
+		notificationBox = this.boxService.findNotificationBoxFromActor(customer.getId());
+		trashBox = this.boxService.findTrashBoxFromActor(customer.getId());
+
+		pending = null;
+		for (final MailboxEntry e : this.boxService.findMessagesPageByBox(notificationBox.getId(), null, null, false).getEntries())
+			if (e.getMessage().equals(saved))
+				pending = e;
+
+		Assert.notNull(pending);
+		Assert.isTrue(pending.getId() == -saved.getId());
+		Assert.notNull(this.messageService.findOneToDisplay(saved.getId()));
+
+		this.messageService.delete(saved, notificationBox);
+
+		Assert.isTrue(this.boxService.containsMessage(trashBox, saved));
+		for (final MailboxEntry e : this.boxService.findMessagesPageByBox(notificationBox.getId(), null, null, false).getEntries())
+			Assert.isTrue(!e.getMessage().equals(saved));
+
+		super.unauthenticate();
+	}
+
+	/*
+	 * A: Requirement 2 (A message may be stored in several boxes): a selection of messages is moved and deleted at once.
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void bulkMoveDelete_positiveTest() {
+		super.authenticate("customer1");
+
+		Message message;
+		Box outBox, newBox, trashBox;
+		Collection<Integer> selection;
+
+		message = this.messageService.findOne(super.getEntityId("message1"));
+		outBox = this.boxService.findOne(super.getEntityId("box81"));
+		trashBox = this.boxService.findOne(super.getEntityId("box82"));
+		newBox = this.boxService.findOne(super.getEntityId("box85"));
+
+		selection = new ArrayList<Integer>();
+		selection.add(message.getId());
+
+		Assert.isTrue(this.messageService.moveMessages(selection, outBox, newBox) == 1);
+		Assert.isTrue(!this.boxService.containsMessage(outBox, message));
+		Assert.isTrue(this.boxService.containsMessage(newBox, message));
+
+		this.messageService.deleteMessages(selection, newBox);
+		Assert.isTrue(this.boxService.containsMessage(trashBox, message));
+
+		this.messageService.deleteMessages(selection, trashBox);
+		Assert.isTrue(this.boxService.findBoxesFromActorThatContaintsAMessage(outBox.getActor().getId(), message.getId()).isEmpty());
+
+		super.unauthenticate();
+	}
+
+	/*
+	 * A: Requirement 2 (A message may be stored in several boxes): a selection of messages is moved at once.
+	 * B: The selection holds a message that is not stored in the origin box.
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void bulkMove_negativeTest() {
+		super.authenticate("customer1");
+
+		Box outBox, newBox;
+		Collection<Integer> selection;
+
+		outBox = this.boxService.findOne(super.getEntityId("box81"));
+		newBox = this.boxService.findOne(super.getEntityId("box85"));
+
+		selection = new ArrayList<Integer>();
+		selection.add(super.getEntityId("message1"));
+		selection.add(super.getEntityId("message2"));
+
+		this.messageService.moveMessages(selection, outBox, newBox);
+
+		super.unauthenticate();
+	}
+
+	/*
+	 * A: Requirement 2 (An actor can list the messages of a box): the messages read are tracked per box.
+	 * B: Positive test
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void markAsRead_positiveTest() {
+		super.authenticate("customer1");
+
+		Message message;
+		Box outBox, newBox;
+		Collection<Integer> selection;
+		int unread;
+
+		message = this.messageService.findOne(super.getEntityId("message1"));
+		outBox = this.boxService.findOne(super.getEntityId("box81"));
+		newBox = this.boxService.findOne(super.getEntityId("box85"));
+
+		selection = new ArrayList<Integer>();
+		selection.add(message.getId());
+
+		unread = this.boxService.findMessagesPageByBox(outBox.getId(), null, null, false).getUnread();
+		this.messageService.markAsRead(selection, outBox);
+		Assert.isTrue(this.boxService.findMessagesPageByBox(outBox.getId(), null, null, false).getUnread() == unread - 1);
+
+		// The read mark follows the message when it is moved
+		this.messageService.moveMessages(selection, outBox, newBox);
+		Assert.isTrue(this.boxService.findMessagesPageByBox(newBox.getId(), null, null, false).getRead().get(message.getId()));
+
+		this.messageService.markAllAsRead(outBox);
+		Assert.isTrue(this.boxService.findMessagesPageByBox(outBox.getId(), null, null, false).getUnread() == 0);
+
+		super.unauthenticate();
+	}
+
+	/*
+	 * A: Requirement 2 (An actor can display a message): old messages are moved to the archive and read through it.
+	 * B: Positive test
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void archive_positiveTest() {
+		Message message, sent;
+		Actor trainer;
+		Date future;
+
+		future = new Date(System.currentTimeMillis() + 60000);
+		trainer = this.actorService.findOne(super.getEntityId("trainer1"));
+
+		super.authenticate("customer1");
+
+		message = this.messageService.create();
+		message.setSubject("Archive");
+		message.setBody("Archive body");
+		message.setPriority("LOW");
+		message.setRecipients(Collections.singleton(trainer));
+		sent = this.messageService.send(message);
+
+		// Messages listed in a box other than the trash are not archived
+		this.messageService.archiveMessagesSentBefore(future, 1000);
+		Assert.notNull(this.messageService.findOne(sent.getId()));
+		Assert.notNull(this.messageService.findOne(super.getEntityId("message1")));
+
+		this.messageService.delete(sent, this.boxService.findOutBoxFromActor(sent.getSender().getId()));
+
+		super.unauthenticate();
+
+		super.authenticate("trainer1");
+
+		this.messageService.delete(sent, this.boxService.findInBoxFromActor(trainer.getId()));
+
+		Assert.isTrue(this.messageService.archiveMessagesSentBefore(future, 1000) > 0);
+		Assert.isNull(this.messageService.findOne(sent.getId()));
+
+		message = this.messageService.findOneToDisplay(sent.getId());
+		Assert.isTrue(message.getId() == sent.getId());
+		Assert.isTrue(this.boxService.findBoxesFromActorThatContaintsAMessage(trainer.getId(), sent.getId()).isEmpty());
+
+		super.unauthenticate();
+	}
+
+	/*
+	 * A: Requirement 2 (An actor can send a message): an actor that sends too many messages in a row is rejected.
+	 * B: The actor runs out of tokens.
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void sendRateLimit_negativeTest() {
+		super.authenticate("customer2");
+
+		long rejections;
+		int accepted;
+
+		rejections = this.sendRateLimiter.getMessageRejections();
+
+		accepted = 0;
+		while (this.sendRateLimiter.tryAcquireMessage())
+			accepted++;
+
+		Assert.isTrue(accepted > 0);
+		Assert.isTrue(this.sendRateLimiter.getMessageRejections() == rejections + 1);
+
+		super.unauthenticate();
+	}
+
+
+	/*
+	 * A: Requirement 2 (A message is spam if it contains a spam word): existing messages are re-classified when the spam words change.
+	 * B: Positive test
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void reclassifyMessages_positiveTest() {
+		super.authenticate("customer1");
+
+		Message message, saved;
+		Actor trainer;
+		Box inBox, spamBox;
+		Collection<Actor> recipients;
+		Collection<Integer> selection;
+
+		trainer = this.actorService.findOne(super.getEntityId("trainer1"));
+		recipients = new ArrayList<Actor>();
+		recipients.add(trainer);
+
+		message = this.messageService.create();
+		message.setSubject("Schedule");
+		message.setBody("Could we move the session to monday?");
+		message.setPriority("LOW");
+		message.setRecipients(recipients);
+
+		saved = this.messageService.send(message);
+		this.messageService.flush();
+
+		inBox = this.boxService.findInBoxFromActor(trainer.getId());
+		spamBox = this.boxService.findSpamBoxFromActor(trainer.getId());
+		Assert.isTrue(this.boxService.containsMessage(inBox, saved));
+
+		selection = new ArrayList<Integer>();
+		selection.add(saved.getId());
+
+		Assert.isTrue(this.messageService.reclassifyMessages(selection, "monday") == 1);
+		Assert.isTrue(!this.boxService.containsMessage(inBox, saved));
+		Assert.isTrue(this.boxService.containsMessage(spamBox, saved));
+
+		Assert.isTrue(this.messageService.reclassifyMessages(selection, "sex,viagra") == 1);
+		Assert.isTrue(this.boxService.containsMessage(inBox, saved));
+
+		super.unauthenticate();
+	}
+
+
+	/*
+	 * A: Requirement 2 (An actor can send a message): the recipients are suggested as their name or e-mail is typed.
+	 * B: Positive test
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void findRecipientSuggestions_positiveTest() {
+		super.authenticate("customer1");
+
+		List<ActorSuggestion> suggestions;
+		int trainerId, customerId;
+		boolean found;
+
+		trainerId = super.getEntityId("trainer1");
+		customerId = super.getEntityId("customer1");
+
+		suggestions = this.actorService.findRecipientSuggestions("TRAINER1@gm", 10, new ArrayList<Integer>());
+		Assert.isTrue(suggestions.size() == 1 && suggestions.get(0).getId() == trainerId);
+
+		suggestions = this.actorService.findRecipientSuggestions("trainer1 trai", 10, new ArrayList<Integer>());
+		found = false;
+		for (final ActorSuggestion s : suggestions)
+			found = found || s.getId() == trainerId;
+		Assert.isTrue(found);
+
+		suggestions = this.actorService.findRecipientSuggestions("customer1", 10, new ArrayList<Integer>());
+		for (final ActorSuggestion s : suggestions)
+			Assert.isTrue(s.getId() != customerId);
+
+		super.unauthenticate();
+	}
+
 }
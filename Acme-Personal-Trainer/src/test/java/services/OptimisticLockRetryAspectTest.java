@@ -0,0 +1,129 @@
+
+package services;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.util.Assert;
+
+import utilities.AbstractTest;
+
+// The calls must run without a transaction to be retried, so this class is
+// not transactional and opens one by hand where it's needed
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {
+	"classpath:spring/junit.xml"
+})
+public class OptimisticLockRetryAspectTest extends AbstractTest {
+
+	// Aspect under test ------------------------------------------------------
+	@Autowired
+	private OptimisticLockRetryAspect	optimisticLockRetryAspect;
+
+
+	// Tests ------------------------------------------------------------------
+
+	/*
+	 * A: A method annotated with RetryOnOptimisticLock runs again after an optimistic lock conflict.
+	 * B: The method fails once with a conflict and succeeds when it's retried.
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void retryOnConflict_positiveTest() {
+		ConflictingTask task;
+		long conflicts, recoveries;
+		int result;
+
+		task = this.proxy(new ConflictingTask(1));
+		conflicts = this.optimisticLockRetryAspect.getConflicts();
+		recoveries = this.optimisticLockRetryAspect.getRecoveries();
+
+		result = task.run();
+
+		Assert.isTrue(result == 2);
+		Assert.isTrue(this.optimisticLockRetryAspect.getConflicts() == conflicts + 1);
+		Assert.isTrue(this.optimisticLockRetryAspect.getRecoveries() == recoveries + 1);
+	}
+
+	/*
+	 * A: A method annotated with RetryOnOptimisticLock runs again after an optimistic lock conflict.
+	 * B: A call made inside an existing transaction is not retried, since that transaction can't go on.
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void retryOnConflict_negativeTest() {
+		ConflictingTask task;
+		long conflicts, recoveries;
+		Class<?> caught;
+
+		task = this.proxy(new ConflictingTask(1));
+		conflicts = this.optimisticLockRetryAspect.getConflicts();
+		recoveries = this.optimisticLockRetryAspect.getRecoveries();
+
+		caught = null;
+		super.startTransaction();
+		try {
+			task.run();
+		} catch (final Throwable oops) {
+			caught = oops.getClass();
+		} finally {
+			super.rollbackTransaction();
+		}
+
+		super.checkExceptions(OptimisticLockingFailureException.class, caught);
+		Assert.isTrue(task.getAttempts() == 1);
+		Assert.isTrue(this.optimisticLockRetryAspect.getConflicts() == conflicts);
+		Assert.isTrue(this.optimisticLockRetryAspect.getRecoveries() == recoveries);
+	}
+
+	// Ancillary methods ------------------------------------------------------
+
+	private ConflictingTask proxy(final ConflictingTask target) {
+		AspectJProxyFactory factory;
+		ConflictingTask result;
+
+		factory = new AspectJProxyFactory(target);
+		factory.setProxyTargetClass(true);
+		factory.addAspect(this.optimisticLockRetryAspect);
+		result = factory.getProxy();
+
+		return result;
+	}
+
+
+	// Fails with an optimistic lock conflict the first given number of times
+	public static class ConflictingTask {
+
+		private final int	failures;
+		private int			attempts;
+
+
+		public ConflictingTask() {
+			this(0);
+		}
+
+		public ConflictingTask(final int failures) {
+			this.failures = failures;
+		}
+
+		public int getAttempts() {
+			return this.attempts;
+		}
+
+		@RetryOnOptimisticLock
+		public int run() {
+			this.attempts++;
+			if (this.attempts <= this.failures)
+				throw new OptimisticLockingFailureException("Conflicting task");
+
+			return this.attempts;
+		}
+	}
+
+}
@@ -0,0 +1,86 @@
+package services;
+
+import javax.transaction.Transactional;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.util.Assert;
+
+import utilities.AbstractTest;
+import domain.Article;
+import domain.OutboxEvent;
+import domain.WorkingOut;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {
+	"classpath:spring/junit.xml"
+})
+@Transactional
+public class OutboxEventServiceTest extends AbstractTest {
+
+	// Service under test -----------------------------------------------------
+	@Autowired
+	private OutboxEventService	outboxEventService;
+
+	// Other services and repositories ----------------------------------------
+	@Autowired
+	private WorkingOutService	workingOutService;
+
+	@Autowired
+	private ArticleService		articleService;
+
+
+	// Tests ------------------------------------------------------------------
+
+	/*
+	 * A: Requirement 51 (The system must generate an automatic notification when a working-out is published).
+	 * C: Analysis of sentence coverage: 24/30 -> 80.00% of executed lines codes .
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void dispatch_positiveTest() {
+		int workingOutId;
+		WorkingOut workingOut;
+		OutboxEvent event;
+
+		workingOutId = super.getEntityId("workingOut1");
+		workingOut = this.workingOutService.findOne(workingOutId);
+
+		event = this.outboxEventService.notifyPublishedWorkingOut(workingOut);
+		Assert.isTrue(event.getStatus().equals("PENDING"));
+		Assert.isTrue(this.outboxEventService.findDueEventIds(100).contains(event.getId()));
+
+		this.outboxEventService.dispatch(event.getId());
+
+		Assert.isTrue(event.getStatus().equals("SENT"));
+		Assert.isTrue(event.getAttempts() == 1);
+	}
+
+	/*
+	 * A: Requirement 51 (The system must generate an automatic notification when a nutritionist writes an article).
+	 * B: The delivery fails, so the event is kept to be retried later.
+	 * C: Analysis of sentence coverage: 20/30 -> 66.67% of executed lines codes .
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void registerFailure_positiveTest() {
+		int articleId;
+		Article article;
+		OutboxEvent event;
+
+		articleId = super.getEntityId("article1");
+		article = this.articleService.findOne(articleId);
+
+		event = this.outboxEventService.notifyNewArticle(article);
+		this.outboxEventService.registerFailure(event.getId(), new IllegalArgumentException());
+
+		Assert.isTrue(event.getStatus().equals("PENDING"));
+		Assert.isTrue(event.getAttempts() == 1);
+		Assert.notNull(event.getLastError());
+		Assert.isTrue(!this.outboxEventService.findDueEventIds(100).contains(event.getId()));
+	}
+
+}
@@ -1,6 +1,9 @@
 
 package services;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import javax.transaction.Transactional;
 
 import org.junit.Test;
@@ -25,6 +28,9 @@ public class WorkingOutServiceTest extends AbstractTest {
 
 
 	// Other services and repositories ----------------------------------------
+	@Autowired
+	private UtilityService		utilityService;
+
 
 	// Tests ------------------------------------------------------------------
 
@@ -88,5 +94,25 @@ public class WorkingOutServiceTest extends AbstractTest {
 	//		Assert.isTrue(data[3] == 0.3143);
 	//	}
 
+	/*
+	 * A: Requirement 4.1: A working-out has a ticker with the date and six unique letters or digits.
+	 * B: Positive test
+	 * C: Analysis of sentence coverage: intentionally blank.
+	 * D: Analysis of data coverage: intentionally blank.
+	 */
+	@Test
+	public void generateValidTicker_positiveTest() {
+		Set<String> tickers;
+		String ticker;
+
+		tickers = new HashSet<String>();
+		for (int i = 0; i < 250; i++) {
+			ticker = this.utilityService.generateValidTicker();
+
+			Assert.isTrue(ticker.matches("\\d{6}-[A-Z0-9]{6}"));
+			Assert.isTrue(tickers.add(ticker));
+		}
+	}
+
 	// Ancillary methods ------------------------------------------------------
 }